@@ -0,0 +1,144 @@
+package Viewer2D;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <p>
+ * SIMD reduce of {@link CoordKernels} on the incubating Vector API. It is
+ * kept out of src/ so the default build stays plain Java: make simd
+ * compiles it, and {@link CoordKernels#get()} only loads it when present
+ * and jdk.incubator.vector is in the module graph.
+ * </p>
+ * <p>
+ * Bounds and counts run on the preferred vectors of the machine. The sums
+ * are added {@link CoordKernels#LANES} wide, a preferred vector a quarter of
+ * it at a time, so the partial sums are those of the scalar kernel. With
+ * preferred vectors narrower than that the scalar kernels are used.
+ * </p>
+ * <p>
+ * The transform is the scalar one: it is bound by memory bandwidth, and
+ * vectors did not make it any faster (see ImageMaker.CompareKernels).
+ * </p>
+ */
+class VectorCoordKernels extends CoordKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> SUMS = DoubleVector.SPECIES_256;
+
+	// CONSTRUCTORS
+	VectorCoordKernels() {
+		if (SPECIES.length() < LANES || SUMS.length() != LANES) {
+			throw new LinkageError("Vectors narrower than " + LANES
+					+ " doubles.");
+		}
+	}
+
+	// ACCESSORS
+	public String name() {
+		return "simd" + SPECIES.vectorBitSize();
+	}
+
+	public void transform(Affine2D t, double[] xs, double[] ys,
+			double[] dstX, double[] dstY, int offset, int len) {
+		scalar().transform(t, xs, ys, dstX, dstY, offset, len);
+	}
+
+	public void reduce(double[] xs, double[] ys, int offset, int len,
+			double[] result) {
+		DoubleVector minX = DoubleVector.broadcast(SPECIES,
+				Double.POSITIVE_INFINITY);
+		DoubleVector minY = minX;
+		DoubleVector maxX = DoubleVector.broadcast(SPECIES,
+				Double.NEGATIVE_INFINITY);
+		DoubleVector maxY = maxX;
+		DoubleVector sumX = DoubleVector.zero(SUMS);
+		DoubleVector sumY = sumX;
+		int count = 0;
+		int end = offset + len;
+		int ii = offset;
+		int width = SPECIES.length();
+		for (int blocks = offset + SPECIES.loopBound(len); ii < blocks; ii += width) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, xs, ii);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, ys, ii);
+			VectorMask<Double> ok = x.compare(VectorOperators.EQ, x).and(
+					y.compare(VectorOperators.EQ, y));
+			if (ok.allTrue()) {
+				minX = minX.min(x);
+				minY = minY.min(y);
+				maxX = maxX.max(x);
+				maxY = maxY.max(y);
+				// In LANES wide parts, point ii still goes to lane ii % LANES
+				for (int k = 0; k < width; k += LANES) {
+					sumX = sumX.add(DoubleVector.fromArray(SUMS, xs, ii + k));
+					sumY = sumY.add(DoubleVector.fromArray(SUMS, ys, ii + k));
+				}
+				count += width;
+			} else {
+				minX = minX.min(x.blend(Double.POSITIVE_INFINITY, ok.not()));
+				minY = minY.min(y.blend(Double.POSITIVE_INFINITY, ok.not()));
+				maxX = maxX.max(x.blend(Double.NEGATIVE_INFINITY, ok.not()));
+				maxY = maxY.max(y.blend(Double.NEGATIVE_INFINITY, ok.not()));
+				for (int k = 0; k < width; k += LANES) {
+					DoubleVector px = DoubleVector.fromArray(SUMS, xs, ii + k);
+					DoubleVector py = DoubleVector.fromArray(SUMS, ys, ii + k);
+					VectorMask<Double> pok = px.compare(VectorOperators.EQ, px)
+							.and(py.compare(VectorOperators.EQ, py));
+					sumX = sumX.add(px, pok);
+					sumY = sumY.add(py, pok);
+				}
+				count += ok.trueCount();
+			}
+		}
+		double loX = minX.reduceLanes(VectorOperators.MIN);
+		double loY = minY.reduceLanes(VectorOperators.MIN);
+		double hiX = maxX.reduceLanes(VectorOperators.MAX);
+		double hiY = maxY.reduceLanes(VectorOperators.MAX);
+		// The whole blocks of LANES points left over from wider vectors
+		for (int blocks = offset + len / LANES * LANES; ii < blocks; ii += LANES) {
+			DoubleVector x = DoubleVector.fromArray(SUMS, xs, ii);
+			DoubleVector y = DoubleVector.fromArray(SUMS, ys, ii);
+			VectorMask<Double> ok = x.compare(VectorOperators.EQ, x).and(
+					y.compare(VectorOperators.EQ, y));
+			loX = Math.min(loX, x.blend(Double.POSITIVE_INFINITY, ok.not())
+					.reduceLanes(VectorOperators.MIN));
+			loY = Math.min(loY, y.blend(Double.POSITIVE_INFINITY, ok.not())
+					.reduceLanes(VectorOperators.MIN));
+			hiX = Math.max(hiX, x.blend(Double.NEGATIVE_INFINITY, ok.not())
+					.reduceLanes(VectorOperators.MAX));
+			hiY = Math.max(hiY, y.blend(Double.NEGATIVE_INFINITY, ok.not())
+					.reduceLanes(VectorOperators.MAX));
+			sumX = sumX.add(x, ok);
+			sumY = sumY.add(y, ok);
+			count += ok.trueCount();
+		}
+		// Lane order, as the scalar kernel
+		double totalX = sumX.lane(0) + sumX.lane(1) + sumX.lane(2)
+				+ sumX.lane(3);
+		double totalY = sumY.lane(0) + sumY.lane(1) + sumY.lane(2)
+				+ sumY.lane(3);
+		for (; ii < end; ++ii) {
+			double x = xs[ii];
+			double y = ys[ii];
+			if (x == x && y == y) {
+				loX = Math.min(loX, x);
+				loY = Math.min(loY, y);
+				hiX = Math.max(hiX, x);
+				hiY = Math.max(hiY, y);
+				totalX += x;
+				totalY += y;
+				++count;
+			}
+		}
+		result[MIN_X] = loX;
+		result[MIN_Y] = loY;
+		result[MAX_X] = hiX;
+		result[MAX_Y] = hiY;
+		result[SUM_X] = totalX;
+		result[SUM_Y] = totalY;
+		result[COUNT] = count;
+	}
+
+}
@@ -0,0 +1,128 @@
+package ImageMaker;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import Viewer2D.Affine2D;
+import Viewer2D.CoordKernels;
+
+/**
+ * Runs the coordinate kernels {@link CoordKernels#get()} picked against the
+ * scalar ones on random points, some of them NaN, and times both. Exits with
+ * 1 when a reduce or transform gives other bits. Without the SIMD kernels
+ * (make simd, and --add-modules jdk.incubator.vector) both are the scalar
+ * ones.
+ */
+public class CompareKernels {
+
+    public static int DEFAULT_POINTS = 1 << 22;
+    public static int ROUNDS = 20;
+    public static int RANGES = 2000;
+
+    /**
+     * Entry point.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        int points = DEFAULT_POINTS;
+        for (int i = 0; i < args.length; i++) {
+            if ("-n".equals(args[i]) && i + 1 < args.length) {
+                points = Integer.parseInt(args[++i]);
+            } else {
+                message();
+            }
+        }
+        CoordKernels scalar = CoordKernels.scalar();
+        CoordKernels kernels = CoordKernels.get();
+        System.out.println("Kernels: " + kernels.name());
+
+        Random random = new Random(1);
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        for (int i = 0; i < points; i++) {
+            xs[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            ys[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            if (random.nextInt(1000) == 0) {
+                if (random.nextBoolean()) {
+                    xs[i] = Double.NaN;
+                } else {
+                    ys[i] = Double.NaN;
+                }
+            }
+        }
+        Affine2D t = new Affine2D(1.5, -0.25, 100.5, 0.75, 2.0, -3.0);
+        double[][] dst = new double[4][points];
+
+        // Every small length at every alignment, then random ranges
+        int mismatches = 0;
+        for (int range = 0; range < RANGES; range++) {
+            int offset, len;
+            if (range < 256) {
+                offset = range % 16;
+                len = range / 16;
+            } else {
+                offset = random.nextInt(points);
+                len = random.nextInt(Math.min(points - offset, 100000) + 1);
+            }
+            if (!sameReduce(scalar, kernels, xs, ys, offset, len) || !sameTransform(scalar, kernels, t, xs, ys,
+                    offset, len, dst)) {
+                if (++mismatches <= 20) {
+                    System.out.println("Mismatch at offset " + offset + ", length " + len);
+                }
+            }
+        }
+        if (!sameReduce(scalar, kernels, xs, ys, 0, points)) {
+            mismatches++;
+            System.out.println("Mismatch reducing all the points");
+        }
+        System.out.println(String.format("%d ranges, %d mismatches", RANGES + 1, mismatches));
+
+        // Best of a few rounds over all the points, the first ones warm up
+        double[] r = new double[CoordKernels.RESULT_SIZE];
+        long[] reduce = { Long.MAX_VALUE, Long.MAX_VALUE };
+        long[] transform = { Long.MAX_VALUE, Long.MAX_VALUE };
+        CoordKernels[] both = { scalar, kernels };
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int k = 0; k < 2; k++) {
+                long start = System.nanoTime();
+                both[k].reduce(xs, ys, 0, points, r);
+                reduce[k] = Math.min(reduce[k], System.nanoTime() - start);
+                start = System.nanoTime();
+                both[k].transform(t, xs, ys, dst[0], dst[1], 0, points);
+                transform[k] = Math.min(transform[k], System.nanoTime() - start);
+            }
+        }
+        System.out.println(String.format("reduce %d points: scalar %.2f ms, %s %.2f ms (%.2fx)", points,
+                reduce[0] / 1e6, kernels.name(), reduce[1] / 1e6, (double) reduce[0] / reduce[1]));
+        System.out.println(String.format("transform %d points: scalar %.2f ms, %s %.2f ms (%.2fx)", points,
+                transform[0] / 1e6, kernels.name(), transform[1] / 1e6, (double) transform[0] / transform[1]));
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    private static boolean sameReduce(CoordKernels a, CoordKernels b, double[] xs, double[] ys, int offset,
+            int len) {
+        double[] ra = new double[CoordKernels.RESULT_SIZE];
+        double[] rb = new double[CoordKernels.RESULT_SIZE];
+        a.reduce(xs, ys, offset, len, ra);
+        b.reduce(xs, ys, offset, len, rb);
+        return Arrays.equals(ra, rb);
+    }
+
+    private static boolean sameTransform(CoordKernels a, CoordKernels b, Affine2D t, double[] xs, double[] ys,
+            int offset, int len, double[][] dst) {
+        int end = offset + len;
+        a.transform(t, xs, ys, dst[0], dst[1], offset, len);
+        b.transform(t, xs, ys, dst[2], dst[3], offset, len);
+        return Arrays.equals(dst[0], offset, end, dst[2], offset, end)
+                && Arrays.equals(dst[1], offset, end, dst[3], offset, end);
+    }
+
+    public static void message() {
+        System.out.println("Arguments:\n\n"
+                + "\t[-n points]\n\n"
+                + "Reduces and transforms random points (" + DEFAULT_POINTS + " by default) with the kernels in use"
+                + " and the scalar ones,\nthen times both. Exits with 1 when they disagree.\n");
+        System.exit(1);
+    }
+}
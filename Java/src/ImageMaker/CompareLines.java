@@ -0,0 +1,149 @@
+package ImageMaker;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import Viewer2D.EdgesPanel;
+import Viewer2D.FormatVertex;
+import Viewer2D.Label;
+import Viewer2D.LineRasterizer;
+import Viewer2D.Vertex;
+import Viewer2D.ViewerIO;
+
+/**
+ * Renders a layout twice, with the edges drawn by Java2D and by the
+ * {@link LineRasterizer}, and reports how far apart the two images are. Exits
+ * with 1 when the mean difference, taken after a 3x3 box blur so that sub
+ * pixel shifts of a line do not count, is above the threshold.
+ */
+public class CompareLines {
+
+    public static double DEFAULT_THRESHOLD = 1.0;
+    public static int ROUNDS = 3;
+
+    /**
+     * Entry point.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            message();
+        }
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        String colorFile = "";
+        double threshold = DEFAULT_THRESHOLD;
+        for (int i = 4; i < args.length; i++) {
+            if ("-c".equals(args[i]) && i + 1 < args.length) {
+                colorFile = args[++i];
+            } else if ("-t".equals(args[i]) && i + 1 < args.length) {
+                threshold = Double.parseDouble(args[++i]);
+            } else {
+                message();
+            }
+        }
+
+        ViewerIO verterIO = null;
+        try {
+            verterIO = new ViewerIO(new File(args[2]));
+            verterIO.loadEdgeFile();
+            if (!colorFile.isEmpty()) {
+                verterIO.loadEdgeColorFile(new File(colorFile));
+            }
+            verterIO.loadVertexCoords(new File(args[3]));
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        int[] windowSizes = { width, height };
+        // No label file is loaded, only the edges are compared
+        HashMap<Vertex, Label> labels = new HashMap<Vertex, Label>();
+        FormatVertex formatter = new FormatVertex(verterIO.getGraph(), labels, verterIO.getLabelScale(), 0, 0,
+                0, 0, false, verterIO.getStats(), windowSizes, 0);
+        EdgesPanel panel = new EdgesPanel(verterIO.getGraph(), labels, width, height);
+        if (!verterIO.getEdgeColorMap().isEmpty())
+            panel.addEdgeColors(verterIO.getEdgeColorMap());
+        panel.showVertices(true);
+        panel.setVisibilityTest(true);
+        panel.setFormatter(formatter);
+        panel.setEdgeColor(GenerateImages.EDGE_COLOR);
+        panel.setVertexColor(Color.white);
+        panel.setBackgroundColor(Color.BLACK);
+        panel.fitData();
+
+        BufferedImage java2d = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage rasterized = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        // Best of a few rounds, the first ones warm up both paths
+        long java2dTime = Long.MAX_VALUE;
+        long rasterizedTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            panel.setJava2DLines(true);
+            long start = System.nanoTime();
+            panel.paintImage(java2d);
+            java2dTime = Math.min(java2dTime, System.nanoTime() - start);
+            panel.setJava2DLines(false);
+            start = System.nanoTime();
+            panel.paintImage(rasterized);
+            rasterizedTime = Math.min(rasterizedTime, System.nanoTime() - start);
+        }
+
+        int[] a = java2d.getRGB(0, 0, width, height, null, 0, width);
+        int[] b = rasterized.getRGB(0, 0, width, height, null, 0, width);
+        long differing = 0;
+        int max = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                differing++;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    max = Math.max(max, Math.abs((a[i] >>> shift & 0xff) - (b[i] >>> shift & 0xff)));
+                }
+            }
+        }
+        double mean = meanDifference(a, b, width, height, false);
+        double blurred = meanDifference(a, b, width, height, true);
+        System.out.println(String.format("Java2D %d ms, rasterizer %d ms", java2dTime / 1000000,
+                rasterizedTime / 1000000));
+        System.out.println(String.format("%d of %d pixels differ, by %d at most", differing, a.length, max));
+        System.out.println(String.format("Mean difference %.3f, %.3f blurred (threshold %.3f)", mean, blurred,
+                threshold));
+        System.exit(blurred > threshold ? 1 : 0);
+    }
+
+    // Mean absolute difference per channel, over 3x3 box blurred channels
+    // if asked
+    private static double meanDifference(int[] a, int[] b, int width, int height, boolean blur) {
+        double sum = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (!blur) {
+                        sum += Math.abs((a[y * width + x] >>> shift & 0xff) - (b[y * width + x] >>> shift & 0xff));
+                        continue;
+                    }
+                    int d = 0, n = 0;
+                    for (int yy = Math.max(0, y - 1); yy <= Math.min(height - 1, y + 1); yy++) {
+                        for (int xx = Math.max(0, x - 1); xx <= Math.min(width - 1, x + 1); xx++) {
+                            d += (a[yy * width + xx] >>> shift & 0xff) - (b[yy * width + xx] >>> shift & 0xff);
+                            n++;
+                        }
+                    }
+                    sum += Math.abs((double) d / n);
+                }
+            }
+        }
+        return sum / (4.0 * width * height);
+    }
+
+    public static void message() {
+        System.out.println("Arguments:\n\n"
+                + "\t<width> <height> <edges file> <coords file> [-c <colors file>] [-t threshold]\n\n"
+                + "Draws the whole layout with Java2D lines and with the line rasterizer and compares them.\n"
+                + "Exits with 1 when the blurred mean difference (0-255 per channel) is above the threshold ("
+                + DEFAULT_THRESHOLD + " by default).\n");
+        System.exit(1);
+    }
+}
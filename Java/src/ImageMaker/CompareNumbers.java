@@ -0,0 +1,208 @@
+package ImageMaker;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Viewer2D.NumberParser;
+
+/**
+ * Checks {@link NumberParser#parseDouble} against Double.parseDouble on
+ * random bit patterns, halfway cases between neighbouring doubles, inputs of
+ * 19 digits and more and values near the subnormal and overflow limits, then
+ * times both on coordinates as the layout files write them. Exits with 1
+ * when any input parses to other bits, or throws on one side only, or when
+ * {@link NumberParser#isDouble} does not say which ones throw.
+ */
+public class CompareNumbers {
+
+    public static int DEFAULT_COUNT = 200000;
+    public static int ROUNDS = 5;
+
+    private static final double[] LIMITS = { Double.MIN_VALUE, 2 * Double.MIN_VALUE, Double.MIN_NORMAL,
+            Math.nextDown(Double.MIN_NORMAL), Math.nextUp(Double.MIN_NORMAL), Double.MAX_VALUE,
+            Math.nextDown(Double.MAX_VALUE), 1e-308, 1e-320, 1e308, 1e22, 1e23, 9007199254740993.0 };
+
+    private static long checked;
+    private static long mismatches;
+
+    /**
+     * Entry point.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        int count = DEFAULT_COUNT;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            if ("-n".equals(args[i]) && i + 1 < args.length) {
+                count = Integer.parseInt(args[++i]);
+            } else if ("-s".equals(args[i]) && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                message();
+            }
+        }
+        Random random = new Random(seed);
+
+        for (String s : new String[] { "0", "-0", "0e999", "1e-999", "1e999", "-1e999", "4.9e-324", "2.4e-324",
+                "2.5e-324", "2.2250738585072014e-308", "2.2250738585072011e-308", "1.7976931348623157e308",
+                "1.7976931348623158e308", "1.7976931348623159e308", "179769313486231580793728971405301e276",
+                "NaN", "-Infinity", "0x1p3", "1d", "1f", " 1", "1 ", "", "-", ".", "e5", "1e", "1e+", "1.e2",
+                ".5", "+.5e-1", "00000000000000000000000000001", "1.00000000000000000000000000001", "+NaN",
+                "Infinityd", "-infinity", "0x1.8p1", "0X.8P-1d", "0x1", "0x.p1", "0x1p", "1e5f", "\t2\n", "1.5.5",
+                "--1", "1e5 x", "1e-5D", "\u00e9" }) {
+            check(s);
+        }
+        for (double d : LIMITS) {
+            neighbourhood(d);
+        }
+        for (int i = 0; i < count; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            check(Double.toString(d));
+            check(String.format("%.17e", d));
+            check(String.format("%." + random.nextInt(17) + "e", d));
+            if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                halfway(d);
+            }
+            check(longDigits(random));
+        }
+        System.out.println(String.format("%d inputs, %d mismatches", checked, mismatches));
+
+        benchmark(random, count);
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    // The double, its neighbours and the halfway points between them
+    private static void neighbourhood(double d) {
+        double down = d;
+        for (int i = 0; i < 3; i++) {
+            down = Math.nextDown(down);
+        }
+        for (int i = 0; i < 6; i++, down = Math.nextUp(down)) {
+            check(Double.toString(down));
+            if (!Double.isInfinite(down)) {
+                check(new BigDecimal(down).toString());
+                halfway(down);
+            }
+        }
+    }
+
+    // The exact midpoint between d and the next double up, which rounds to
+    // the even one, and the midpoint nudged below and above
+    private static void halfway(double d) {
+        double up = Math.nextUp(Math.abs(d));
+        BigDecimal low = new BigDecimal(Math.abs(d));
+        // Past the largest double the next one up would be 2^1024
+        BigDecimal high = Double.isInfinite(up) ? low.add(low.subtract(new BigDecimal(Math.nextDown(low
+                .doubleValue())))) : new BigDecimal(up);
+        BigDecimal mid = low.add(high).divide(BigDecimal.valueOf(2));
+        BigDecimal nudge = mid.ulp();
+        String sign = d < 0 ? "-" : "";
+        check(sign + mid.toString());
+        check(sign + mid.subtract(nudge).toString());
+        check(sign + mid.add(nudge).toString());
+        // Cut to 19 and 20 significant digits, where the fast path gives up
+        String plain = mid.unscaledValue().toString();
+        for (int digits = 19; digits <= 20 && digits < plain.length(); digits++) {
+            check(sign + plain.substring(0, digits) + "e" + (plain.length() - digits - mid.scale()));
+        }
+    }
+
+    // 19 to 40 random digits, a point somewhere and an exponent
+    private static String longDigits(Random random) {
+        int n = 19 + random.nextInt(22);
+        StringBuilder sb = new StringBuilder(n + 8);
+        if (random.nextBoolean()) {
+            sb.append('-');
+        }
+        int point = random.nextInt(n + 1);
+        for (int i = 0; i < n; i++) {
+            if (i == point) {
+                sb.append('.');
+            }
+            // Runs of 0s and 9s carry into the 19th digit
+            int r = random.nextInt(4);
+            sb.append(r == 0 ? '0' : r == 1 ? '9' : (char) ('0' + random.nextInt(10)));
+        }
+        sb.append('e').append(random.nextInt(700) - 360);
+        return sb.toString();
+    }
+
+    private static void check(String s) {
+        checked++;
+        byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+        String expected, found;
+        try {
+            expected = Long.toHexString(Double.doubleToRawLongBits(Double.parseDouble(s)));
+        } catch (NumberFormatException e) {
+            expected = "NumberFormatException";
+        }
+        try {
+            found = Long.toHexString(Double.doubleToRawLongBits(NumberParser.parseDouble(b, 0, b.length)));
+        } catch (NumberFormatException e) {
+            found = "NumberFormatException";
+        }
+        // isDouble has to tell the same inputs apart without throwing
+        if (NumberParser.isDouble(b, 0, b.length) == expected.equals("NumberFormatException")) {
+            found += " (isDouble disagrees)";
+        }
+        if (!expected.equals(found)) {
+            if (++mismatches <= 20) {
+                System.out.println("\"" + s + "\": expected " + expected + ", found " + found);
+            }
+        }
+    }
+
+    // Best of a few rounds parsing coordinates, "%.6f" as the layout tools
+    // write them and as Double.toString gives them
+    private static void benchmark(Random random, int count) {
+        List<String> fixed = new ArrayList<String>(count);
+        List<String> shortest = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            double d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(6));
+            fixed.add(String.format("%.6f", d));
+            shortest.add(Double.toString(d));
+        }
+        time("%.6f", fixed);
+        time("Double.toString", shortest);
+    }
+
+    private static void time(String name, List<String> numbers) {
+        byte[] all = String.join(" ", numbers).getBytes(StandardCharsets.ISO_8859_1);
+        int[] ends = new int[numbers.size() + 1];
+        for (int i = 0; i < numbers.size(); i++) {
+            ends[i + 1] = ends[i] + numbers.get(i).length() + 1;
+        }
+        long jdk = Long.MAX_VALUE;
+        long parser = Long.MAX_VALUE;
+        double jdkSum = 0, parserSum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < numbers.size(); i++) {
+                jdkSum += Double.parseDouble(new String(all, ends[i], ends[i + 1] - ends[i] - 1,
+                        StandardCharsets.ISO_8859_1));
+            }
+            jdk = Math.min(jdk, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < numbers.size(); i++) {
+                parserSum += NumberParser.parseDouble(all, ends[i], ends[i + 1] - 1);
+            }
+            parser = Math.min(parser, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%s: Double.parseDouble %.1f ns, %.0f MB/s; NumberParser %.1f ns,"
+                + " %.0f MB/s (%.2fx)%s", name, (double) jdk / numbers.size(), all.length * 1000.0 / jdk,
+                (double) parser / numbers.size(), all.length * 1000.0 / parser, (double) jdk / parser,
+                jdkSum == parserSum ? "" : " (sums differ)"));
+    }
+
+    public static void message() {
+        System.out.println("Arguments:\n\n"
+                + "\t[-n count] [-s seed]\n\n"
+                + "Parses count random doubles of each kind (" + DEFAULT_COUNT + " by default) with NumberParser"
+                + " and with Double.parseDouble,\nthen times both. Exits with 1 when they disagree.\n");
+        System.exit(1);
+    }
+}
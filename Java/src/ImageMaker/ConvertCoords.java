@@ -0,0 +1,60 @@
+package ImageMaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+import Viewer2D.BinaryCoords;
+import Viewer2D.CoordsLoader;
+import Viewer2D.GraphStore;
+import Viewer2D.VertexStats;
+import Viewer2D.ViewerIO;
+
+/**
+ * Converts text .coords files into the binary float32 format read by
+ * {@link ViewerIO#loadVertexCoords(File)} (see {@link BinaryCoords}). The
+ * binary file is tied to the vertex order of the given edges file.
+ */
+public class ConvertCoords {
+
+    /**
+     * Entry point.
+     * 
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            message();
+        }
+        ViewerIO verterIO = null;
+        try {
+            verterIO = new ViewerIO(new File(args[0]));
+            verterIO.loadEdgeFile();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        GraphStore graph = verterIO.getGraph();
+
+        for (int i = 1; i < args.length; i++) {
+            File coords = new File(args[i]);
+            File out = BinaryCoords.binaryFile(coords);
+            try {
+                BitSet listed = new BitSet();
+                new CoordsLoader(graph).load(coords, new VertexStats(), listed);
+                BinaryCoords.write(out, graph, listed);
+                System.out.println(coords + " -> " + out + " (" + listed.cardinality() + " of "
+                        + graph.vertexCount() + " vertices)");
+            } catch (IOException e) {
+                System.out.println("Error converting " + coords + ":\n" + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    public static void message() {
+        System.out.println("Arguments:\n\n" + "\t<edges file> <coords file1> <coords file2>...\n\n"
+                + "Each x.coords is written next to it as x" + BinaryCoords.EXTENSION + ".\n");
+        System.exit(1);
+    }
+}
@@ -1,21 +1,31 @@
 package ImageMaker;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
-import Viewer2D.EdgesPanel;
-import Viewer2D.FormatVertex;
+import Viewer2D.LineRasterizer;
+import Viewer2D.ViewHistory;
 import Viewer2D.ViewerIO;
 
 public class GenerateImages {
     
-    public static boolean GENERATE_IN_SEPARATE_THREAD = true;
+    // The images painted when no manifest is given, -m, -M and -a apply
+    // to those not fitting all of the layout
+    private static final String DEFAULT_MANIFEST =
+        "dark_withlabels background=black labels=on\n"
+        + "dark_nolabels background=black labels=off\n"
+        + "dark_withoutscale_withoutlabels background=black labels=off region=all align=corner\n"
+        + "dark_withoutscale_withlabels background=black labels=on region=all align=corner\n"
+        + "light_withoutscale_withoutlabels background=white labels=off region=all align=corner\n"
+        + "transparent_withoutscale_withoutlabels background=transparent labels=off region=all align=corner\n";
     
     /**
      * Entry point.
@@ -25,42 +35,103 @@ public class GenerateImages {
     public static void main(String[] args) {
         ParseArguments pa = new ParseArguments(false);
         pa.parse(args);
+        loadViews(pa);
+        List<RenderJob> jobs = loadJobs(pa);
         
-        printStats(pa);
-        
-        GENERATE_IN_SEPARATE_THREAD = true;
-        
-        generate(pa, "dark with labels", "dark_withlabels", Color.BLACK, 
-                true /*scale*/, true /*printLabels*/, true /*useAlignmentCenterArg*/);
-        generate(pa, "dark without labels", "dark_nolabels", Color.BLACK,
-                true /*scale*/, false /*printLabels*/, true /*useAlignmentCenterArg*/);
-        
-        generate(pa, "dark without scale without labels", "dark_withoutscale_withoutlabels", Color.BLACK,
-                false /*scale*/, false /*printLabels*/, false /*useAlignmentCenterArg*/);
-        generate(pa, "dark without scale with labels", "dark_withoutscale_withlabels", Color.BLACK,
-                false /*scale*/, true /*printLabels*/, false /*useAlignmentCenterArg*/);
+        // The graph, colors, labels and each layout are loaded once and
+        // only read by the images, each with a view of its own
+        ViewerIO verterIO = createViewerIO(pa);
+        loadLabels(pa.labelFile, verterIO);
         
-        generate(pa, "light without scale without labels", "light_withoutscale_withoutlabels", Color.WHITE,
-                false /*scale*/, false /*printLabels*/, false /*useAlignmentCenterArg*/);
-        generate(pa, "transparent without scale without labels", "transparent_withoutscale_withoutlabels", new Color(0f, 0f, 0f, 0f),
-                false /*scale*/, false /*printLabels*/, false /*useAlignmentCenterArg*/);
+        RenderScheduler scheduler = new RenderScheduler(pa);
+        try {
+            for (int ii = 0; ii < pa.coordFiles.size(); ++ii) {
+                String coordFile = pa.coordFiles.get(ii);
+                try {
+                    verterIO.loadVertexCoords(new File(coordFile));
+                } catch (IOException e) {
+                    System.out.println(MessageFormat.format("Error processing {0}:\n{1}", coordFile, e.getMessage()));
+                    continue;
+                }
+                if (ii == 0) {
+                    printStats(verterIO);
+                }
+                // All images are done with a layout before the next is loaded
+                scheduler.run(jobs, verterIO, coordFile);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
     
-    private static void printStats(ParseArguments pa) {
+    // The jobs of the manifest, or the default ones, one per -v view for
+    // those without a view of their own
+    private static List<RenderJob> loadJobs(ParseArguments pa) {
+        List<RenderJob> listed = null;
         try {
-            ViewerIO v = createViewerIO(pa);
-            v.loadVertexCoords(new File(pa.coordFiles.get(0)));
-            v.getStats().print();
-        } catch (Exception e) {
-            e.printStackTrace();
+            listed = RenderJob.readManifest(pa.manifestFile.isEmpty() ? new StringReader(DEFAULT_MANIFEST)
+                    : new FileReader(pa.manifestFile), new RenderJob(pa));
+        } catch (IOException e) {
+            System.out.println(pa.manifestFile + ": " + e.getMessage());
+            System.exit(1);
+        }
+        List<RenderJob> jobs = new ArrayList<RenderJob>();
+        for (RenderJob job : listed) {
+            if (job.view != null || pa.viewNames.isEmpty()) {
+                jobs.add(job);
+                continue;
+            }
+            for (String view : pa.viewNames) {
+                RenderJob viewed = new RenderJob(job);
+                viewed.view = view;
+                jobs.add(viewed);
+            }
         }
+        HashSet<String> files = new HashSet<String>();
+        for (RenderJob job : jobs) {
+            if (!files.add(job.fileName(""))) {
+                System.out.println("Error:Two images would be written to " + job.fileName("<coords file>"));
+                System.exit(1);
+            }
+            if (job.view != null && pa.bookmarkFile.isEmpty()) {
+                System.out.println("Error:view=" + job.view + " needs the bookmarks file given with -b");
+                System.exit(1);
+            }
+            if (job.view != null && pa.bookmarks.getBookmark(job.view) == null) {
+                System.out.println("Error:No bookmark named " + job.view + " in " + pa.bookmarkFile);
+                System.exit(1);
+            }
+        }
+        return jobs;
+    }
+    
+    // Checks the -v views against the -b bookmarks up front
+    private static void loadViews(ParseArguments pa) {
+        if (pa.bookmarkFile.isEmpty()) return;
+        try {
+            pa.bookmarks.readBookmarks(new File(pa.bookmarkFile));
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        for (String view : pa.viewNames) {
+            if (pa.bookmarks.getBookmark(view) == null) {
+                System.out.println("Error:No bookmark named " + view + " in " + pa.bookmarkFile);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void printStats(ViewerIO verterIO) {
+        verterIO.getStats().print();
+        verterIO.getGraph().printMemoryReport();
     }
     
     private static ViewerIO createViewerIO(ParseArguments pa) {
         ViewerIO verterIO = null;
         try {
             verterIO = new ViewerIO(new File(pa.edgeFile));
-            verterIO.loadSHORTFile();
+            verterIO.loadEdgeFile();
         } catch (IOException e) {
             System.out.println(e.getMessage());
             System.exit(1);
@@ -81,71 +152,6 @@ public class GenerateImages {
         return verterIO;
     }
     
-    private static void generate(ParseArguments pa, String displayname, String name, Color background,
-            boolean scale, boolean printLabels, boolean useAlignmentCenterArg) {
-        
-        ViewerIO verterIO = createViewerIO(pa);
-        
-        Runnable task = new Runnable() {
-            @Override
-            public void run() {
-                generate(displayname, name, background, !verterIO.getEdgeColorMap().isEmpty(), pa.windowSizes, pa.coordFiles,
-                        printLabels ? pa.labelFile : "", useAlignmentCenterArg ? pa.alignmentCenter : false, verterIO, scale);
-            }
-        };
-        
-        if (GENERATE_IN_SEPARATE_THREAD) {
-            new Thread(task).start();
-        }
-        else {
-            task.run();
-        }
-    }
-
-    private static void generate(String displayname, String name, Color background, boolean loadedEdgeColors,
-            int[] windowSizes, List<String> coordFiles, String labelFile, boolean alignmentCenter, ViewerIO verterIO, boolean scale) {
-        if (!labelFile.isEmpty())
-            loadLabels(labelFile, verterIO);
-        else
-            verterIO.clearLabels();
-
-        for (String coordFile : coordFiles) {
-            try {
-                verterIO.loadVertexCoords(new File(coordFile));
-
-                FormatVertex formatter = new FormatVertex(verterIO.getVertices(), verterIO.getLabels(),
-                        verterIO.getLabelScale(), scale ? verterIO.getMinX() : 0, scale ? verterIO.getMinY() : 0,
-                        scale ? verterIO.getMaxX() : 0, scale ? verterIO.getMaxY() : 0, alignmentCenter,
-                        verterIO.getStats(), windowSizes, 1);
-
-                EdgesPanel panel = new EdgesPanel(verterIO.getEdges(), verterIO.getVertices(), verterIO.getLabels(),
-                        windowSizes[0], windowSizes[1]);
-
-                if (loadedEdgeColors)
-                    panel.addEdgeColors(verterIO.getEdgeColorMap());
-
-                panel.showVertices(true);
-                panel.setVisibilityTest(true);
-                panel.setFormatter(formatter);
-                panel.setEdgeColor(EDGE_COLOR);
-                panel.setVertexColor(Color.white);
-                panel.setBackgroundColor(background);
-
-                BufferedImage bufferedImage = new BufferedImage(windowSizes[0], windowSizes[1],
-                        BufferedImage.TYPE_INT_ARGB);
-
-                // Now the image has to be fitted to the given region
-                panel.fitData();
-                String pngFile = MessageFormat.format("{0}_{1,number,0}x{2,number,0}_" + name + ".png", coordFile,
-                        windowSizes[0], windowSizes[1]);
-                panel.writeImage(pngFile, bufferedImage);
-                System.out.println("Done.");
-            } catch (IOException e) {
-                System.out.println(MessageFormat.format("Error processing {0}:\n{1}", e.getMessage()));
-            }
-        }
-    }
-
     static void loadLabels(String labelFile, ViewerIO verterIO) {
         if (labelFile.isEmpty()) return;
         System.out.println("Loading label file: " + labelFile + "...");
@@ -173,6 +179,20 @@ public class GenerateImages {
         int[] windowSizes;
         boolean alignmentCenter;
         public List<String> coordFiles;
+        public double[] fitQuantiles;
+        public String bookmarkFile;
+        public List<String> viewNames;
+        ViewHistory bookmarks;
+        LineRasterizer.Blend edgeBlend;
+        boolean fastLines;
+        boolean java2dLines;
+        boolean streamImages;
+        boolean parallelPng;
+        boolean fastPng;
+        boolean palettePng;
+        int jobs;
+        String manifestFile;
+        long memoryBudget; // bytes, 0 for most of the heap left free
         private boolean viewer2d;
 
         public ParseArguments(boolean viewer2d) {
@@ -230,6 +250,29 @@ public class GenerateImages {
 
             alignmentCenter = false;
             boolean alignSwitch = false;
+
+            bookmarkFile = "";
+            viewNames = new ArrayList<String>();
+            bookmarks = new ViewHistory();
+            fitQuantiles = new double[] { 0, 1 };
+            boolean quantileSwitch = false;
+            boolean bookmarkSwitch = false;
+            boolean viewSwitch = false;
+            edgeBlend = LineRasterizer.Blend.SOURCE_OVER;
+            fastLines = false;
+            java2dLines = true;
+            boolean edgeSwitch = false;
+            streamImages = false;
+            parallelPng = false;
+            fastPng = false;
+            palettePng = false;
+            jobs = Runtime.getRuntime().availableProcessors();
+            boolean jobSwitch = false;
+            manifestFile = "";
+            boolean manifestSwitch = false;
+            memoryBudget = 0;
+            boolean memorySwitch = false;
+            boolean outputSwitch = false;
             for (int i = argno; i < args.length; i++) {
                 String arg = args[i];
                 if ("-c".equals(arg)) {
@@ -256,6 +299,122 @@ public class GenerateImages {
                     maxSwitch = true;
                     continue;
                 }
+                if ("-q".equals(arg)) {
+                    quantileSwitch = true;
+                    continue;
+                }
+                if ("-b".equals(arg)) {
+                    bookmarkSwitch = true;
+                    continue;
+                }
+                if ("-v".equals(arg) && !viewer2d) {
+                    viewSwitch = true;
+                    continue;
+                }
+                if ("-e".equals(arg) && !viewer2d) {
+                    edgeSwitch = true;
+                    continue;
+                }
+                if ("-j".equals(arg) && !viewer2d) {
+                    jobSwitch = true;
+                    continue;
+                }
+                if ("-f".equals(arg) && !viewer2d) {
+                    manifestSwitch = true;
+                    continue;
+                }
+                if (manifestSwitch) {
+                    manifestSwitch = false;
+                    manifestFile = arg;
+                    continue;
+                }
+                if ("-x".equals(arg) && !viewer2d) {
+                    memorySwitch = true;
+                    continue;
+                }
+                if (memorySwitch) {
+                    memorySwitch = false;
+                    memoryBudget = Long.parseLong(arg) << 20;
+                    if (memoryBudget < 1) {
+                        System.out.println("Error:-x needs a budget of at least 1 MB");
+                        System.exit(1);
+                    }
+                    continue;
+                }
+                if (jobSwitch) {
+                    jobSwitch = false;
+                    jobs = Integer.parseInt(arg);
+                    if (jobs < 1) {
+                        System.out.println("Error:-j needs at least 1 image at a time");
+                        System.exit(1);
+                    }
+                    continue;
+                }
+                if ("-o".equals(arg) && !viewer2d) {
+                    outputSwitch = true;
+                    continue;
+                }
+                if (outputSwitch) {
+                    outputSwitch = false;
+                    for (String mode : arg.split(",")) {
+                        if ("stream".equals(mode)) {
+                            streamImages = true;
+                        } else if ("parallel".equals(mode)) {
+                            parallelPng = true;
+                        } else if ("fast".equals(mode)) {
+                            fastPng = true;
+                        } else if ("palette".equals(mode)) {
+                            palettePng = true;
+                        } else {
+                            System.out.println("Error:-o takes stream, parallel, fast or palette, not " + mode);
+                            System.exit(1);
+                        }
+                    }
+                    continue;
+                }
+                if (edgeSwitch) {
+                    edgeSwitch = false;
+                    for (String mode : arg.split(",")) {
+                        if ("add".equals(mode)) {
+                            edgeBlend = LineRasterizer.Blend.ADDITIVE;
+                        } else if ("fast".equals(mode)) {
+                            fastLines = true;
+                        } else if ("java2d".equals(mode)) {
+                            java2dLines = true;
+                        } else if ("rasterizer".equals(mode)) {
+                            java2dLines = false;
+                        } else {
+                            System.out.println("Error:-e takes add, fast, java2d or rasterizer, not " + mode);
+                            System.exit(1);
+                        }
+                    }
+                    continue;
+                }
+                if (quantileSwitch) {
+                    quantileSwitch = false;
+                    String[] a = arg.split(",");
+                    if (a.length != 2) {
+                        System.out.println("Error:-q requires exactly 2 quantiles");
+                        System.exit(1);
+                    }
+                    fitQuantiles[0] = Double.parseDouble(a[0]);
+                    fitQuantiles[1] = Double.parseDouble(a[1]);
+                    if (!(0 <= fitQuantiles[0] && fitQuantiles[0] < fitQuantiles[1] && fitQuantiles[1] <= 1)) {
+                        System.out.println("Error:-q needs 0 <= low < high <= 1");
+                        System.exit(1);
+                    }
+                    continue;
+                }
+                if (bookmarkSwitch) {
+                    bookmarkSwitch = false;
+                    bookmarkFile = arg;
+                    continue;
+                }
+                if (viewSwitch) {
+                    viewSwitch = false;
+                    viewNames.add(arg);
+                    continue;
+                }
                 if (scaleSwitch) {
                     scaleSwitch = false;
                     scaling = Double.parseDouble(arg);
@@ -313,6 +472,11 @@ public class GenerateImages {
                 System.out.println("Error:Both -m and -M need to be used at the same time, one of them is missing");
                 System.exit(1);
             }
+
+            if (!viewNames.isEmpty() && bookmarkFile.isEmpty()) {
+                System.out.println("Error:-v needs the bookmarks file given with -b");
+                System.exit(1);
+            }
         }
     }
 
@@ -321,14 +485,29 @@ public class GenerateImages {
     
     public static void message() {
         System.out.println("Arguments:\n\n"
-                + "\t<width> <height> <edges file> <coords file1> <coords file2>... [-c <colors file> ] [-l <labels file>] [-m minx,miny -M -maxx,maxy] [-a center]\n\n"
+                + "\t<width> <height> <edges file> <coords file1> <coords file2>... [-c <colors file> ] [-l <labels file>] [-m minx,miny -M -maxx,maxy] [-a center] [-q low,high] [-b <bookmarks file> -v <view>...] [-e add,fast,java2d,rasterizer] [-o stream,parallel,fast,palette] [-f <manifest file>] [-j images] [-x megabytes]\n\n"
+                + "The edges file is read as .lgl, or as an edge list if it ends in .ncol (\"-\" reads one from stdin).\n"
                 + "If no colors file specified program will try to load file named \"" + EDGE_COLOR_FILE + "\".\n"
+                + "-q fits the low to high quantile of the coordinates instead of all of them, e.g. -q 0.001,0.999 leaves stray outliers out.\n"
+                + "Each -v renders the view bookmarked under that name (saved from the viewer) instead of the whole layout.\n"
+                + "Edges are drawn with Java2D, -e rasterizer draws them with the line rasterizer (on every core), -e add blends them additively\n"
+                + "  (overlaps add up) and -e fast draws them aliased, both on the rasterizer.\n"
+                + "-o stream paints and writes the images a band of rows at a time, for images larger than the heap,\n"
+                + "-o parallel deflates the PNGs on every core, -o fast deflates them quicker but larger, for previews,\n"
+                + "-o palette writes images of at most 256 colours (e.g. with -e fast) as indexed PNGs, not when streamed.\n"
+                + "-f paints the images listed in the manifest file, one per line, instead of the six default ones, e.g.\n"
+                + "\tposter size=8000x8000 background=white edges=#202020 labels=off format=stream,parallel\n"
+                + "\tthumb size=200x150 lines=fast format=palette view=asia\n"
+                + "  with keys name size background edges colors labels align region view lines format,\n"
+                + "  those left out taking the values of the command line (see ImageMaker.RenderJob).\n"
+                + "-j sets how many images are painted at once (by default one per core),\n"
+                + "-x the megabytes they may hold at once (by default 3/4 of the heap free once the layout is loaded).\n"
                 + "By default edges are white. flindeberg mod");
         System.exit(1);
     }
     
     public static void message2() {
-        System.out.println("Arguments:\n\n" + "\t<edges file> <coords file1> [-c <colors file> ] [-l <labels file>]\n\n"
+        System.out.println("Arguments:\n\n" + "\t<edges file> <coords file1> [-c <colors file> ] [-l <labels file>] [-q low,high] [-b <bookmarks file>]\n\n"
                 + "If no colors file specified program will try to load file named \"" + EDGE_COLOR_FILE + "\".\n");
         System.exit(1);
     }
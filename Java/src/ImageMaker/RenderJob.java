@@ -0,0 +1,271 @@
+package ImageMaker;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import Viewer2D.LineRasterizer;
+
+/**
+ * <p>
+ * One image to paint from the loaded layout: its size, colours, labels,
+ * region and PNG format. A manifest lists them one per line as key=value
+ * words, the keys left out keeping the values of the command line:
+ * </p>
+ *
+ * <pre>
+ * # name=... size=WxH background= edges= colors=on|off labels=on|off
+ * #   align=center|corner region=all|minx,miny,maxx,maxy view=bookmark
+ * #   lines=smooth,add,fast,java2d,rasterizer
+ * #   format=png,stream,parallel,fast,palette
+ * poster size=8000x8000 background=white edges=#202020 labels=off format=stream,parallel
+ * thumb size=200x150 lines=fast format=palette
+ * </pre>
+ * <p>
+ * The first word may be the name alone. Colours are black, white,
+ * transparent or #RRGGBB[AA]. The region defaults to the -m and -M of the
+ * command line, all fits the whole layout. Each image is written to
+ * &lt;coords file&gt;_&lt;width&gt;x&lt;height&gt;_&lt;name&gt;[_&lt;view&gt;].png.
+ * </p>
+ */
+public class RenderJob {
+
+    String name;
+    int width, height;
+    Color background = Color.BLACK;
+    Color edgeColor = GenerateImages.EDGE_COLOR;
+    boolean edgeColors = true; // the colors file, when loaded
+    boolean labels;
+    boolean alignCenter;
+    double[] region; // minx, miny, maxx, maxy, all 0 fits the whole layout
+    String view; // bookmark, null for the fitted layout
+    LineRasterizer.Blend edgeBlend = LineRasterizer.Blend.SOURCE_OVER;
+    boolean fastLines;
+    boolean java2dLines;
+    boolean stream;
+    boolean parallelPng;
+    boolean fastPng;
+    boolean palettePng;
+
+    // CONSTRUCTORS
+
+    // The settings of the command line, which the jobs of a manifest start from
+    RenderJob(GenerateImages.ParseArguments pa) {
+        width = pa.windowSizes[0];
+        height = pa.windowSizes[1];
+        labels = !pa.labelFile.isEmpty();
+        alignCenter = pa.alignmentCenter;
+        region = new double[] { pa.minX, pa.minY, pa.maxX, pa.maxY };
+        edgeBlend = pa.edgeBlend;
+        fastLines = pa.fastLines;
+        java2dLines = pa.java2dLines;
+        stream = pa.streamImages;
+        parallelPng = pa.parallelPng;
+        fastPng = pa.fastPng;
+        palettePng = pa.palettePng;
+    }
+
+    RenderJob(RenderJob job) {
+        name = job.name;
+        width = job.width;
+        height = job.height;
+        background = job.background;
+        edgeColor = job.edgeColor;
+        edgeColors = job.edgeColors;
+        labels = job.labels;
+        alignCenter = job.alignCenter;
+        region = job.region;
+        view = job.view;
+        edgeBlend = job.edgeBlend;
+        fastLines = job.fastLines;
+        java2dLines = job.java2dLines;
+        stream = job.stream;
+        parallelPng = job.parallelPng;
+        fastPng = job.fastPng;
+        palettePng = job.palettePng;
+    }
+
+    // Reads the jobs of a manifest, each starting from defaults
+    static List<RenderJob> readManifest(Reader reader, RenderJob defaults) throws IOException {
+        List<RenderJob> jobs = new ArrayList<RenderJob>();
+        BufferedReader in = new BufferedReader(reader);
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                ++lineNumber;
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                RenderJob job = new RenderJob(defaults);
+                job.name = null;
+                String[] t = line.split("\\s+");
+                for (int ii = 0; ii < t.length; ++ii) {
+                    int eq = t[ii].indexOf('=');
+                    try {
+                        if (eq < 0 && ii == 0) {
+                            job.set("name", t[ii]);
+                        } else if (eq <= 0) {
+                            throw new IllegalArgumentException("Expected key=value, found " + t[ii]);
+                        } else {
+                            job.set(t[ii].substring(0, eq), t[ii].substring(eq + 1));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Error at line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+                if (job.name == null) {
+                    throw new IOException("Error at line " + lineNumber + ": The image has no name.");
+                }
+                jobs.add(job);
+            }
+        } finally {
+            in.close();
+        }
+        return jobs;
+    }
+
+    // MUTATORS
+    void set(String key, String value) {
+        if ("name".equals(key)) {
+            if (value.isEmpty() || value.contains("/")) {
+                throw new IllegalArgumentException("Bad name \"" + value + "\"");
+            }
+            name = value;
+        } else if ("size".equals(key)) {
+            String[] a = value.split("x");
+            if (a.length != 2) {
+                throw new IllegalArgumentException("size is <width>x<height>, not " + value);
+            }
+            width = Integer.parseInt(a[0]);
+            height = Integer.parseInt(a[1]);
+            if (width < 1 || height < 1) {
+                throw new IllegalArgumentException("Image size must be > 0, not " + value);
+            }
+        } else if ("background".equals(key)) {
+            background = parseColor(value);
+        } else if ("edges".equals(key)) {
+            edgeColor = parseColor(value);
+        } else if ("colors".equals(key)) {
+            edgeColors = parseSwitch(key, value);
+        } else if ("labels".equals(key)) {
+            labels = parseSwitch(key, value);
+        } else if ("align".equals(key)) {
+            if (!"center".equals(value) && !"corner".equals(value)) {
+                throw new IllegalArgumentException("align is center or corner, not " + value);
+            }
+            alignCenter = "center".equals(value);
+        } else if ("region".equals(key)) {
+            if ("all".equals(value)) {
+                region = new double[4];
+            } else {
+                String[] a = value.split(",");
+                if (a.length != 4) {
+                    throw new IllegalArgumentException("region is all or minx,miny,maxx,maxy, not " + value);
+                }
+                region = new double[4];
+                for (int ii = 0; ii < 4; ++ii) {
+                    region[ii] = Double.parseDouble(a[ii]);
+                }
+            }
+        } else if ("view".equals(key)) {
+            view = value;
+        } else if ("lines".equals(key)) {
+            edgeBlend = LineRasterizer.Blend.SOURCE_OVER;
+            fastLines = false;
+            java2dLines = true;
+            for (String mode : value.split(",")) {
+                if ("add".equals(mode)) {
+                    edgeBlend = LineRasterizer.Blend.ADDITIVE;
+                } else if ("fast".equals(mode)) {
+                    fastLines = true;
+                } else if ("java2d".equals(mode)) {
+                    java2dLines = true;
+                } else if ("rasterizer".equals(mode)) {
+                    java2dLines = false;
+                } else if (!"smooth".equals(mode)) {
+                    throw new IllegalArgumentException("lines takes smooth, add, fast, java2d or rasterizer, not "
+                            + mode);
+                }
+            }
+        } else if ("format".equals(key)) {
+            stream = false;
+            parallelPng = false;
+            fastPng = false;
+            palettePng = false;
+            for (String mode : value.split(",")) {
+                if ("stream".equals(mode)) {
+                    stream = true;
+                } else if ("parallel".equals(mode)) {
+                    parallelPng = true;
+                } else if ("fast".equals(mode)) {
+                    fastPng = true;
+                } else if ("palette".equals(mode)) {
+                    palettePng = true;
+                } else if (!"png".equals(mode)) {
+                    throw new IllegalArgumentException("format takes png, stream, parallel, fast or palette, not "
+                            + mode);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown key " + key);
+        }
+    }
+
+    // ACCESSORS
+
+    // The PNG this job writes for the layout of coordFile
+    String fileName(String coordFile) {
+        return MessageFormat.format("{0}_{1,number,0}x{2,number,0}_{3}{4}.png", coordFile, width, height, name,
+                view == null ? "" : "_" + view);
+    }
+
+    // Jobs with the same key paint the same image, only the name and
+    // format of their files differ
+    String paintKey() {
+        return width + "x" + height + " " + background.getRGB() + " " + edgeColor.getRGB() + " " + edgeColors
+                + " " + labels + " " + alignCenter + " " + Arrays.toString(region) + " " + view + " " + edgeBlend
+                + " " + fastLines + " " + java2dLines;
+    }
+
+    // ---------------------------------------------------------
+    // PRIVATE METHOD CALLS
+    // ---------------------------------------------------------
+
+    private static Color parseColor(String value) {
+        if ("black".equals(value)) {
+            return Color.BLACK;
+        }
+        if ("white".equals(value)) {
+            return Color.WHITE;
+        }
+        if ("transparent".equals(value)) {
+            return new Color(0f, 0f, 0f, 0f);
+        }
+        if (value.startsWith("#") && (value.length() == 7 || value.length() == 9)) {
+            long v = Long.parseLong(value.substring(1), 16);
+            if (value.length() == 7) {
+                return new Color((int) v);
+            }
+            return new Color((int) (v >>> 24), (int) (v >>> 16 & 0xff), (int) (v >>> 8 & 0xff), (int) (v & 0xff));
+        }
+        throw new IllegalArgumentException("Colors are black, white, transparent or #RRGGBB[AA], not " + value);
+    }
+
+    private static boolean parseSwitch(String key, String value) {
+        if ("on".equals(value)) {
+            return true;
+        }
+        if ("off".equals(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException(key + " is on or off, not " + value);
+    }
+
+}
@@ -0,0 +1,224 @@
+package ImageMaker;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import Viewer2D.EdgesPanel;
+import Viewer2D.FormatVertex;
+import Viewer2D.Label;
+import Viewer2D.PngWriter;
+import Viewer2D.TiledRenderer;
+import Viewer2D.Vertex;
+import Viewer2D.ViewerIO;
+
+/**
+ * <p>
+ * Paints {@link RenderJob}s from the layout loaded once in a
+ * {@link ViewerIO}, which every job only reads, so as many as the pool has
+ * threads are painted at once.
+ * </p>
+ * <p>
+ * Jobs that would paint the same image, writing it under other names or
+ * formats, are painted once and the image written for each of them. The
+ * graph, its spatial grid and edge importance, the labels and the edge
+ * colours are shared by all jobs; each painting only has its view, the
+ * projected layout and its image.
+ * </p>
+ * <p>
+ * Each painting first takes the memory it is estimated to need out of a
+ * budget, the largest ones first, so the images held at once stay within
+ * it. One needing more than the whole budget is painted alone.
+ * </p>
+ */
+public class RenderScheduler {
+
+    // Of the heap free once the layout is loaded, when no budget is given
+    public static final double DEFAULT_BUDGET_SHARE = 0.75;
+
+    private static final int KB = 1 << 10;
+    private static final int MB = 1 << 20;
+
+    // Shared by the jobs without labels, which only read it
+    private static final HashMap<Vertex, Label> NO_LABELS = new HashMap<Vertex, Label>();
+
+    private final GenerateImages.ParseArguments pa;
+
+    // CONSTRUCTORS
+
+    // pa.jobs images are painted at once, within pa.memoryBudget bytes
+    // when it is > 0
+    RenderScheduler(GenerateImages.ParseArguments pa) {
+        this.pa = pa;
+    }
+
+    // MUTATORS
+
+    // Paints jobs from the layout of coordFile, loaded in verterIO, and
+    // returns once every image is written
+    void run(List<RenderJob> jobs, ViewerIO verterIO, String coordFile) throws InterruptedException {
+        List<Painting> paintings = group(jobs, verterIO);
+        Collections.sort(paintings, (a, b) -> Long.compare(b.estimate, a.estimate));
+
+        long budget = pa.memoryBudget;
+        if (budget <= 0) {
+            Runtime rt = Runtime.getRuntime();
+            budget = (long) ((rt.maxMemory() - (rt.totalMemory() - rt.freeMemory())) * DEFAULT_BUDGET_SHARE);
+        }
+        int permits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / KB));
+        Semaphore memory = new Semaphore(permits, true);
+        int threads = Math.min(pa.jobs, paintings.size());
+        System.out.println(paintings.size() + " images for " + jobs.size() + " outputs, " + threads
+                + " at a time within " + budget / MB + " MB");
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> images = new ArrayList<Future<?>>();
+            for (Painting painting : paintings) {
+                int need = (int) Math.min(permits, (painting.estimate + KB - 1) / KB);
+                if (painting.estimate > budget) {
+                    System.out.println(painting.jobs.get(0).fileName(coordFile) + " needs about "
+                            + painting.estimate / MB + " MB, more than the budget: painted alone"
+                            + (painting.jobs.get(0).stream ? "" : " (format=stream needs less)"));
+                }
+                images.add(pool.submit(() -> {
+                    memory.acquire(need);
+                    try {
+                        paint(painting, verterIO, coordFile);
+                    } finally {
+                        memory.release(need);
+                    }
+                    return null;
+                }));
+            }
+            for (int ii = 0; ii < images.size(); ++ii) {
+                try {
+                    images.get(ii).get();
+                } catch (ExecutionException e) {
+                    for (RenderJob job : paintings.get(ii).jobs) {
+                        System.out.println("Error painting " + job.fileName(coordFile) + ":");
+                    }
+                    e.getCause().printStackTrace();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // PRIVATE METHOD CALLS
+    // ---------------------------------------------------------
+
+    // One painting for the jobs of the same image, streamed ones each
+    // painted on their own as they are written
+    private List<Painting> group(List<RenderJob> jobs, ViewerIO verterIO) {
+        LinkedHashMap<String, Painting> paintings = new LinkedHashMap<String, Painting>();
+        for (int ii = 0; ii < jobs.size(); ++ii) {
+            RenderJob job = jobs.get(ii);
+            String key = job.stream ? "stream " + ii : job.paintKey();
+            Painting painting = paintings.get(key);
+            if (painting == null) {
+                painting = new Painting();
+                paintings.put(key, painting);
+            }
+            painting.jobs.add(job);
+        }
+        int vertices = verterIO.getGraph().vertexCount();
+        for (Painting painting : paintings.values()) {
+            painting.estimate = estimate(painting.jobs, vertices);
+        }
+        return new ArrayList<Painting>(paintings.values());
+    }
+
+    // Bytes held while painting and writing: the image, or a band of it
+    // when streamed, a tile per core, the projected layout and the blocks
+    // the PNG writer has in flight
+    private static long estimate(List<RenderJob> jobs, int vertices) {
+        RenderJob job = jobs.get(0);
+        int tile = TiledRenderer.DEFAULT_TILE_SIZE;
+        int cores = Runtime.getRuntime().availableProcessors();
+        long rows = job.stream ? Math.min(tile, job.height) : job.height;
+        long bytes = 4L * job.width * rows;
+        bytes += 4L * Math.min(tile, job.width) * Math.min(tile, job.height) * cores;
+        bytes += 16L * vertices;
+        for (RenderJob j : jobs) {
+            if (j.parallelPng || j.fastPng || j.palettePng || j.stream) {
+                bytes += 2L * PngWriter.BLOCK_SIZE * (2 * cores + 2);
+                break;
+            }
+        }
+        return bytes;
+    }
+
+    // Paints the image of the jobs of painting and writes it for each
+    private void paint(Painting painting, ViewerIO verterIO, String coordFile) throws IOException {
+        RenderJob job = painting.jobs.get(0);
+        int[] windowSizes = { job.width, job.height };
+        HashMap<Vertex, Label> labels = job.labels ? verterIO.getLabels() : NO_LABELS;
+        FormatVertex formatter = new FormatVertex(verterIO.getGraph(), labels, verterIO.getLabelScale(),
+                job.region[0], job.region[1], job.region[2], job.region[3], job.alignCenter,
+                verterIO.getStats(), windowSizes, 0);
+        formatter.setFitQuantiles(pa.fitQuantiles[0], pa.fitQuantiles[1]);
+
+        EdgesPanel panel = new EdgesPanel(verterIO.getGraph(), labels, job.width, job.height);
+
+        if (job.edgeColors && !verterIO.getEdgeColorMap().isEmpty())
+            panel.setEdgeColors(verterIO.getEdgeColorMap());
+
+        panel.showVertices(true);
+        panel.setVisibilityTest(true);
+        panel.setFormatter(formatter);
+        panel.setEdgeColor(job.edgeColor);
+        panel.setVertexColor(Color.white);
+        panel.setBackgroundColor(job.background);
+        panel.setEdgeBlend(job.edgeBlend);
+        panel.setFastLines(job.fastLines);
+        if (!job.java2dLines)
+            panel.setJava2DLines(false);
+
+        // Now the image has to be fitted to the given region
+        panel.fitData();
+        if (job.view != null) {
+            formatter.showBookmark(pa.bookmarks.getBookmark(job.view));
+        }
+        if (job.stream) {
+            setPng(panel, job);
+            panel.writeBandedImage(job.fileName(coordFile));
+        } else {
+            BufferedImage image = new BufferedImage(job.width, job.height, BufferedImage.TYPE_INT_ARGB);
+            panel.renderImage(image);
+            for (RenderJob j : painting.jobs) {
+                setPng(panel, j);
+                panel.writePngImage(image, j.fileName(coordFile));
+            }
+        }
+        System.out.println("Done.");
+    }
+
+    private static void setPng(EdgesPanel panel, RenderJob job) {
+        panel.setParallelPng(job.parallelPng);
+        panel.setFastPng(job.fastPng);
+        panel.setPalettePng(job.palettePng);
+    }
+
+    // ---------------------------------------------------------
+    // PAINTING
+    // ---------------------------------------------------------
+
+    private static class Painting {
+        final List<RenderJob> jobs = new ArrayList<RenderJob>();
+        long estimate; // bytes
+    }
+
+}
@@ -0,0 +1,117 @@
+package Viewer2D;
+
+/**
+ * <p>
+ * Immutable 2D affine transform:
+ * </p>
+ *
+ * <pre>
+ * | m00 m01 m02 |   | x |
+ * | m10 m11 m12 | * | y |
+ * |  0   0   1  |   | 1 |
+ * </pre>
+ * <p>
+ * Composition and inversion are closed form on the six values. Products are
+ * summed in the same order as a 3x3 {@link Jama.Matrix} product, so results
+ * match the matrices this replaces.
+ * </p>
+ */
+public final class Affine2D {
+
+	public static final Affine2D IDENTITY = new Affine2D(1, 0, 0, 0, 1, 0);
+
+	private final double m00, m01, m02;
+	private final double m10, m11, m12;
+
+	// CONSTRUCTORS
+	public Affine2D(double m00, double m01, double m02, double m10,
+			double m11, double m12) {
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m02 = m02;
+		this.m10 = m10;
+		this.m11 = m11;
+		this.m12 = m12;
+	}
+
+	public static Affine2D translation(double dx, double dy) {
+		return new Affine2D(1, 0, dx, 0, 1, dy);
+	}
+
+	public static Affine2D scaling(double sx, double sy) {
+		return new Affine2D(sx, 0, 0, 0, sy, 0);
+	}
+
+	// ACCESSORS
+	public double m00() {
+		return m00;
+	}
+
+	public double m01() {
+		return m01;
+	}
+
+	public double m02() {
+		return m02;
+	}
+
+	public double m10() {
+		return m10;
+	}
+
+	public double m11() {
+		return m11;
+	}
+
+	public double m12() {
+		return m12;
+	}
+
+	// this * t: t is applied first
+	public Affine2D times(Affine2D t) {
+		return new Affine2D(m00 * t.m00 + m01 * t.m10, m00 * t.m01 + m01
+				* t.m11, m00 * t.m02 + m01 * t.m12 + m02, m10 * t.m00 + m11
+				* t.m10, m10 * t.m01 + m11 * t.m11, m10 * t.m02 + m11 * t.m12
+				+ m12);
+	}
+
+	public Affine2D inverse() {
+		double det = m00 * m11 - m01 * m10;
+		if (det == 0 || Double.isNaN(det) || Double.isInfinite(det)) {
+			throw new ArithmeticException("Transform is singular.");
+		}
+		double i00 = m11 / det;
+		double i01 = -m01 / det;
+		double i10 = -m10 / det;
+		double i11 = m00 / det;
+		return new Affine2D(i00, i01, -(i00 * m02 + i01 * m12), i10, i11,
+				-(i10 * m02 + i11 * m12));
+	}
+
+	// Length of the transformed x axis, the zoom factor of a view
+	public double scale() {
+		return Math.sqrt(m00 * m00 + m01 * m01);
+	}
+
+	public double transformX(double x, double y) {
+		return m00 * x + m01 * y + m02;
+	}
+
+	public double transformY(double x, double y) {
+		return m10 * x + m11 * y + m12;
+	}
+
+	// Transforms len points starting at offset from the xs/ys columns
+	// into dstX/dstY at the same offset. The destination may be the
+	// source. Runs on CoordKernels.
+	public void transform(double[] xs, double[] ys, double[] dstX,
+			double[] dstY, int offset, int len) {
+		CoordKernels.get().transform(this, xs, ys, dstX, dstY, offset, len);
+	}
+
+	public void print() {
+		System.out.println(m00 + " " + m01 + " " + m02);
+		System.out.println(m10 + " " + m11 + " " + m12);
+	}
+
+}
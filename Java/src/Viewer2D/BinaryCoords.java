@@ -0,0 +1,164 @@
+package Viewer2D;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Binary coordinate file (.bcoords): the x and y of every vertex as
+ * float32, indexed by the vertex index of the graph it was written for.
+ * Loading it is a straight copy out of a mapped buffer, with no parsing and
+ * no id lookups.
+ * </p>
+ * <p>
+ * Layout, little endian:
+ * </p>
+ *
+ * <pre>
+ * "LGLC" version vertexCount 0 fingerprint   (24 bytes)
+ * float[vertexCount] x
+ * float[vertexCount] y
+ * </pre>
+ * <p>
+ * The fingerprint is {@link GraphStore#fingerprint()} of the graph, so a
+ * file is refused by a graph with another vertex order. Vertices the source
+ * .coords file did not list are stored as NaN and keep their location on
+ * load, as with the text format.
+ * </p>
+ */
+public class BinaryCoords {
+
+	public static final String EXTENSION = ".bcoords";
+	public static final int VERSION = 1;
+
+	private static final int MAGIC = 'L' | 'G' << 8 | 'L' << 16 | 'C' << 24;
+	private static final int HEADER_SIZE = 24;
+
+	private BinaryCoords() {
+	}
+
+	// ---------------------------------------------------------
+	// STATIC METHOD CALLS
+	// ---------------------------------------------------------
+
+	// True if the file starts with the binary coordinate magic
+	public static boolean isBinary(File f) {
+		if (f.length() < HEADER_SIZE) {
+			return false;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(f, "r");
+			try {
+				ByteBuffer b = ByteBuffer.allocate(4).order(
+						ByteOrder.LITTLE_ENDIAN);
+				raf.getChannel().read(b, 0);
+				return b.getInt(0) == MAGIC;
+			} finally {
+				raf.close();
+			}
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	// x.coords -> x.bcoords
+	public static File binaryFile(File coords) {
+		String path = coords.getPath();
+		if (path.endsWith(".coords")) {
+			path = path.substring(0, path.length() - ".coords".length());
+		}
+		return new File(path + EXTENSION);
+	}
+
+	// Sets the location of every vertex stored in the file and adds it
+	// to the stats
+	public static void load(File f, GraphStore graph, VertexStats stats)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			long length = raf.length();
+			if (length < HEADER_SIZE) {
+				throw new IOException(f + " is not a binary coordinate file.");
+			}
+			MappedByteBuffer b = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, length);
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			if (b.getInt(0) != MAGIC) {
+				throw new IOException(f + " is not a binary coordinate file.");
+			}
+			if (b.getInt(4) != VERSION) {
+				throw new IOException(f + " has unsupported version "
+						+ b.getInt(4) + ".");
+			}
+			int n = b.getInt(8);
+			if (n != graph.vertexCount() || b.getLong(16) != graph.fingerprint()) {
+				throw new IOException(f
+						+ " was written for a different graph or vertex order.");
+			}
+			if (length < HEADER_SIZE + 8L * n) {
+				throw new IOException(f + " is truncated.");
+			}
+			b.position(HEADER_SIZE);
+			FloatBuffer xb = b.slice().order(ByteOrder.LITTLE_ENDIAN)
+					.asFloatBuffer();
+			double[] xs = graph.xs();
+			double[] ys = graph.ys();
+			for (int v = 0; v < n; ++v) {
+				float x = xb.get(v);
+				float y = xb.get(n + v);
+				if (x != x || y != y) {
+					continue; // not listed
+				}
+				xs[v] = x;
+				ys[v] = y;
+				stats.addStats(x, y);
+			}
+			graph.layoutChanged();
+		} finally {
+			raf.close();
+		}
+	}
+
+	// Writes the locations of the listed vertices (all of them if listed
+	// is null), the others as NaN
+	public static void write(File f, GraphStore graph, BitSet listed)
+			throws IOException {
+		int n = graph.vertexCount();
+		ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE + 8 * n).order(
+				ByteOrder.LITTLE_ENDIAN);
+		b.putInt(MAGIC);
+		b.putInt(VERSION);
+		b.putInt(n);
+		b.putInt(0);
+		b.putLong(graph.fingerprint());
+		FloatBuffer fb = b.asFloatBuffer();
+		for (int v = 0; v < n; ++v) {
+			boolean on = listed == null || listed.get(v);
+			fb.put(v, on ? (float) graph.x(v) : Float.NaN);
+			fb.put(n + v, on ? (float) graph.y(v) : Float.NaN);
+		}
+		File tmp = new File(f.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			b.position(0);
+			while (b.hasRemaining()) {
+				channel.write(b);
+			}
+		} finally {
+			raf.close();
+		}
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+}
@@ -0,0 +1,95 @@
+package Viewer2D;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Optional colors of the edges (or vertices) of a {@link GraphStore}, kept as
+ * one packed ARGB <code>int</code> per element index plus a bit set telling
+ * which elements have a color at all.
+ * </p>
+ * <p>
+ * The colored elements are walked in index order, and the painters draw
+ * colored edges in that order, so overlapping ones always stack the same
+ * way.
+ * </p>
+ */
+public class ColorColumn {
+
+	private int[] argb;
+	private final BitSet present;
+
+	// CONSTRUCTORS
+	public ColorColumn() {
+		this(0);
+	}
+
+	public ColorColumn(int capacity) {
+		argb = new int[Math.max(capacity, 16)];
+		present = new BitSet(capacity);
+	}
+
+	// MUTATORS
+	public void set(int i, Color c) {
+		set(i, c.getRGB());
+	}
+
+	public void set(int i, int color) {
+		if (i >= argb.length) {
+			argb = Arrays.copyOf(argb, Math.max(i + 1, argb.length * 2));
+		}
+		argb[i] = color;
+		present.set(i);
+	}
+
+	public void remove(int i) {
+		present.clear(i);
+	}
+
+	// Copies every color set in c
+	public void putAll(ColorColumn c) {
+		for (int i = c.next(0); i >= 0; i = c.next(i + 1)) {
+			set(i, c.argb[i]);
+		}
+	}
+
+	// Drops the color of every element colored in c
+	public void removeAll(ColorColumn c) {
+		present.andNot(c.present);
+	}
+
+	public void clear() {
+		present.clear();
+	}
+
+	// ACCESSORS
+	public boolean has(int i) {
+		return present.get(i);
+	}
+
+	// Packed ARGB, only meaningful if has(i)
+	public int argb(int i) {
+		return argb[i];
+	}
+
+	// Null if the element has no color
+	public Color color(int i) {
+		return has(i) ? new Color(argb[i], true) : null;
+	}
+
+	// The next colored index at or after from, -1 if there is none
+	public int next(int from) {
+		return present.nextSetBit(from);
+	}
+
+	public boolean isEmpty() {
+		return present.isEmpty();
+	}
+
+	public int size() {
+		return present.cardinality();
+	}
+
+}
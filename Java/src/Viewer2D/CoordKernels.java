@@ -0,0 +1,170 @@
+package Viewer2D;
+
+/**
+ * <p>
+ * The per-frame loops over coordinate columns: applying an {@link Affine2D}
+ * to N points and reducing N points to their bounds, sums and count.
+ * </p>
+ * <p>
+ * {@link #get()} returns the SIMD reduce (Viewer2D.VectorCoordKernels, built
+ * apart by make simd) when its class is there and the JVM runs with
+ * <code>--add-modules jdk.incubator.vector</code> on vectors of 256 bits or
+ * more, and the scalar kernels otherwise. Setting the system property
+ * <code>lgl.simd=false</code> forces the scalar ones.
+ * </p>
+ * <p>
+ * Both give bit identical results: the sums are kept in {@link #LANES}
+ * interleaved partial sums added up in lane order, however wide the
+ * hardware vectors are. The transform is always the scalar one.
+ * </p>
+ */
+public abstract class CoordKernels {
+
+	// Partial sums of a reduction, fixed so totals do not depend on the
+	// machine
+	public static final int LANES = 4;
+
+	// Layout of the reduce() result
+	public static final int MIN_X = 0, MIN_Y = 1, MAX_X = 2, MAX_Y = 3,
+			SUM_X = 4, SUM_Y = 5, COUNT = 6, RESULT_SIZE = 7;
+
+	private static final CoordKernels INSTANCE = load();
+
+	// CONSTRUCTORS
+	protected CoordKernels() {
+	}
+
+	public static CoordKernels get() {
+		return INSTANCE;
+	}
+
+	public static CoordKernels scalar() {
+		return Scalar.INSTANCE;
+	}
+
+	// ACCESSORS
+	public abstract String name();
+
+	// dst = t * src for len points from offset, in place if dst is src
+	public abstract void transform(Affine2D t, double[] xs, double[] ys,
+			double[] dstX, double[] dstY, int offset, int len);
+
+	// Fills result with min/max x and y (Math.min/max semantics), the sums
+	// and the count of the points from offset. Points with a NaN
+	// coordinate are left out; with no points left the bounds are
+	// +/-Infinity.
+	public abstract void reduce(double[] xs, double[] ys, int offset, int len,
+			double[] result);
+
+	// PRIVATE METHOD CALLS
+	private static CoordKernels load() {
+		if (!"false".equals(System.getProperty("lgl.simd"))) {
+			try {
+				return (CoordKernels) Class
+						.forName("Viewer2D.VectorCoordKernels")
+						.getDeclaredConstructor().newInstance();
+			} catch (LinkageError ex) {
+				// The module is not there or the vectors are too narrow,
+				// fall through
+			} catch (ReflectiveOperationException ex) {
+				// Not built
+			}
+		}
+		return Scalar.INSTANCE;
+	}
+
+	// ---------------------------------------------------------
+	// SCALAR IMPLEMENTATION
+	// ---------------------------------------------------------
+
+	private static class Scalar extends CoordKernels {
+
+		static final Scalar INSTANCE = new Scalar();
+
+		public String name() {
+			return "scalar";
+		}
+
+		public void transform(Affine2D t, double[] xs, double[] ys,
+				double[] dstX, double[] dstY, int offset, int len) {
+			double m00 = t.m00(), m01 = t.m01(), m02 = t.m02();
+			double m10 = t.m10(), m11 = t.m11(), m12 = t.m12();
+			for (int ii = offset; ii < offset + len; ++ii) {
+				double x = xs[ii];
+				double y = ys[ii];
+				dstX[ii] = m00 * x + m01 * y + m02;
+				dstY[ii] = m10 * x + m11 * y + m12;
+			}
+		}
+
+		public void reduce(double[] xs, double[] ys, int offset, int len,
+				double[] result) {
+			double minX = Double.POSITIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			// One partial sum per lane, point ii goes to lane ii % LANES
+			double x0 = 0, x1 = 0, x2 = 0, x3 = 0;
+			double y0 = 0, y1 = 0, y2 = 0, y3 = 0;
+			int count = 0;
+			int end = offset + len;
+			int blocks = offset + len / LANES * LANES;
+			int ii = offset;
+			for (; ii < blocks; ii += LANES) {
+				for (int k = 0; k < LANES; ++k) {
+					double x = xs[ii + k];
+					double y = ys[ii + k];
+					if (x != x || y != y) {
+						continue;
+					}
+					minX = Math.min(minX, x);
+					minY = Math.min(minY, y);
+					maxX = Math.max(maxX, x);
+					maxY = Math.max(maxY, y);
+					switch (k) {
+					case 0:
+						x0 += x;
+						y0 += y;
+						break;
+					case 1:
+						x1 += x;
+						y1 += y;
+						break;
+					case 2:
+						x2 += x;
+						y2 += y;
+						break;
+					default:
+						x3 += x;
+						y3 += y;
+					}
+					++count;
+				}
+			}
+			double totalX = x0 + x1 + x2 + x3;
+			double totalY = y0 + y1 + y2 + y3;
+			for (; ii < end; ++ii) {
+				double x = xs[ii];
+				double y = ys[ii];
+				if (x == x && y == y) {
+					minX = Math.min(minX, x);
+					minY = Math.min(minY, y);
+					maxX = Math.max(maxX, x);
+					maxY = Math.max(maxY, y);
+					totalX += x;
+					totalY += y;
+					++count;
+				}
+			}
+			result[MIN_X] = minX;
+			result[MIN_Y] = minY;
+			result[MAX_X] = maxX;
+			result[MAX_Y] = maxY;
+			result[SUM_X] = totalX;
+			result[SUM_Y] = totalY;
+			result[COUNT] = count;
+		}
+
+	}
+
+}
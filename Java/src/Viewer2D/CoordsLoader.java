@@ -0,0 +1,232 @@
+package Viewer2D;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Parallel loader for .coords files ("id x y" per line, blank lines and
+ * lines starting with '#' ignored).
+ * </p>
+ * <p>
+ * The file is memory mapped and cut into chunks of {@link #CHUNK_SIZE}
+ * bytes, each moved forward to the next line start. The chunks are parsed
+ * on the common fork-join pool, every one into its own {@link VertexStats}
+ * (with quantile digests if the target stats keep them) and its own list of
+ * locations. Both are then merged in file order, so the result does not
+ * depend on the number of threads, and a vertex listed twice keeps its last
+ * location as with a sequential read.
+ * </p>
+ * <p>
+ * A malformed line stops its chunk. Each chunk counts its newlines, so the
+ * first error in file order is reported with its global line number.
+ * </p>
+ */
+public class CoordsLoader {
+
+	// Fixed so the chunking (and the order stats are summed in) only
+	// depends on the file
+	public static final int CHUNK_SIZE = 1 << 22;
+
+	private static final int DIMENSION = Vertex.DIMENSION;
+
+	private final GraphStore graph;
+
+	// CONSTRUCTORS
+	public CoordsLoader(GraphStore graph) {
+		this.graph = graph;
+	}
+
+	// Reads the file into the graph locations and adds the coordinates to
+	// the given stats.
+	public void load(File f, VertexStats stats) throws IOException {
+		load(f, stats, null);
+	}
+
+	// Same, also marking every vertex the file lists in the given set
+	// (when not null)
+	public void load(File f, VertexStats stats, BitSet listed)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long[] bounds = FileChunker.lineAligned(channel, CHUNK_SIZE);
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			for (int ii = 0; ii + 1 < bounds.length; ++ii) {
+				chunks.add(new Chunk(channel, bounds[ii], bounds[ii + 1],
+						stats.hasQuantiles()));
+			}
+			ForkJoinTask.invokeAll(chunks);
+
+			int linesBefore = 0;
+			for (Chunk c : chunks) {
+				if (c.failure != null) {
+					throw c.failure;
+				}
+				if (c.error != null) {
+					throw new IOException(MessageFormat.format(c.error,
+							linesBefore + c.errorLine));
+				}
+				linesBefore += c.lines;
+			}
+			for (Chunk c : chunks) {
+				for (int ii = 0; ii < c.count; ++ii) {
+					graph.setLocation(c.vertices[ii], c.xs[ii], c.ys[ii]);
+					if (listed != null) {
+						listed.set(c.vertices[ii]);
+					}
+				}
+				stats.integrateVertexStats(c.stats);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	// ---------------------------------------------------------
+	// CHUNK TASK
+	// ---------------------------------------------------------
+
+	private class Chunk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long start, end;
+
+		final VertexStats stats;
+		int[] vertices = new int[1024];
+		double[] xs = new double[1024];
+		double[] ys = new double[1024];
+		int count;
+		int lines; // newlines seen
+		String error; // MessageFormat pattern, {0} is the line number
+		int errorLine;
+		IOException failure;
+
+		private final int[] tokenStart = new int[DIMENSION + 1];
+		private final int[] tokenEnd = new int[DIMENSION + 1];
+
+		Chunk(FileChannel channel, long start, long end, boolean quantiles) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			stats = new VertexStats(quantiles);
+		}
+
+		protected void compute() {
+			try {
+				int length = (int) (end - start);
+				if (length == 0) {
+					return;
+				}
+				MappedByteBuffer map = channel.map(
+						FileChannel.MapMode.READ_ONLY, start, length);
+				byte[] line = new byte[256];
+				int lineStart = 0;
+				for (int ii = 0; ii <= length; ++ii) {
+					if (ii < length && map.get(ii) != '\n') {
+						continue;
+					}
+					int len = ii - lineStart;
+					if (ii < length || len > 0) {
+						++lines;
+						if (len > line.length) {
+							line = new byte[Math.max(len, line.length * 2)];
+						}
+						FileChunker.copyLine(map, lineStart, line, len);
+						if (!parseLine(line, len)) {
+							return;
+						}
+					}
+					lineStart = ii + 1;
+				}
+			} catch (IOException ex) {
+				failure = ex;
+			}
+		}
+
+		// Returns false (and records the error) for a malformed line
+		private boolean parseLine(byte[] b, int len) {
+			int p = 0;
+			while (p < len && FileChunker.isBlank(b[p])) {
+				++p;
+			}
+			if (p == len || b[p] == '#') {
+				return true;
+			}
+			int tokens = 0;
+			while (p < len) {
+				int s = p;
+				while (p < len && !FileChunker.isBlank(b[p])) {
+					++p;
+				}
+				if (tokens < tokenStart.length) {
+					tokenStart[tokens] = s;
+					tokenEnd[tokens] = p;
+				}
+				++tokens;
+				while (p < len && FileChunker.isBlank(b[p])) {
+					++p;
+				}
+			}
+			int expected = DIMENSION + 1;
+			if (tokens != expected) {
+				return fail("Error at line {0}: Found " + tokens
+						+ " values while " + expected + " are expected.");
+			}
+			double px = 0, py = 0;
+			for (int ii = 1; ii <= DIMENSION; ++ii) {
+				double value;
+				try {
+					value = NumberParser.parseDouble(b, tokenStart[ii],
+							tokenEnd[ii]);
+				} catch (NumberFormatException ex) {
+					return fail("Error at line {0}: Column " + ii
+							+ " must be a double value.");
+				}
+				if (ii == 1) {
+					px = value;
+				} else {
+					py = value;
+				}
+			}
+			int vertex = graph.indexOf(b, tokenStart[0], tokenEnd[0]
+					- tokenStart[0]);
+			if (vertex < 0) {
+				// TODO: We should at least log that no vertex found
+				return true;
+			}
+			if (count == vertices.length) {
+				int capacity = count * 2;
+				vertices = Arrays.copyOf(vertices, capacity);
+				xs = Arrays.copyOf(xs, capacity);
+				ys = Arrays.copyOf(ys, capacity);
+			}
+			vertices[count] = vertex;
+			xs[count] = px;
+			ys[count] = py;
+			++count;
+			stats.addStats(px, py);
+			return true;
+		}
+
+		private boolean fail(String pattern) {
+			error = pattern;
+			errorLine = lines;
+			return false;
+		}
+
+	}
+
+}
@@ -22,45 +22,47 @@ package Viewer2D;
 //import Jama.*;
 //import Jama.Matrix.*;
 
+// A lightweight view of one edge of a GraphStore.
 public class Edge {
 
-    // Each row of the matrix is a dimension with row 0
-    // as x, row 1 as y etc...
-    private Vertex left;  // Vertex 1 of edge
-    private Vertex right; // Vertex 2 of edge
+    private final GraphStore graph;
+    private final int ndx;
     public static final int DIMENSION = Vertex.DIMENSION;
 
     ////////////////////////////////////////////////////////////    
     // CONSTRUCTORS
     ////////////////////////////////////////////////////////////
 
-    public Edge() { left = null; right = null; }
-
-    public Edge( Vertex m1 , Vertex m2 ) 
+    public Edge( GraphStore graph , int ndx ) 
     {
-	left = m1; right = m2;
+	this.graph = graph; this.ndx = ndx;
     }
 
-    ////////////////////////////////////////////////////////////
-    // MUTATORS
-    ////////////////////////////////////////////////////////////
-
-    public void vertex1( Vertex m ) { left=m; }
-    public void vertex2( Vertex m ) { right=m; }
-
     ////////////////////////////////////////////////////////////
     // ACCESSORS
     ////////////////////////////////////////////////////////////
 
-    public Vertex vertex1() { return left; }
-    public Vertex vertex2() { return right; }
+    public int index() { return ndx; }
+    public Vertex vertex1() { return graph.vertex( graph.edgeSource( ndx ) ); }
+    public Vertex vertex2() { return graph.vertex( graph.edgeTarget( ndx ) ); }
 
     public void print() {
 	System.out.println("Edge: ");
-	left.print(); 
-	right.print();
+	vertex1().print(); 
+	vertex2().print();
+    }
+
+    public boolean equals( Object o ) {
+	if ( !( o instanceof Edge ) )
+	    return false;
+	Edge e = (Edge) o;
+	return graph == e.graph && ndx == e.ndx;
     }
 
+    // The index: maps keyed by edges iterate in hash layout order, so
+    // nothing drawn may be walked from one (see ColorColumn)
+    public int hashCode() { return ndx; }
+
     ////////////////////////////////////////////////////////////
     // STATIC METHOD CALLS
     ////////////////////////////////////////////////////////////
@@ -0,0 +1,164 @@
+package Viewer2D;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Order of importance of the edges of a {@link GraphStore}, for drawing a
+ * subset of them when there are more edges on screen than pixels to show
+ * them. Any prefix of the order is a sample of the edges.
+ * </p>
+ * <p>
+ * Edges are ranked in a weighted random order (Efraimidis-Spirakis keys
+ * <code>u^(1/w)</code>, w being 1 plus the log of the larger endpoint
+ * degree), so a prefix is a weighted sample without replacement leaning to
+ * well connected vertices. On top of that every hub, one of the
+ * {@link #HUB_FRACTION} highest degree vertices with at least
+ * {@link #HUB_DEGREE_FACTOR} times the mean degree, has its first edges
+ * moved to the front: an even share of {@link #HUB_EDGE_SHARE} of all the
+ * edges each, so every hub keeps its star however small the prefix and
+ * however few edges the smaller hubs have next to the largest. The random draws are a
+ * hash of the edge index: the same graph always gets the same order.
+ * </p>
+ * <p>
+ * Only the topology is used, so the order holds across coordinate loads,
+ * see {@link GraphStore#edgeImportance()}.
+ * </p>
+ */
+public class EdgeImportance {
+
+	public static final double HUB_FRACTION = 0.001;
+	public static final double HUB_DEGREE_FACTOR = 8;
+	public static final double HUB_EDGE_SHARE = 0.02;
+
+	// Marks a key as moved to the front, above the key bits
+	private static final long HUB_FIRST = 1L << 62;
+
+	private final int[] order; // most important first
+	private final int[] rank; // position of each edge in order
+	private int hubEdges;
+
+	// Last prefix asked for
+	private int[] prefix = new int[0];
+
+	// CONSTRUCTORS
+	public EdgeImportance(GraphStore graph) {
+		int vertexCount = graph.vertexCount();
+		int edgeCount = graph.edgeCount();
+		int[] src = graph.edgeSources();
+		int[] dst = graph.edgeTargets();
+		int[] degree = new int[vertexCount];
+		for (int e = 0; e < edgeCount; ++e) {
+			++degree[src[e]];
+			++degree[dst[e]];
+		}
+		int hubDegree = hubDegree(degree, edgeCount);
+
+		// Key, then the edge, sorted ascending
+		long[] keys = new long[edgeCount];
+		for (int e = 0; e < edgeCount; ++e) {
+			int d = Math.max(degree[src[e]], degree[dst[e]]);
+			double u = ((mix(e) >>> 11) + 1) * 0x1.0p-53;
+			// -ln(u^(1/w)) >= 0, smaller is more important
+			float key = (float) (Math.log(1 / u) / (1 + Math.log(d)));
+			keys[e] = (long) Float.floatToIntBits(key) << 31 | e;
+		}
+		Arrays.sort(keys);
+
+		// The degrees become the hub quotas
+		int hubs = 0;
+		for (int d : degree) {
+			if (d >= hubDegree) {
+				++hubs;
+			}
+		}
+		int quota = hubs == 0 ? 0 : (int) Math.max(1, HUB_EDGE_SHARE
+				* edgeCount / hubs);
+		for (int v = 0; v < vertexCount; ++v) {
+			degree[v] = degree[v] >= hubDegree ? quota : 0;
+		}
+		for (int ii = 0; ii < edgeCount; ++ii) {
+			int e = (int) (keys[ii] & Integer.MAX_VALUE);
+			int hub = degree[src[e]] > 0 ? src[e] : dst[e];
+			if (degree[hub] > 0) {
+				--degree[hub];
+				keys[ii] |= HUB_FIRST;
+				++hubEdges;
+			}
+		}
+
+		order = new int[edgeCount];
+		rank = new int[edgeCount];
+		int front = 0;
+		int back = hubEdges;
+		for (int ii = 0; ii < edgeCount; ++ii) {
+			int e = (int) (keys[ii] & Integer.MAX_VALUE);
+			int r = (keys[ii] & HUB_FIRST) != 0 ? front++ : back++;
+			order[r] = e;
+			rank[e] = r;
+		}
+	}
+
+	// ACCESSORS
+	public int edgeCount() {
+		return order.length;
+	}
+
+	// Edges at a hub, the first ones of the order
+	public int hubEdgeCount() {
+		return hubEdges;
+	}
+
+	// Position of each edge in the order, by edge index. Must not be
+	// modified.
+	public int[] ranks() {
+		return rank;
+	}
+
+	// The n most important edges in increasing index order. The array is
+	// kept until another n is asked for and must not be modified.
+	public synchronized int[] prefix(int n) {
+		n = Math.max(0, Math.min(n, order.length));
+		if (prefix.length != n) {
+			prefix = Arrays.copyOf(order, n);
+			Arrays.sort(prefix);
+		}
+		return prefix;
+	}
+
+	// ---------------------------------------------------------
+	// PRIVATE METHOD CALLS
+	// ---------------------------------------------------------
+
+	// Lowest degree of a hub, above any degree when there is none
+	private static int hubDegree(int[] degree, int edgeCount) {
+		int max = 0;
+		for (int d : degree) {
+			max = Math.max(max, d);
+		}
+		int[] count = new int[max + 1];
+		for (int d : degree) {
+			++count[d];
+		}
+		long hubs = (long) (HUB_FRACTION * degree.length);
+		double mean = degree.length == 0 ? 0 : 2.0 * edgeCount
+				/ degree.length;
+		int lowest = Math.max(1, (int) Math.ceil(HUB_DEGREE_FACTOR * mean));
+		int d = max + 1;
+		long above = 0;
+		while (d > lowest && above + count[d - 1] <= hubs) {
+			--d;
+			above += count[d];
+		}
+		return d;
+	}
+
+	// SplitMix64 finalizer
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,166 @@
+package Viewer2D;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Open addressing hash map from an undirected vertex pair to an edge index.
+ * The pair is packed into one <code>long</code> (smaller vertex index in the
+ * high word, larger in the low word) so (a,b) and (b,a) share a key, the
+ * same way {@link Edge#idEdge(String, String)} orders the two ids. Keys and
+ * values live in two primitive arrays probed linearly, so a lookup allocates
+ * nothing.
+ * </p>
+ */
+public class EdgeKeyMap {
+
+	// Vertex indices are never negative, so no valid key has the sign bit
+	private static final long EMPTY = -1L;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	// CONSTRUCTORS
+	public EdgeKeyMap() {
+		this(16);
+	}
+
+	public EdgeKeyMap(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	// Adopts a table saved from keys()/values(), see GraphSnapshot
+	EdgeKeyMap(long[] keys, int[] values, int size) {
+		this.keys = keys;
+		this.values = values;
+		this.size = size;
+		mask = keys.length - 1;
+		resizeAt = (int) (keys.length * LOAD_FACTOR);
+	}
+
+	// MUTATORS
+
+	// Maps the pair to the edge unless the pair is already present.
+	// Returns the edge already stored for the pair, or -1 if the new
+	// edge was added.
+	public int putIfAbsent(int v1, int v2, int edge) {
+		long key = key(v1, v2);
+		int slot = slot(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = edge;
+		if (++size > resizeAt) {
+			rehash();
+		}
+		return -1;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	// ACCESSORS
+
+	// Returns the edge between the two vertices in either direction, or
+	// -1 if there is none.
+	public int get(int v1, int v2) {
+		long key = key(v1, v2);
+		int slot = slot(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	public boolean contains(int v1, int v2) {
+		return get(v1, v2) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// The raw table, for GraphSnapshot. Empty slots hold -1.
+	long[] keys() {
+		return keys;
+	}
+
+	int[] values() {
+		return values;
+	}
+
+	public long estimatedHeapBytes() {
+		return 32 + (long) keys.length * (8 + 4);
+	}
+
+	// ---------------------------------------------------------
+	// STATIC METHOD CALLS
+	// ---------------------------------------------------------
+
+	// The direction independent key of an edge
+	public static long key(int v1, int v2) {
+		if (v1 > v2) {
+			int t = v1;
+			v1 = v2;
+			v2 = t;
+		}
+		return ((long) v1 << 32) | (v2 & 0xffffffffL);
+	}
+
+	// PRIVATE METHOD CALLS
+	private int slot(long key) {
+		// murmur3 finalizer, spreads the packed indices over the table
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length << 1);
+		for (int ii = 0; ii < oldKeys.length; ++ii) {
+			long key = oldKeys[ii];
+			if (key == EMPTY) {
+				continue;
+			}
+			int slot = slot(key);
+			while (keys[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = oldValues[ii];
+		}
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		long needed = (long) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+		int capacity = Integer.highestOneBit((int) Math.min(needed, 1 << 30));
+		return capacity < needed ? capacity << 1 : capacity;
+	}
+
+}
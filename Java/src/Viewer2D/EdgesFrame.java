@@ -42,8 +42,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 import javax.swing.AbstractAction;
+import javax.swing.ButtonGroup;
 import javax.swing.JButton;
 import javax.swing.JColorChooser;
 import javax.swing.JComponent;
@@ -87,13 +89,14 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 	static final int FRAME_WIDTH = 1024;
 	static final int FRAME_HEIGHT = 768;
 
-	private Edge[] edges;
-	private Vertex[] vertices;
+	private GraphStore graph;
 
 	private HashMap labels;
 
 	private double labelScale;
 
+	private double fitLow = 0, fitHigh = 1; // see FormatVertex
+
 	private EdgesPanel panel; // Has the edges drawn
 	private JTextField statusBar; // Shows highlighted/user info
 
@@ -103,12 +106,6 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 	private File edgesFile;
 	private File coordsFile;
 
-	// These are hashes relating edge/vertex id
-	// to specific info
-	@SuppressWarnings("rawtypes")
-	private HashMap vertexIdMap;
-	@SuppressWarnings("rawtypes")
-	private HashMap edgeIdMap;
 
 	private int threads;
 
@@ -117,6 +114,7 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 	private BorderLayout layout;
 
 	private FormatVertex formatter;
+	private ViewHistory viewHistory = new ViewHistory(); // across loads
 	private int[] windowSizes;
 
 	private double moveStepSize;
@@ -147,7 +145,7 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 	public EdgesFrame(String title, int x, int y) {
 		super(title);
 
-		threads = 1;
+		threads = 0; // every core
 
 		STATUSBAR_Y = 50;
 
@@ -172,7 +170,7 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
-		panel = new EdgesPanel(edges, vertices, new HashMap(),screen.width,screen.height);//windowSizes[0], windowSizes[1]);
+		panel = new EdgesPanel(graph, new LinkedHashMap<Vertex, Label>(),screen.width,screen.height);//windowSizes[0], windowSizes[1]);
 		panel.setBackground(backgroundColor);
 
 		setMenuBars();
@@ -481,6 +479,26 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		});
 		fileMenu.add(labelMenu);
 
+		// HOW SNAPSHOTS ARE ENCODED
+		JMenu pngMenu = new JMenu("SnapShot PNG");
+		pngMenu.setMnemonic('P');
+		String[] encodings = { "ImageIO", "Parallel", "Parallel, Fast" };
+		ButtonGroup pngGroup = new ButtonGroup();
+		for (int ii = 0; ii < encodings.length; ++ii) {
+			final int encoding = ii;
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(
+					encodings[ii], ii == 0);
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					panel.setParallelPng(encoding > 0);
+					panel.setFastPng(encoding > 1);
+				}
+			});
+			pngGroup.add(item);
+			pngMenu.add(item);
+		}
+		fileMenu.add(pngMenu);
+
 
 
 
@@ -576,6 +594,37 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		});
 		edit.add(labelscalesize);
 
+		// QUANTILES THE FIT SPANS
+		JMenuItem fitQuantiles = new JMenuItem("Change Fit Quantiles");
+		fitQuantiles.setMnemonic('Q');
+		fitQuantiles.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				String range = JOptionPane.showInputDialog(EdgesFrame.this,
+						"Enter the quantiles to fit as low,high (0,1 is all)",
+						fitLow + "," + fitHigh);
+				if (range != null) {
+					String[] a = range.split(",");
+					try {
+						if (a.length != 2) {
+							throw new IllegalArgumentException();
+						}
+						setFitQuantiles(Double.parseDouble(a[0].trim()),
+								Double.parseDouble(a[1].trim()));
+					} catch (IllegalArgumentException ex) {
+						JOptionPane.showMessageDialog(null, "Illegal Value",
+								"Error", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
+					if (formatter != null) {
+						panel.fitData();
+						panel.setPaintImage();
+						panel.repaint();
+					}
+				}
+			}
+		});
+		edit.add(fitQuantiles);
+
 
 		// BUTTON TO REMOVE TRANSIENT EDGES
 		blockers = new JRadioButton("Remove Transient Edges");
@@ -595,6 +644,78 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		panel.setVisibilityTest(true);
 		edit.add(blockers);
 
+		// HOW FAR OFF SCREEN AN EDGE MAY REACH BEFORE IT IS TRANSIENT
+		JMenuItem transientLimit = new JMenuItem("Change Transient Limit");
+		transientLimit.setMnemonic('T');
+		transientLimit.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				String value = JOptionPane.showInputDialog(EdgesFrame.this,
+						"Enter the screen coordinate edges may reach (> 0)",
+						Double.toString(panel.getTransientLimit()));
+				if (value != null) {
+					double limit;
+					try {
+						limit = Double.parseDouble(value.trim());
+					} catch (NumberFormatException ex) {
+						limit = 0;
+					}
+					if (limit <= 0) {
+						JOptionPane.showMessageDialog(null, "Illegal Value",
+								"Error", JOptionPane.ERROR_MESSAGE);
+					} else {
+						panel.setTransientLimit(limit);
+						panel.setPaintImage();
+						panel.repaint();
+					}
+				}
+			}
+		});
+		edit.add(transientLimit);
+
+		// DRAWING A SUBSET OF THE EDGES WHILE MOVING AROUND
+		final JRadioButton lod = new JRadioButton("Level of Detail");
+		lod.setMnemonic('L');
+		lod.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				panel.setLevelOfDetail(lod.isSelected());
+				panel.setPaintImage();
+				panel.repaint();
+			}
+		});
+		lod.setSelected(true);
+		panel.setLevelOfDetail(true);
+		edit.add(lod);
+
+		JMenuItem edgeBudget = new JMenuItem("Change Edge Budget");
+		edgeBudget.setMnemonic('B');
+		edgeBudget.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				String value = JOptionPane.showInputDialog(EdgesFrame.this,
+						"Enter the edges drawn per frame and the pixels per edge"
+								+ " below which that applies, as budget,pixels",
+						panel.getEdgeBudget() + "," + panel.getLodThreshold());
+				if (value != null) {
+					String[] a = value.split(",");
+					try {
+						if (a.length != 2) {
+							throw new IllegalArgumentException();
+						}
+						int budget = Integer.parseInt(a[0].trim());
+						double pixels = Double.parseDouble(a[1].trim());
+						panel.setEdgeBudget(budget);
+						panel.setLodThreshold(pixels);
+					} catch (IllegalArgumentException ex) {
+						JOptionPane.showMessageDialog(null, "Illegal Value",
+								"Error", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
+					panel.setPaintImage();
+					panel.repaint();
+				}
+			}
+		});
+		edit.add(edgeBudget);
+
 		bar.add(edit);
 
 		// -----------------------------------------------------
@@ -648,7 +769,7 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		showIdsHighlighted.setMnemonic('I');
 		showIdsHighlighted.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				if (panel.getVertices() != null) {
+				if (panel.getGraph() != null) {
 					if (showIdsHighlighted.isSelected()) {
 						panel.prepIdRegion(true);
 						statusMessage = "Enabled ID Region";
@@ -665,6 +786,121 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 
 		bar.add(highlight);
 
+		// -----------------------------------------------------
+		// VIEW HISTORY AND BOOKMARKS
+		// -----------------------------------------------------
+
+		JMenu viewMenu = new JMenu("View");
+		viewMenu.setMnemonic('V');
+
+		JMenuItem undoView = new JMenuItem("Undo View");
+		undoView.setMnemonic('U');
+		undoView.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+				InputEvent.CTRL_DOWN_MASK));
+		undoView.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (panel.undo()) {
+					panel.setPaintImage();
+					panel.repaint();
+				}
+			}
+		});
+		viewMenu.add(undoView);
+
+		JMenuItem redoView = new JMenuItem("Redo View");
+		redoView.setMnemonic('R');
+		redoView.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y,
+				InputEvent.CTRL_DOWN_MASK));
+		redoView.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (panel.redo()) {
+					panel.setPaintImage();
+					panel.repaint();
+				}
+			}
+		});
+		viewMenu.add(redoView);
+
+		JMenuItem addBookmark = new JMenuItem("Bookmark View");
+		addBookmark.setMnemonic('B');
+		addBookmark.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (vertexCheck()) {
+					String name = JOptionPane.showInputDialog(
+							EdgesFrame.this, "Name of the bookmark (one word)");
+					if (name != null) {
+						try {
+							formatter.bookmarkView(name.trim());
+							statusBar.setText("Bookmarked " + name.trim());
+						} catch (IllegalArgumentException ex) {
+							JOptionPane.showMessageDialog(null,
+									ex.getMessage(), "Error",
+									JOptionPane.ERROR_MESSAGE);
+						}
+					}
+				}
+			}
+		});
+		viewMenu.add(addBookmark);
+
+		JMenuItem gotoBookmark = new JMenuItem("Go to Bookmark");
+		gotoBookmark.setMnemonic('G');
+		gotoBookmark.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (vertexCheck()) {
+					Object[] names = viewHistory.bookmarkNames().toArray();
+					if (names.length == 0) {
+						JOptionPane.showMessageDialog(null,
+								"There are no bookmarks.", "Error",
+								JOptionPane.ERROR_MESSAGE);
+						return;
+					}
+					Object name = JOptionPane.showInputDialog(
+							EdgesFrame.this, "Bookmark", "Go to Bookmark",
+							JOptionPane.PLAIN_MESSAGE, null, names, names[0]);
+					if (name != null && formatter.showBookmark((String) name)) {
+						panel.setPaintImage();
+						panel.repaint();
+					}
+				}
+			}
+		});
+		viewMenu.add(gotoBookmark);
+
+		JMenuItem loadBookmarks = new JMenuItem("Load Bookmarks");
+		loadBookmarks.setMnemonic('L');
+		loadBookmarks.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = getFileChooser();
+				int returnVal = chooser.showOpenDialog(EdgesFrame.this);
+				if (returnVal == JFileChooser.APPROVE_OPTION) {
+					loadBookmarks(chooser.getSelectedFile());
+				}
+			}
+		});
+		viewMenu.add(loadBookmarks);
+
+		JMenuItem saveBookmarks = new JMenuItem("Save Bookmarks");
+		saveBookmarks.setMnemonic('S');
+		saveBookmarks.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = getFileChooser();
+				int returnVal = chooser.showSaveDialog(EdgesFrame.this);
+				if (returnVal == JFileChooser.APPROVE_OPTION) {
+					try {
+						viewHistory.writeBookmarks(chooser.getSelectedFile());
+					} catch (IOException ex) {
+						JOptionPane.showMessageDialog(null, "IO Error:\n"
+								+ ex.getMessage(), "Error",
+								JOptionPane.ERROR_MESSAGE);
+					}
+				}
+			}
+		});
+		viewMenu.add(saveBookmarks);
+
+		bar.add(viewMenu);
+
 		// -----------------------------------------------------
 		// FORMAT ISSUES ( SHOWING IDS , COLORS ETC. )
 		// -----------------------------------------------------
@@ -830,6 +1066,33 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 			}
 		});
 		edgeIssues.add(edgeC);
+
+		// ALIASED EDGES, QUICKER ON LARGE GRAPHS
+		final JRadioButtonMenuItem fastLines = new JRadioButtonMenuItem(
+				"Fast Lines");
+		fastLines.setMnemonic('F');
+		fastLines.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				panel.setFastLines(fastLines.isSelected());
+				panel.setPaintImage();
+				panel.repaint();
+			}
+		});
+		edgeIssues.add(fastLines);
+
+		// OVERLAPPING EDGES ADD UP, A DENSITY MAP
+		final JRadioButtonMenuItem additive = new JRadioButtonMenuItem(
+				"Additive Blending");
+		additive.setMnemonic('A');
+		additive.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				panel.setEdgeBlend(additive.isSelected() ? LineRasterizer.Blend.ADDITIVE
+						: LineRasterizer.Blend.SOURCE_OVER);
+				panel.setPaintImage();
+				panel.repaint();
+			}
+		});
+		edgeIssues.add(additive);
 		formatMenu.add(edgeIssues);
 
 		// CHANGING BACKGROUND COLOR
@@ -891,13 +1154,17 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		HashMap vertexDescriptions = new HashMap();
 
 		try {
-			FileInputHandler fileio = new FileInputHandler(f.getAbsolutePath());
+			LineScanner fileio = new LineScanner(f.getAbsolutePath());
 
 			while (fileio.readNextLine()) {
+				if (fileio.getTokenCount() == 0) {
+					continue;
+				}
 				// The first entry is the vertex id, and the
 				// remaining is part of the description
-				String id = fileio.getToken(0);
-				Vertex v = (Vertex) vertexIdMap.get(id);
+				int ndx = graph.indexOf(fileio.buffer(),
+						fileio.tokenOffset(0), fileio.tokenLength(0));
+				Vertex v = ndx < 0 ? null : graph.vertex(ndx);
 				if (v != null) {
 					String descrip = new String();
 					for (int ii = 1; ii < fileio.getTokenCount(); ++ii) {
@@ -913,6 +1180,8 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 				}
 			}
 
+			fileio.close();
+
 			// SESS: Didn't deleted because don't know what is,
 			// just removed unused variable.
 			new VertexDescripTable(panel, vertexDescriptions);
@@ -941,8 +1210,8 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		edgesFile = f;
 		try {
 			edgesio = new ViewerIO(edgesFile);
-			edgesio.loadSHORTFile(f);
-			edges = edgesio.getEdges();
+			edgesio.loadEdgeFile(f);
+			graph = edgesio.getGraph();
 		} catch (FileNotFoundException ee) {
 			JOptionPane.showMessageDialog(null, "File Not Found", "Error",
 					JOptionPane.ERROR_MESSAGE);
@@ -968,6 +1237,33 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		}
 	}
 
+	// Used by the next fit, throws IllegalArgumentException unless
+	// 0 <= low < high <= 1
+	public void setFitQuantiles(double low, double high) {
+		if (!(0 <= low && low < high && high <= 1)) {
+			throw new IllegalArgumentException(
+					"Fit quantiles must be 0 <= low < high <= 1.");
+		}
+		fitLow = low;
+		fitHigh = high;
+		if (formatter != null) {
+			formatter.setFitQuantiles(low, high);
+		}
+	}
+
+	public void loadBookmarks(File f) {
+		System.out.println("Loading Bookmarks " + f.getAbsolutePath());
+		try {
+			viewHistory.readBookmarks(f);
+		} catch (FileNotFoundException ee) {
+			JOptionPane.showMessageDialog(null, "File Not Found", "Error",
+					JOptionPane.ERROR_MESSAGE);
+		} catch (IOException ee) {
+			JOptionPane.showMessageDialog(null, "IO Error:\n"
+					+ ee.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
 	public void loadVertexColorFile(File f) {
 		System.out.println("Loading Vertex Color File " + f.getAbsolutePath());
 		try {
@@ -1005,16 +1301,10 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 		coordsFile = f;
 		try {
 			edgesio.loadVertexCoords(f);
-			edges = edgesio.getEdges();
-			panel.setEdges(edges);
-			vertices = edgesio.getVertices();
-			panel.setVertices(vertices);
+			graph = edgesio.getGraph();
+			panel.setGraph(graph);
 			panel.setVertexRadius(vertexRadius);
 			panel.addEdgeColors(edgesio.getEdgeColorMap());
-			vertexIdMap = edgesio.getVertexIdMap();
-			panel.setVertexIdMap(vertexIdMap);
-			edgeIdMap = edgesio.getEdgeIdMap();
-			panel.setEdgeIdMap(edgeIdMap);
 			panel.setFontColor(fontColor);
 			panel.setEdgeColor(edgeColor);
 			panel.setVertexColor(vertexColor);
@@ -1022,8 +1312,11 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 			panel.setFont(font);
 			panel.setMoveStepSize(moveStepSize);
 			panel.setZoomStepSize(zoomStepSize);
-			formatter = new FormatVertex(vertices, edgesio.getLabels(),labelScale,0,0,0,0,false,edgesio.getStats(),
+			formatter = new FormatVertex(graph, edgesio.getLabels(),labelScale,0,0,0,0,false,edgesio.getStats(),
 					windowSizes, threads);
+			viewHistory.clear();
+			formatter.setHistory(viewHistory);
+			formatter.setFitQuantiles(fitLow, fitHigh);
 			panel.setFormatter(formatter);
 			panel.fitData();
 			panel.setPaintImage(); // TODO: Shall we do this in setters?
@@ -1305,6 +1598,16 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 			}
 		});
 		buttonsPanel.add(undo);
+
+		JButton redo = new JButton("Redo");
+		redo.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				panel.redo();
+				panel.setPaintImage(); // TODO: move inside panel.xxxx()?
+				panel.repaint();
+			}
+		});
+		buttonsPanel.add(redo);
 	}
 
 	public void keyTyped(KeyEvent e) {
@@ -1344,7 +1647,7 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 	// ////////////////////////////////////////////////////////////////
 
 	private boolean edgesCheck() {
-		if (edges == null) {
+		if (graph == null) {
 			JOptionPane.showMessageDialog(null,
 					"You must load the edges first.", "Error",
 					JOptionPane.ERROR_MESSAGE);
@@ -1354,7 +1657,7 @@ public class EdgesFrame extends JFrame implements KeyListener,ComponentListener
 	}
 
 	private boolean vertexCheck() {
-		if (vertices == null) {
+		if (panel.getGraph() == null) {
 			JOptionPane.showMessageDialog(null,
 					"You must load the vertices first.", "Error",
 					JOptionPane.ERROR_MESSAGE);
@@ -41,16 +41,17 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 import javax.swing.JMenuItem;
@@ -59,8 +60,8 @@ import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
-import Jama.Matrix;
 import java.awt.BasicStroke;
 import Viewer2D.Label;
 import java.awt.AlphaComposite;
@@ -81,16 +82,34 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		MouseMotionListener, MouseWheelListener {
 	private static final long serialVersionUID = -765273216020721560L;
 
-	private Edge[] edges;
-	private Vertex[] vertices;
+	private GraphStore graph;
 
 	private HashMap<Object,Object> labels;
 
 	private int xWindowSize, yWindowSize;
 
-	private VertexFitter fitter;
-
 	private boolean doVisibilityTest;
+	// With the visibility test on, edges reaching past this screen
+	// coordinate are dropped as transient
+	public static final double DEFAULT_TRANSIENT_LIMIT = 10000;
+	private double transientLimit = DEFAULT_TRANSIENT_LIMIT;
+
+	// Level of detail: with fewer than lodThreshold pixels per edge on
+	// screen, only the edgeBudget most important uncolored edges are drawn
+	// (see EdgeImportance), the rest once the view has been left alone for
+	// REFINE_DELAY ms. Written images are always in full.
+	public static final double DEFAULT_LOD_THRESHOLD = 2;
+	public static final int DEFAULT_EDGE_BUDGET = 200000;
+	public static final int REFINE_DELAY = 300;
+	private boolean levelOfDetail;
+	private double lodThreshold = DEFAULT_LOD_THRESHOLD;
+	private int edgeBudget = DEFAULT_EDGE_BUDGET;
+	private boolean fullDetail;
+	private Timer refineTimer;
+	// Set when the current frame is decimated: only edges ranked below
+	// edgeRankLimit are drawn
+	private EdgeImportance edgeImportance;
+	private int edgeRankLimit;
 
 	private String statusMessage;
 	private JTextField statusBar;
@@ -99,12 +118,9 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	private HashMap<Fontid,Font> fontMap;
 
-	// These are hashes relating edge/vertex id
-	// to specific info
-	private HashMap edgeColorMap;
-	private HashMap vertexIdMap;
-	private HashMap edgeIdMap;
-	private HashMap vertexColorMap;
+	// Colors of single edges/vertices, by index
+	private ColorColumn edgeColorMap;
+	private ColorColumn vertexColorMap;
 
 	private int vertexRadius;
 
@@ -121,6 +137,42 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	private double zoomStepSize;
 
 	private FormatVertex formatter;
+	// Shared by the projector, the rasterizer and the tiles, for the
+	// thread count of the formatter (0 is the common pool)
+	private ForkJoinPool pool;
+	private int threads;
+	// Screen coordinates of the vertices, refreshed on each paint
+	private Projector projector;
+	private boolean allVisible;
+	// What the spatial grid found under the window when only part of the
+	// layout shows, null when every vertex was projected
+	private final Pass window = new Pass();
+	private final SpatialGrid.Hits vertexBuffer = new SpatialGrid.Hits();
+	private final SpatialGrid.Hits edgeBuffer = new SpatialGrid.Hits();
+	// Written images are painted tile by tile on every core
+	private TiledRenderer tiles;
+	// View of the tiles being painted
+	private Affine2D tileView;
+	// Screen pixels around the window searched as well, for the
+	// antialiased ends of the edges
+	private static final double WINDOW_MARGIN = 2;
+	// Edges of bitmap images are drawn by Java2D, unless the system
+	// property lgl.lines=rasterizer asks for the rasterizer, which draws
+	// straight into the pixels. Fast lines (aliased) and additive blending
+	// are the rasterizer's own, so they use it as well.
+	private LineRasterizer lines;
+	private boolean java2dLines = !"rasterizer".equals(System
+			.getProperty("lgl.lines"));
+	private boolean fastLines;
+	private LineRasterizer.Blend edgeBlend = LineRasterizer.Blend.SOURCE_OVER;
+	// The image being painted when the rasterizer draws into it
+	private BufferedImage lineTarget;
+	// PNGs written by PngWriter on every core rather than ImageIO, and at
+	// its fast level
+	private boolean parallelPng;
+	private boolean fastPng;
+	// Indexed PNGs when the image has few enough colours
+	private boolean palettePng;
 	private double moveStepSize;
 
 	private boolean idsIncluded;
@@ -142,8 +194,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	private Cursor cursorMagnifier;
 
 	private double x1, y1, x2, y2;
-	private Matrix mins, maxs;
-	private Matrix inverted;
+	private double[] mins, maxs;
 
 	private BufferedImage bufferedImage;
 	private boolean paintImage;
@@ -185,7 +236,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		paintImage = true;
 	}
 
-	public EdgesPanel(Edge[] edges, Vertex[] vertices, HashMap labels, int xWindowSize,
+	public EdgesPanel(GraphStore graph, HashMap labels, int xWindowSize,
 			int yWindowSize) {
 		super();
 		
@@ -193,8 +244,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		this.xWindowSize = xWindowSize;
 		this.yWindowSize = yWindowSize;
 		this.setPreferredSize(new Dimension(xWindowSize, yWindowSize));
-		this.edges = edges;
-		this.vertices = vertices;
+		this.graph = graph;
 		this.labels = labels;
 
 		addMouseListener(this);
@@ -213,8 +263,8 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		statusMessage = "Waiting for HightLight Event";
 
 		// These are the default colors
-		edgeColorMap = new HashMap();
-		vertexColorMap = new HashMap();
+		edgeColorMap = new ColorColumn();
+		vertexColorMap = new ColorColumn();
 		fontMap = new HashMap();
 		edgeColor = Color.black;
 		fontColor = Color.blue;
@@ -224,9 +274,9 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		backgroundColor = new Color(0f,0f,0f,0f);
 		vertexColor = Color.red;
 
-		// Matrices need for zooming moving etc
-		mins = new Matrix(2, 1);
-		maxs = new Matrix(2, 1);
+		// Corners needed for zooming moving etc
+		mins = new double[2];
+		maxs = new double[2];
 		mode = modes.nomode;
 		Image image = null;
 		Toolkit toolkit = Toolkit.getDefaultToolkit();
@@ -243,6 +293,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		cursorMagnifier = null; // toolkit.createCustomCursor(image , new Point(0,0), "magnifier"); 
 		setPopup() ;
 		defaultScale = 1;
+		setThreads(0);
 	}
 
 	
@@ -400,21 +451,103 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		g2.setPaint(backgroundColor);
 		g2.fill(rect);
 	
-		paintImage(g2);
+		if (rasterizedLines(bufferedImage)) {
+			lineTarget = bufferedImage;
+		}
+		try {
+			paintImage(g2);
+		} finally {
+			lineTarget = null;
+		}
 	}
 
 	/** Used by vector path */
 	private void paintImage(Graphics2D g2){
 		setRenderingHints(g2);
 
-		if (edges != null) {
-			paintNonColoredEdges(g2);
-			// Now to draw the colored edges. They must be drawn last
-			// (so they are drawn on top);
-			paintColoredEdges(g2);
-			paintVertices(g2);
-			paintIds(g2);
-			paintLabels(g2);
+		if (graph != null) {
+			project();
+			window.lines = lineTarget == null ? null : lines;
+			paint(g2, window, lineTarget, 0, 0);
+		}
+	}
+
+	// Paints the projected layout, the edges into target through p.lines
+	// when it is set, target holding the window from x0, y0
+	private void paint(Graphics2D g2, Pass p, BufferedImage target, int x0,
+			int y0) {
+		if (p.lines != null) {
+			p.lines.setAntialiased(!fastLines);
+			p.lines.setBlend(edgeBlend);
+			p.lines.begin(target, x0, y0);
+		}
+		paintNonColoredEdges(g2, p);
+		// Now to draw the colored edges. They must be drawn last
+		// (so they are drawn on top);
+		paintColoredEdges(g2, p);
+		if (p.lines != null) {
+			p.lines.finish();
+		}
+		paintVertices(g2, p);
+		paintIds(g2, p == window ? p.vertexHits : null);
+		paintLabels(g2);
+	}
+
+	// Projects all of the layout, in full detail, for paintTile()
+	void prepareTiles() {
+		tileView = view();
+		allVisible = xWindowSize < transientLimit
+				&& yWindowSize < transientLimit
+				&& graph.spatialGrid().allWithin(tileView, xWindowSize,
+						yWindowSize);
+		window.vertexHits = null;
+		window.edgeHits = null;
+		projector.project(graph, tileView);
+		boolean full = fullDetail;
+		fullDetail = true;
+		chooseDetail();
+		fullDetail = full;
+	}
+
+	// Paints the part of the window from x0, y0 the size of tile into
+	// tile, after prepareTiles(). Only what the spatial grid finds under
+	// the tile is painted, and tiles may be painted on several threads at
+	// once. Ids and labels reach past their vertex by an unknown length,
+	// so all of them are tried, the clip keeping what falls in the tile.
+	void paintTile(BufferedImage tile, int x0, int y0) {
+		int w = tile.getWidth();
+		int h = tile.getHeight();
+		Graphics2D g2 = tile.createGraphics();
+		try {
+			g2.setColor(backgroundColor);
+			g2.fillRect(0, 0, w, h);
+			g2.translate(-x0, -y0);
+			g2.clipRect(x0, y0, w, h);
+			setRenderingHints(g2);
+
+			Pass p = new Pass();
+			double m = WINDOW_MARGIN + vertexRadius;
+			double[] r = worldBounds(tileView, x0 - m, y0 - m, x0 + w + m,
+					y0 + h + m);
+			if (r != null) {
+				SpatialGrid grid = graph.spatialGrid();
+				p.vertexHits = grid.vertices(r[0], r[1], r[2], r[3],
+						new SpatialGrid.Hits());
+				// Edges crossing the tile from another one as well, the
+				// painters test the ends against the window
+				p.edgeHits = grid.edges(r[0], r[1], r[2], r[3], false,
+						new SpatialGrid.Hits());
+			}
+			if (p.vertexHits == null || p.edgeHits == null) {
+				p.vertexHits = null;
+				p.edgeHits = null;
+			}
+			if (rasterizedLines(tile)) {
+				p.lines = new LineRasterizer(1);
+			}
+			paint(g2, p, tile, x0, y0);
+		} finally {
+			g2.dispose();
 		}
 	}
 
@@ -435,77 +568,148 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void paintNonColoredEdges(Graphics g) {
+		paintNonColoredEdges(g, window);
+	}
+
+	private void paintNonColoredEdges(Graphics g, Pass p) {
 		//System.out.println("paintNonColoredEdges() " + g);
 		Graphics2D g2 = (Graphics2D) g;
 		g2.setColor(edgeColor);
-		for (Edge edge : edges) {
-			Matrix v1 = edge.vertex1().location();
-			Matrix v2 = edge.vertex2().location();
-			if (doVisibilityTest && !visible(v1, v2)) {
+		LineRasterizer r = p.lines;
+		int argb = edgeColor.getRGB();
+		double[] x = projector.xs();
+		double[] y = projector.ys();
+		int[] src = graph.edgeSources();
+		int[] dst = graph.edgeTargets();
+		boolean test = doVisibilityTest && !allVisible;
+		int[] hit = p.edgeHits == null ? null : p.edgeHits.ids();
+		int n = hit == null ? graph.edgeCount() : p.edgeHits.size();
+		int[] rank = null;
+		if (edgeImportance != null) {
+			if (hit == null) {
+				hit = edgeImportance.prefix(edgeRankLimit);
+				n = hit.length;
+			} else {
+				rank = edgeImportance.ranks();
+			}
+		}
+		Line2D.Double line = new Line2D.Double();
+		for (int k = 0; k < n; ++k) {
+			int e = hit == null ? k : hit[k];
+			if (edgeColorMap.has(e)) {
+				continue;
+			}
+			if (rank != null && rank[e] >= edgeRankLimit) {
+				continue;
+			}
+			int v1 = src[e];
+			int v2 = dst[e];
+			if (test && !visible(x[v1], y[v1], x[v2], y[v2])) {
 				continue;
 			}
-			if (edgeColorMap.get(edge) == null) {
-				g2.draw(new Line2D.Double(v1.get(0, 0), v1.get(1, 0), v2.get(0,
-						0), v2.get(1, 0)));
+			if (r != null) {
+				r.add(x[v1], y[v1], x[v2], y[v2], argb);
+				continue;
 			}
+			line.setLine(x[v1], y[v1], x[v2], y[v2]);
+			g2.draw(line);
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public void paintColoredEdges(Graphics g) {
+		paintColoredEdges(g, window);
+	}
+
+	private void paintColoredEdges(Graphics g, Pass p) {
 		//System.out.println("paintColoredEdges() " + g);
 		Graphics2D g2 = (Graphics2D) g;
-		for (Map.Entry<Edge, Color> e : ((Map<Edge, Color>) edgeColorMap)
-				.entrySet()) {
-			Edge edge = e.getKey();
-			Matrix v1 = edge.vertex1().location();
-			Matrix v2 = edge.vertex2().location();
-			if (doVisibilityTest && !visible(v1, v2)) {
+		LineRasterizer r = p.lines;
+		double[] x = projector.xs();
+		double[] y = projector.ys();
+		int[] src = graph.edgeSources();
+		int[] dst = graph.edgeTargets();
+		boolean test = doVisibilityTest && !allVisible;
+		Line2D.Double line = new Line2D.Double();
+		int[] hit = p.edgeHits == null ? null : p.edgeHits.ids();
+		int n = hit == null ? graph.edgeCount() : p.edgeHits.size();
+		int current = 0;
+		boolean colorSet = false;
+		for (int k = nextToColor(edgeColorMap, hit, 0); k >= 0 && k < n; k = nextToColor(
+				edgeColorMap, hit, k + 1)) {
+			int e = hit == null ? k : hit[k];
+			if (!edgeColorMap.has(e)) {
 				continue;
 			}
-			g2.setColor(e.getValue());
-			g2.draw(new Line2D.Double(v1.get(0, 0), v1.get(1, 0), v2.get(0, 0),
-					v2.get(1, 0)));
+			int v1 = src[e];
+			int v2 = dst[e];
+			if (test && !visible(x[v1], y[v1], x[v2], y[v2])) {
+				continue;
+			}
+			// Level colored maps use few colors, only switch on change
+			int argb = edgeColorMap.argb(e);
+			if (r != null) {
+				r.add(x[v1], y[v1], x[v2], y[v2], argb);
+				continue;
+			}
+			if (!colorSet || argb != current) {
+				g2.setColor(new Color(argb, true));
+				current = argb;
+				colorSet = true;
+			}
+			line.setLine(x[v1], y[v1], x[v2], y[v2]);
+			g2.draw(line);
 		}
 	}
 
 	public void paintNonColoredVertices(Graphics g) {
+		paintNonColoredVertices(g, window);
+	}
+
+	private void paintNonColoredVertices(Graphics g, Pass p) {
 		//System.out.println("paintNonColoredVertices() " + g);
 		Graphics2D g2 = (Graphics2D) g;
 		g2.setColor(vertexColor);
 
-		for (Vertex vertex : vertices) {
-			if (!visible(vertex.location())) {
+		int[] hit = p.vertexHits == null ? null : p.vertexHits.ids();
+		int n = hit == null ? graph.vertexCount() : p.vertexHits.size();
+		for (int k = 0; k < n; ++k) {
+			int v = hit == null ? k : hit[k];
+			if (!vertexColorMap.has(v)) {
 				continue;
 			}
-			if (vertexColorMap.get(vertex) == null) {
+			double x = projector.xs()[v];
+			double y = projector.ys()[v];
+			if (!allVisible && !visible(x, y)) {
 				continue;
 			}
-			Matrix m = vertex.location();
-			g2.fill(new Rectangle((int) m.get(0, 0) - vertexRadius, (int) m
-					.get(1, 0) - vertexRadius, 2 * vertexRadius,
-					2 * vertexRadius));
+			g2.fill(new Rectangle((int) x - vertexRadius, (int) y
+					- vertexRadius, 2 * vertexRadius, 2 * vertexRadius));
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public void paintColoredVertices(Graphics g) {
+		paintColoredVertices(g, window);
+	}
+
+	private void paintColoredVertices(Graphics g, Pass p) {
 		//System.out.println("paintColoredVertices() " + g);
 		Graphics2D g2 = (Graphics2D) g;
-		for (Map.Entry<Vertex, Color> e : ((Map<Vertex, Color>) vertexColorMap)
-				.entrySet()) {
-			Vertex vertex = e.getKey();
-			if (!visible(vertex.location())) {
+		int[] hit = p.vertexHits == null ? null : p.vertexHits.ids();
+		int n = hit == null ? graph.vertexCount() : p.vertexHits.size();
+		for (int k = nextToColor(vertexColorMap, hit, 0); k >= 0 && k < n; k = nextToColor(
+				vertexColorMap, hit, k + 1)) {
+			int v = hit == null ? k : hit[k];
+			if (!vertexColorMap.has(v)) {
 				continue;
 			}
-			if (vertexColorMap.get(vertex) == null) {
+			double x = projector.xs()[v];
+			double y = projector.ys()[v];
+			if (!allVisible && !visible(x, y)) {
 				continue;
 			}
-			Matrix m = vertex.location();
-			g2.setColor(e.getValue());
-			g2.fill(new Rectangle((int) m.get(0, 0) - vertexRadius, (int) m
-					.get(1, 0) - vertexRadius, 2 * vertexRadius,
-					2 * vertexRadius));
+			g2.setColor(new Color(vertexColorMap.argb(v), true));
+			g2.fill(new Rectangle((int) x - vertexRadius, (int) y
+					- vertexRadius, 2 * vertexRadius, 2 * vertexRadius));
 		}
 	}
 
@@ -529,16 +733,10 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		// }
 	}
 
+	// Puts f on top of the view, the layout is not touched
 	public void applyFit(VertexFitter f) {
-		/*for (int ii = 0; ii < vertices.length; ++ii) {
-			f.fitVertex(vertices[ii]);
-		
-		}*/
-		formatter.getFitter().setManipulationMatrix(f.getManipulationMatrix());
+		formatter.getFitter().setManipulation(f.getManipulation());
 		formatter.applyTransformation();
-		fitter = f;
-		inverted = fitter.getManipulationMatrix().inverse();
-		fitter.setManipulationMatrix(inverted);
 	}
 
 	public void fitData() {
@@ -546,26 +744,27 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		defaultScale = formatter.getScale();
 	}
 
-	public void setEdges(Edge[] e) {
-		edges = e;
+	public void setGraph(GraphStore g) {
+		graph = g;
 	}
 
 	// ACCESSING AND REMOVING EDGE COLORS
-	public void removeEdgeColors(HashMap h) {
-		Iterator i = h.entrySet().iterator();
-		while (i.hasNext()) {
-			Map.Entry entry = (Map.Entry) i.next();
-			Edge e = (Edge) entry.getKey();
-			edgeColorMap.remove(e);
-		}
+	public void removeEdgeColors(ColorColumn c) {
+		edgeColorMap.removeAll(c);
 	}
 
-	public void addEdgeColors(HashMap h) {
-		edgeColorMap.putAll(h);
+	// Paints with c itself rather than a copy, so panels can share the
+	// colours of one load. Colouring edges on this panel changes c.
+	public void setEdgeColors(ColorColumn c) {
+		edgeColorMap = c;
 	}
 
-	public void addVertexColors(HashMap h) {
-		vertexColorMap.putAll(h);
+	public void addEdgeColors(ColorColumn c) {
+		edgeColorMap.putAll(c);
+	}
+
+	public void addVertexColors(ColorColumn c) {
+		vertexColorMap.putAll(c);
 	}
 
 	public void addLabels(HashMap h) {
@@ -580,24 +779,15 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		vertexColorMap.clear();
 	}
 
-	public void setEdgeIdMap(HashMap h) {
-		edgeIdMap = h;
-	}
-
-	public void setVertexIdMap(HashMap h) {
-		vertexIdMap = h;
-	}
-
 	public void setVertexRadius(int r) {
 		vertexRadius = r;
 	}
 
-	public void setVertices(Vertex[] v) {
-		vertices = v;
-	}
-
 	public void setFormatter(FormatVertex v) {
 		formatter = v;
+		if (v.threads() != threads) {
+			setThreads(v.threads());
+		}
 	}
 
 	public void setFontColor(Color c) {
@@ -608,6 +798,59 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		edgeColor = c;
 	}
 
+	// Aliased edges, drawn with Bresenham's algorithm
+	public void setFastLines(boolean b) {
+		fastLines = b;
+	}
+
+	public void setEdgeBlend(LineRasterizer.Blend b) {
+		edgeBlend = b;
+	}
+
+	// Edges drawn by Java2D into bitmaps (the default), false for the
+	// rasterizer
+	public void setJava2DLines(boolean b) {
+		java2dLines = b;
+	}
+
+	public boolean isJava2DLines() {
+		return java2dLines;
+	}
+
+	public boolean isFastLines() {
+		return fastLines;
+	}
+
+	public LineRasterizer.Blend getEdgeBlend() {
+		return edgeBlend;
+	}
+
+	public void setParallelPng(boolean b) {
+		parallelPng = b;
+	}
+
+	// Quicker and larger PNGs, for previews, with PngWriter
+	public void setFastPng(boolean b) {
+		fastPng = b;
+	}
+
+	// Written whole, images of at most 256 colours go out as indexed PNGs
+	public void setPalettePng(boolean b) {
+		palettePng = b;
+	}
+
+	public boolean isParallelPng() {
+		return parallelPng;
+	}
+
+	public boolean isFastPng() {
+		return fastPng;
+	}
+
+	public boolean isPalettePng() {
+		return palettePng;
+	}
+
 	public void setVertexColor(Color c) {
 		vertexColor = c;
 	}
@@ -624,11 +867,11 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		backgroundColor = c;
 	}
 
-	public void setMins(Matrix m) {
+	public void setMins(double[] m) {
 		mins = m;
 	}
 
-	public void setMaxs(Matrix m) {
+	public void setMaxs(double[] m) {
 		maxs = m;
 	}
 
@@ -652,6 +895,47 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		doVisibilityTest = b;
 	}
 
+	public void setTransientLimit(double limit) {
+		transientLimit = limit;
+	}
+
+	public double getTransientLimit() {
+		return transientLimit;
+	}
+
+	public void setLevelOfDetail(boolean b) {
+		levelOfDetail = b;
+	}
+
+	public boolean isLevelOfDetail() {
+		return levelOfDetail;
+	}
+
+	// Uncolored edges drawn per decimated frame
+	public void setEdgeBudget(int budget) {
+		if (budget < 1) {
+			throw new IllegalArgumentException("Edge budget must be > 0.");
+		}
+		edgeBudget = budget;
+	}
+
+	public int getEdgeBudget() {
+		return edgeBudget;
+	}
+
+	// Pixels per edge on screen below which frames are decimated
+	public void setLodThreshold(double pixelsPerEdge) {
+		if (!(pixelsPerEdge >= 0)) {
+			throw new IllegalArgumentException(
+					"Pixels per edge must be >= 0.");
+		}
+		lodThreshold = pixelsPerEdge;
+	}
+
+	public double getLodThreshold() {
+		return lodThreshold;
+	}
+
 	public void setStatusBar(JTextField f) {
 		statusBar = f;
 		statusBar.setText(statusMessage);
@@ -666,19 +950,29 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		return yWindowSize;
 	}
 
-	public Edge[] getEdges() {
-		return edges;
+	public GraphStore getGraph() {
+		return graph;
 	}
 
+	// Vertex views for the dialogs. Builds a new array on each call.
 	public Vertex[] getVertices() {
-		return vertices;
+		return graph == null ? null : graph.vertexViews();
+	}
+
+	// Where vertex v is drawn with the current view
+	public double screenX(int v) {
+		return view().transformX(graph.x(v), graph.y(v));
+	}
+
+	public double screenY(int v) {
+		return view().transformY(graph.x(v), graph.y(v));
 	}
 
-	public HashMap getEdgeColors() {
+	public ColorColumn getEdgeColors() {
 		return edgeColorMap;
 	}
 
-	public HashMap getVertexColors() {
+	public ColorColumn getVertexColors() {
 		return vertexColorMap;
 	}
 
@@ -698,10 +992,10 @@ public class EdgesPanel extends JPanel implements MouseListener,
 					yWindowSize, BufferedImage.TYPE_INT_ARGB);
 		}
 		// TODO: SESS - check is OK
-		paintImage(i);
+		renderImage(i);
 		// paint(i.getGraphics());
 		try {
-			ImageIO.write(i, "png", f);
+			writePng(i, f);
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(null, "Image Write Failed", "Error",
 					JOptionPane.ERROR_MESSAGE);
@@ -711,20 +1005,78 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		}
 	}
 
+	// Paints the window, in full detail, into i, which has its size
+	public void renderImage(BufferedImage i) {
+		fullDetail = true;
+		try {
+			tiles.render(this, i);
+		} finally {
+			fullDetail = false;
+		}
+	}
+
+	// Writes i, painted by renderImage(), as a PNG with the PNG settings
+	// of the panel. The same image may be written in several formats.
+	public void writePngImage(BufferedImage i, String imageName)
+			throws IOException {
+		writePng(i, new File(imageName));
+	}
+
+	// Writes the window as a PNG the size of the window, painted and
+	// encoded a band of rows at a time: posters too large for the heap as
+	// one image can be written
+	public void writeBandedImage(String imageName) throws IOException {
+		File f = new File(imageName);
+		if (statusBar != null) {
+			statusBar.setText("Writing " + f.getAbsolutePath() + "...");
+		}
+		fullDetail = true;
+		// The colours are only known once all is painted, so no palette
+		try (PngWriter png = pngWriter(f, xWindowSize, yWindowSize, null)) {
+			tiles.write(this, png);
+		} finally {
+			fullDetail = false;
+		}
+		if (statusBar != null) {
+			statusBar.setText("Done.");
+		}
+	}
+
+	private void writePng(BufferedImage i, File f) throws IOException {
+		int[] palette = palettePng ? PngWriter.palette(i) : null;
+		if (!parallelPng && !fastPng && palette == null) {
+			ImageIO.write(i, "png", f);
+			return;
+		}
+		try (PngWriter png = pngWriter(f, i.getWidth(), i.getHeight(),
+				palette)) {
+			png.writeImage(i);
+		}
+	}
+
+	private PngWriter pngWriter(File f, int width, int height, int[] palette)
+			throws IOException {
+		int threads = !parallelPng ? 1 : formatter == null ? 0 : formatter
+				.threads();
+		return new PngWriter(new BufferedOutputStream(new FileOutputStream(f)),
+				width, height, fastPng ? PngWriter.FAST_LEVEL
+						: PngWriter.DEFAULT_LEVEL, threads, palette);
+	}
 
 	public void writeVectorImage(Graphics2D i)
 	{
 		// Just try paint it		
+		fullDetail = true;
 		paintImage(i);
+		fullDetail = false;
 	}
 
 	// Produce an image of a given region
-	public void imageRegion(Matrix mins, Matrix maxs, String imageName,
+	public void imageRegion(double[] mins, double[] maxs, String imageName,
 			BufferedImage i) {
 		VertexFitter f = new VertexFitter();
 		// Move to the average of the given positions
-		move2Point((maxs.get(0, 0) + mins.get(0, 0)) * .5,
-				(maxs.get(1, 0) + mins.get(1, 0)) * .5, f);
+		move2Point((maxs[0] + mins[0]) * .5, (maxs[1] + mins[1]) * .5, f);
 		writeImage(imageName, i);
 	}
 
@@ -732,19 +1084,16 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		if (f == null) {
 			return;
 		}
-		String buffer = new String();
-		Iterator i = vertexColorMap.entrySet().iterator();
-		while (i.hasNext()) {
-			Map.Entry entry = (Map.Entry) i.next();
-			Vertex v = (Vertex) entry.getKey();
-			Color c = (Color) entry.getValue();
-			float[] rgb = c.getColorComponents(null);
-			buffer += v.id() + " " + rgb[0] + " " + rgb[1] + " " + rgb[2]
-					+ "\n";
+		StringBuilder buffer = new StringBuilder();
+		for (int v = vertexColorMap.next(0); v >= 0; v = vertexColorMap
+				.next(v + 1)) {
+			float[] rgb = vertexColorMap.color(v).getColorComponents(null);
+			buffer.append(graph.id(v) + " " + rgb[0] + " " + rgb[1] + " "
+					+ rgb[2] + "\n");
 		}
 		try {
 			FileWriter out = new FileWriter(f);
-			out.write(buffer);
+			out.write(buffer.toString());
 			out.flush();
 			out.close();
 		} catch (IOException ee) {
@@ -753,7 +1102,6 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public void saveEdgeColorMap(File f) {
 		if (f == null) {
 			return;
@@ -761,13 +1109,14 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		try {
 			BufferedWriter out = new BufferedWriter(new FileWriter(f));
 			try {
-				for (Map.Entry<Edge, Color> e : ((Map<Edge, Color>) edgeColorMap)
-						.entrySet()) {
-					Edge edge = e.getKey();
-					float[] colors = e.getValue().getColorComponents(null);
+				for (int e = edgeColorMap.next(0); e >= 0; e = edgeColorMap
+						.next(e + 1)) {
+					float[] colors = edgeColorMap.color(e).getColorComponents(
+							null);
 					String line = MessageFormat
 							.format("{0} {1} {2,number,0.0} {3,number,0.0} {4,number,0.0}",
-									edge.vertex1().id(), edge.vertex2().id(),
+									graph.id(graph.edgeSource(e)),
+									graph.id(graph.edgeTarget(e)),
 									colors[0], colors[1], colors[2]);
 					out.write(line);
 					out.newLine();
@@ -806,12 +1155,144 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	// PRIVATE METHOD CALLS
 
+	// Projects the layout through the current view for painting. When only
+	// part of it shows, the painters only get what the spatial grid finds
+	// under the window, and only that is projected.
+	private void project() {
+		Affine2D view = view();
+		SpatialGrid grid = graph.spatialGrid();
+		// visible() also drops edges past the transient limit, only skip
+		// it when no point can get there
+		allVisible = xWindowSize < transientLimit
+				&& yWindowSize < transientLimit
+				&& grid.allWithin(view, xWindowSize, yWindowSize);
+		SpatialGrid.Hits vertexHits = null;
+		SpatialGrid.Hits edgeHits = null;
+		if (!allVisible) {
+			double m = WINDOW_MARGIN;
+			double[] r = worldBounds(view, -m, -m, xWindowSize + m,
+					yWindowSize + m);
+			if (r != null) {
+				vertexHits = grid.vertices(r[0], r[1], r[2], r[3],
+						vertexBuffer);
+				// With the test only edges with an end on screen are drawn
+				edgeHits = grid.edges(r[0], r[1], r[2], r[3],
+						doVisibilityTest, edgeBuffer);
+			}
+		}
+		if (vertexHits == null || edgeHits == null) {
+			vertexHits = null;
+			edgeHits = null;
+		}
+		window.vertexHits = vertexHits;
+		window.edgeHits = edgeHits;
+		if (vertexHits == null) {
+			projector.project(graph, view);
+			chooseDetail();
+			return;
+		}
+		chooseDetail();
+		projector.project(graph, view, vertexHits.ids(), vertexHits.size());
+		projector.projectEdges(graph, view, edgeHits.ids(), edgeHits.size());
+		if (labels != null) {
+			for (Object k : labels.keySet()) {
+				projector.project(graph, view, ((Vertex) k).index());
+			}
+		}
+	}
+
+	// Decimates the frame when it has too many edges for its pixels: the
+	// same share of the edges, ranked by importance, is kept wherever the
+	// window is, about edgeBudget in all
+	private void chooseDetail() {
+		edgeImportance = null;
+		if (refineTimer != null) {
+			refineTimer.stop();
+		}
+		if (!levelOfDetail || fullDetail) {
+			return;
+		}
+		int edges = window.edgeHits == null ? graph.edgeCount()
+				: window.edgeHits.size();
+		double pixelsPerEdge = (double) xWindowSize * yWindowSize / edges;
+		if (edges <= edgeBudget || pixelsPerEdge >= lodThreshold) {
+			return;
+		}
+		edgeImportance = graph.edgeImportance();
+		edgeRankLimit = (int) ((long) edgeBudget * graph.edgeCount() / edges);
+		scheduleRefine();
+	}
+
+	// Redraws in full once the view stays put
+	private void scheduleRefine() {
+		if (!isShowing()) {
+			return;
+		}
+		if (refineTimer == null) {
+			refineTimer = new Timer(REFINE_DELAY, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					fullDetail = true;
+					setPaintImage();
+					repaint();
+					fullDetail = false;
+				}
+			});
+			refineTimer.setRepeats(false);
+		}
+		refineTimer.restart();
+	}
+
+	// Position from k on to look at when painting the colors of c: the
+	// next colored index on a full scan, k itself in a list of hits
+	private static int nextToColor(ColorColumn c, int[] hit, int k) {
+		return hit == null ? c.next(k) : k;
+	}
+
+	// Layout bounds {minX, minY, maxX, maxY} of a screen rectangle, null
+	// if the view cannot be inverted
+	private double[] worldBounds(Affine2D view, double x0, double y0,
+			double x1, double y1) {
+		try {
+			return SpatialGrid.transformedBounds(view.inverse(), x0, y0, x1,
+					y1);
+		} catch (ArithmeticException e) {
+			return null;
+		}
+	}
+
+	// World to screen, the identity until there is a formatter
+	private Affine2D view() {
+		if (formatter == null) {
+			return Affine2D.IDENTITY;
+		}
+		return formatter.getView().getManipulation();
+	}
+
+	// Makes the pool for that many threads, shutting down the one made
+	// before, and the projector, rasterizer and tiles that run on it
+	private void setThreads(int n) {
+		if (pool != null && pool != ForkJoinPool.commonPool()) {
+			pool.shutdown();
+		}
+		threads = n;
+		pool = n <= 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(n);
+		projector = new Projector(pool);
+		lines = new LineRasterizer(pool);
+		tiles = new TiledRenderer(pool);
+	}
+
+	// True when the edges of image are drawn by the rasterizer
+	private boolean rasterizedLines(BufferedImage image) {
+		return (!java2dLines || fastLines
+				|| edgeBlend == LineRasterizer.Blend.ADDITIVE)
+				&& LineRasterizer.supports(image);
+	}
+
 	private boolean highlightSanityCheck() {
-		if (edges == null || vertices == null) {
+		if (graph == null) {
 			return false;
 		}
-		if ((maxs.get(0, 0) - mins.get(0, 0) < 5)
-				|| (maxs.get(1, 0) - mins.get(1, 0) < 5)) {
+		if ((maxs[0] - mins[0] < 5) || (maxs[1] - mins[1] < 5)) {
 			// Probably hit the buttons by accident
 			return false;
 		} else {
@@ -821,17 +1302,23 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	// -----------------------------------------------------
 
-	// TODO: SESS - Mmmm... hard codded 10000...
-	public boolean visible(Matrix m1, Matrix m2) {
-		return (visible(m1) || visible(m2))
-				&& ((m1.get(0, 0) < 10000) && (m1.get(1, 0) < 10000)
-						&& (m2.get(0, 0) < 10000) && (m2.get(1, 0) < 10000));
+	public boolean visible(double[] p1, double[] p2) {
+		return visible(p1[0], p1[1], p2[0], p2[1]);
+	}
+
+	public boolean visible(double x1, double y1, double x2, double y2) {
+		return (visible(x1, y1) || visible(x2, y2))
+				&& ((x1 < transientLimit) && (y1 < transientLimit)
+						&& (x2 < transientLimit) && (y2 < transientLimit));
 	}
 
 	// TODO: SESS - Mmmm... I added a scroller to the UI...
-	public boolean visible(Matrix m) {
-		return (0 <= m.get(0, 0) && m.get(0, 0) <= xWindowSize)
-				&& (0 <= m.get(1, 0) && m.get(1, 0) <= yWindowSize);
+	public boolean visible(double[] p) {
+		return visible(p[0], p[1]);
+	}
+
+	public boolean visible(double x, double y) {
+		return (0 <= x && x <= xWindowSize) && (0 <= y && y <= yWindowSize);
 	}
 
 	// -----------------------------------------------------
@@ -840,33 +1327,51 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	public void setVertexColorsFromFindVertexFrame(String[] id, Color c) {
 		for (int ii = 0; ii < id.length; ++ii) {
-			Vertex v = (Vertex) vertexIdMap.get(id[ii]);
+			Vertex v = graph.vertex(id[ii]);
 			if (v == null) {
 				continue;
 			}
-			vertexColorMap.put(v, c);
+			vertexColorMap.set(v.index(), c);
 		}
 	}
 
-	private void paintIds(Graphics2D g) {
-		if (vertices == null) {
+	// Ids of the vertices in hits, all if null
+	private void paintIds(Graphics2D g, SpatialGrid.Hits hits) {
+		if (graph == null) {
 			return;
 		}
 		g.setColor(fontColor);
 		g.setFont(font);
-		for (int ii = 0; ii < vertices.length; ++ii) {
-			if (doVisibilityTest)
-				if (!visible(vertices[ii].location()))
+		boolean test = doVisibilityTest && !allVisible;
+		// Without the test an id off the window may still reach into it,
+		// so all are drawn, from the layout if they were not projected
+		int[] hit = hits == null || !test ? null : hits.ids();
+		int n = hit == null ? graph.vertexCount() : hits.size();
+		for (int k = 0; k < n; ++k) {
+			int ii = hit == null ? k : hit[k];
+			if (!graph.doesShowID(ii) && !idsIncluded) {
+				continue;
+			}
+			boolean projected = hits == null || test;
+			double x = projected ? projector.xs()[ii] : screenX(ii);
+			double y = projected ? projector.ys()[ii] : screenY(ii);
+			if (test)
+				if (!visible(x, y))
 					continue;
 
-			if (vertices[ii].doesShowID() || idsIncluded) {
-				// System.out.println("Showing id of " + vertices[ii].id() );
-				g.drawString(vertices[ii].id(), (int) vertices[ii].location()
-						.get(0, 0), (int) vertices[ii].location().get(1, 0));
-			}
+			// System.out.println("Showing id of " + graph.id(ii) );
+			g.drawString(graph.id(ii), (int) x, (int) y);
 		}
 	}
 
+	// What the painters draw from: the grid hits under the painted area,
+	// null when they go through all of the layout, and the rasterizer
+	// drawing the edges, null for Java2D
+	private static class Pass {
+		SpatialGrid.Hits vertexHits, edgeHits;
+		LineRasterizer lines;
+	}
+
 	private class Fontid
 	{
 		String filename;
@@ -887,7 +1392,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	}
  
-	private  Font getFont(String ttffile, float size) 
+	private synchronized Font getFont(String ttffile, float size) 
 	{
 		Font f = font;
 		Fontid id = new Fontid(ttffile,size);
@@ -940,12 +1445,15 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	public void paintLabels(Graphics2D g)
 	{
-		if (vertices == null) {
+		if (graph == null) {
 			return;
 		}
 		if (labels == null) {
 			return;
 		}
+		// Labels keep their sizes at scale 1, the view scales them. They are
+		// drawn in the order of the label file, the later ones on top.
+		double scale = formatter == null ? 1 : formatter.labelScale();
         labels.forEach((k,v) -> { //System.out.println("Key = "
                 //+ k + ", Value = " + v);
             //System.out.println("key: " + name);
@@ -958,10 +1466,10 @@ public class EdgesPanel extends JPanel implements MouseListener,
 				g.setStroke(new BasicStroke(l.linesize*1.0f));
 			}
 			double rad = (90-l.lineangle)/360*2*Math.PI;
-			double xdiff = l.linelength * Math.cos(rad);
-			double ydiff = -l.linelength * Math.sin(rad);
-			double xstart = vertex.location().get(0, 0);
-			double ystart =  vertex.location().get(1, 0);
+			double xdiff = l.linelength * scale * Math.cos(rad);
+			double ydiff = -l.linelength * scale * Math.sin(rad);
+			double xstart = projector.xs()[vertex.index()];
+			double ystart = projector.ys()[vertex.index()];
 			double xend = xstart+xdiff;
 			double yend = ystart+ydiff;
 			if (l.linesize!=0 && l.linecolor != null)
@@ -969,7 +1477,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 			if (l.shape.equals("circle"))
 			{
-				double radius = l.shapesize;
+				double radius = l.shapesize * scale;
 				//g.setColor(l.shapefillcolor);
 				//g.fillOval(x, y, width, height);
                 //Shape theCircle = new Ellipse2D.Double(xstart - radius, ystart - radius, 2.0 * radius, 2.0 * radius);
@@ -990,7 +1498,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 			}
 			if (!l.toptext.isEmpty())
 			{
-				g.setFont(getFont(l.toptextttf,(float)l.toptextsize));
+				g.setFont(getFont(l.toptextttf,(float)(l.toptextsize * scale)));
 				drawStringWithBackground(g,l.toptext, (int)xend, (int)yend, l.topbgfillcolor, l.toptextcolor);
 			}
 			if (!l.bottomtext.isEmpty())
@@ -1007,7 +1515,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 				{
 					
 				}
-				g.setFont(getFont(l.bottomtextttf,(float)l.bottomtextsize));
+				g.setFont(getFont(l.bottomtextttf,(float)(l.bottomtextsize * scale)));
 				drawStringWithBackground(g,l.bottomtext, (int)xend, (int)yend2, l.bottombgfillcolor, l.bottomtextcolor);
 			}
 		
@@ -1017,35 +1525,35 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void paintVertices(Graphics g) {
-		if (vertices == null) {
+		paintVertices(g, window);
+	}
+
+	private void paintVertices(Graphics g, Pass p) {
+		if (graph == null) {
 			return;
 		}
 		if (drawVertices) {
-			paintNonColoredVertices(g);
+			paintNonColoredVertices(g, p);
 		}
 		// Now to draw the colored vertices. They must be drawn last
 		// (so they are drawn on top);
-		paintColoredVertices(g);
+		paintColoredVertices(g, p);
 	}
 
 	public void showIds(boolean b) {
 		idsIncluded = b;
-		if (vertices == null) {
+		if (graph == null) {
 			return;
 		}
-		for (int ii = 0; ii < vertices.length; ++ii) {
-			vertices[ii].showID(b);
-		}
+		graph.showAllIDs(b);
 	}
 
 	public void showVertices(boolean b) {
 		drawVertices = b;
-		if (vertices == null) {
+		if (graph == null) {
 			return;
 		}
-		for (int ii = 0; ii < vertices.length; ++ii) {
-			vertices[ii].showVertex(b);
-		}
+		graph.showAllVertices(b);
 	}
 
 	private void runIdRegion() {
@@ -1053,15 +1561,31 @@ public class EdgesPanel extends JPanel implements MouseListener,
 			// Check to see which vertices are in
 			// this region and set the flags to show
 			// the ids.
-			for (int ii = 0; ii < vertices.length; ++ii) {
-				Matrix x = vertices[ii].location();
-				if (((mins.get(0, 0) < x.get(0, 0)) && (x.get(0, 0) < maxs.get(
-						0, 0)))
-						&& ((mins.get(1, 0) < x.get(1, 0)) && (x.get(1, 0) < maxs
-								.get(1, 0)))) {
-					vertices[ii].showID(true);
+			double[] r = worldBounds(view(), mins[0], mins[1], maxs[0],
+					maxs[1]);
+			SpatialGrid.Hits hits = r == null ? null : graph.spatialGrid()
+					.vertices(r[0], r[1], r[2], r[3], new SpatialGrid.Hits());
+			if (hits != null) {
+				graph.showAllIDs(false);
+				int[] hit = hits.ids();
+				for (int k = 0; k < hits.size(); ++k) {
+					double x = screenX(hit[k]);
+					double y = screenY(hit[k]);
+					if (((mins[0] < x) && (x < maxs[0]))
+							&& ((mins[1] < y) && (y < maxs[1]))) {
+						graph.showID(hit[k], true);
+					}
+				}
+				return;
+			}
+			for (int ii = 0; ii < graph.vertexCount(); ++ii) {
+				double x = screenX(ii);
+				double y = screenY(ii);
+				if (((mins[0] < x) && (x < maxs[0]))
+						&& ((mins[1] < y) && (y < maxs[1]))) {
+					graph.showID(ii, true);
 				} else {
-					vertices[ii].showID(false);
+					graph.showID(ii, false);
 				}
 			}
 		}
@@ -1075,16 +1599,16 @@ public class EdgesPanel extends JPanel implements MouseListener,
 			boolean willLabel, boolean willZoom) {
 		statusBar.setText("Looking at IDs");
 		for (int ii = 0; ii < ids.length; ++ii) {
-			Object o = vertexIdMap.get(ids[ii]);
-			if (o == null) {
+			Vertex v = graph.vertex(ids[ii]);
+			if (v == null) {
 				handleBadVertex(ids[ii]);
 				continue;
 			}
-			Vertex v = (Vertex) o;
 			v.showID(willLabel);
 			// System.out.println("Labeling " + v.id());
 			if (willZoom) {
-				s.addStatsOfVertex(v);
+				// Zooming works on screen coordinates
+				s.addStats(screenX(v.index()), screenY(v.index()));
 				// System.out.println("Adding stats of " + v.id());
 			}
 		}
@@ -1166,16 +1690,16 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	}
 
-	public HashMap setEdgeColorsFromFindVertexFrame(String ids[], Color color) {
+	public ColorColumn setEdgeColorsFromFindVertexFrame(String ids[], Color color) {
 		// statusBar.setText("Checking all possible combinations for edges. This may take time...");
-		HashMap h = new HashMap();
+		ColorColumn h = new ColorColumn();
 		for (int ii = 0; ii < ids.length; ++ii) {
 			for (int jj = ii + 1; jj < ids.length; ++jj) {
 				// Check and see if the possible edge name exists in the
 				// hash. If it does , then paint it
-				Object o = edgeIdMap.get(Edge.idEdge(ids[ii], ids[jj]));
-				if (o != null) {
-					h.put((Edge) o, color);
+				int e = graph.findEdge(ids[ii], ids[jj]);
+				if (e >= 0) {
+					h.set(e, color);
 				}
 				// System.out.println("COLOR: " + color);
 				// edges[jj].print();
@@ -1186,19 +1710,18 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		return h;
 	}
 
-	public HashMap setEdgeColorsFromFindEdgesFrame(String ids[], Color color) {
+	public ColorColumn setEdgeColorsFromFindEdgesFrame(String ids[], Color color) {
 		statusBar.setText("Finding edges to color...");
-		HashMap h = new HashMap();
+		ColorColumn h = new ColorColumn();
 		for (int ii = 0; ii < ids.length; ii += 2) {
 			String id1 = ids[ii];
 			String id2 = ids[ii + 1];
-			String edgeName = Edge.idEdge(id1, id2);
-			Object o = edgeIdMap.get(edgeName);
-			if (o == null) {
+			int e = graph.findEdge(id1, id2);
+			if (e < 0) {
 				handleBadEdge(id1, id2);
 				continue;
 			}
-			h.put((Edge) o, color);
+			h.set(e, color);
 			// System.out.println("COLOR: " + color);
 			// edges[jj].print();
 		}
@@ -1224,11 +1747,13 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	// ZOOMING ISSUES
 	// -----------------------------------------------------
 
-	public void undo() {
-		if (fitter != null) {
-			fitter.setManipulationMatrix(inverted);
-			applyFit(fitter);
-		}
+	// Swap back to the previous view, see ViewHistory
+	public boolean undo() {
+		return formatter != null && formatter.undoView();
+	}
+
+	public boolean redo() {
+		return formatter != null && formatter.redoView();
 	}
 
 	public void runZoomRegion() {
@@ -1236,22 +1761,19 @@ public class EdgesPanel extends JPanel implements MouseListener,
 			VertexStats stats = new VertexStats();
 			stats.setMin(mins);
 			stats.setMax(maxs);
-			formatter.setStats(stats);
-			formatter.fitDataToWindow();
-			fitter = formatter.getFitter();
-			inverted = fitter.getManipulationMatrix().inverse();
+			formatter.fitRegionToWindow(stats);
 		}
 	}
 
 
 	public void zoomIn(VertexFitter f) {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
-		mins.set(0, 0, zoomStepSize * xWindowSize);
-		mins.set(1, 0, zoomStepSize * yWindowSize);
-		maxs.set(0, 0, xWindowSize - zoomStepSize * xWindowSize);
-		maxs.set(1, 0, yWindowSize - zoomStepSize * yWindowSize);
+		mins[0] = zoomStepSize * xWindowSize;
+		mins[1] = zoomStepSize * yWindowSize;
+		maxs[0] = xWindowSize - zoomStepSize * xWindowSize;
+		maxs[1] = yWindowSize - zoomStepSize * yWindowSize;
 		zoomPrep(f);
 		setPaintImage();
 	}
@@ -1262,7 +1784,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	public void zoom(VertexFitter f, double scale)
 	{
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 		Transformer trans = new Transformer();
@@ -1277,19 +1799,19 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void zoomOut(VertexFitter f) {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 
-		/*mins.set(0, 0, -zoomStepSize * xWindowSize);
-		mins.set(1, 0, -zoomStepSize * yWindowSize);
-		maxs.set(0, 0, xWindowSize + zoomStepSize * xWindowSize);
-		maxs.set(1, 0, yWindowSize + zoomStepSize * yWindowSize);*/
+		/*mins[0] = -zoomStepSize * xWindowSize;
+		mins[1] = -zoomStepSize * yWindowSize;
+		maxs[0] = xWindowSize + zoomStepSize * xWindowSize;
+		maxs[1] = yWindowSize + zoomStepSize * yWindowSize;*/
 
-		mins.set(0, 0, -zoomStepSize * xWindowSize);
-		mins.set(1, 0, -zoomStepSize * yWindowSize);
-		maxs.set(0, 0, xWindowSize + zoomStepSize * xWindowSize);
-		maxs.set(1, 0, yWindowSize + zoomStepSize * yWindowSize);
+		mins[0] = -zoomStepSize * xWindowSize;
+		mins[1] = -zoomStepSize * yWindowSize;
+		maxs[0] = xWindowSize + zoomStepSize * xWindowSize;
+		maxs[1] = yWindowSize + zoomStepSize * yWindowSize;
 
 		zoomPrep(f);
 	}
@@ -1327,7 +1849,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void zoom2Point(double x, double y) {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 		VertexFitter f = new VertexFitter();
@@ -1342,7 +1864,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void zoom2PointBy(double x, double y, double scale) {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 		VertexFitter f = new VertexFitter();
@@ -1359,7 +1881,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 
 	public void zoomOutFromPoint(double x, double y) {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 		VertexFitter f = new VertexFitter();
@@ -1375,8 +1897,8 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	private void zoomPrep(VertexFitter f) {
 		double[] scales = new double[2];
-		double spanx = maxs.get(0, 0) - mins.get(0, 0);
-		double spany = maxs.get(1, 0) - mins.get(1, 0);
+		double spanx = maxs[0] - mins[0];
+		double spany = maxs[1] - mins[1];
 		// Scale to fit new range
 		scales[0] = xWindowSize / spanx;
 		scales[1] = xWindowSize / spanx;//yWindowSize / spany;
@@ -1403,16 +1925,16 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	// -----------------------------------------------------
 
 	public void moveUp() {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 
 		double move = moveStepSize * yWindowSize;
 
-		mins.set(0, 0, 0);
-		mins.set(1, 0, move);
-		maxs.set(0, 0, xWindowSize);
-		maxs.set(1, 0, move + yWindowSize);
+		mins[0] = 0;
+		mins[1] = move;
+		maxs[0] = xWindowSize;
+		maxs[1] = move + yWindowSize;
 
 		VertexFitter f = new VertexFitter();
 		movePrep(f);
@@ -1420,16 +1942,16 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void moveDown() {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 
 		double move = moveStepSize * yWindowSize;
 
-		mins.set(0, 0, 0);
-		mins.set(1, 0, -move);
-		maxs.set(0, 0, xWindowSize);
-		maxs.set(1, 0, -move + yWindowSize);
+		mins[0] = 0;
+		mins[1] = -move;
+		maxs[0] = xWindowSize;
+		maxs[1] = -move + yWindowSize;
 
 		VertexFitter f = new VertexFitter();
 		movePrep(f);
@@ -1437,16 +1959,16 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void moveLeft() {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 
 		double move = moveStepSize * yWindowSize;
 
-		mins.set(0, 0, move);
-		mins.set(1, 0, 0);
-		maxs.set(0, 0, xWindowSize + move);
-		maxs.set(1, 0, yWindowSize);
+		mins[0] = move;
+		mins[1] = 0;
+		maxs[0] = xWindowSize + move;
+		maxs[1] = yWindowSize;
 
 		VertexFitter f = new VertexFitter();
 		movePrep(f);
@@ -1454,16 +1976,16 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	public void moveRight() {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 
 		double move = moveStepSize * yWindowSize;
 
-		mins.set(0, 0, -move);
-		mins.set(1, 0, 0);
-		maxs.set(0, 0, xWindowSize - move);
-		maxs.set(1, 0, yWindowSize);
+		mins[0] = -move;
+		mins[1] = 0;
+		maxs[0] = xWindowSize - move;
+		maxs[1] = yWindowSize;
 
 		VertexFitter f = new VertexFitter();
 		movePrep(f);
@@ -1471,7 +1993,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	}
 
 	private void move2Point(double x, double y, VertexFitter f) {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
 		double[] moves = new double[2];
@@ -1484,8 +2006,8 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 	private void movePrep(VertexFitter f) {
 		double[] moves = new double[2];
-		moves[0] = (maxs.get(0, 0) + mins.get(0, 0)) * .5 - xWindowSize * .5;
-		moves[1] = (maxs.get(1, 0) + mins.get(1, 0)) * .5 - yWindowSize * .5;
+		moves[0] = (maxs[0] + mins[0]) * .5 - xWindowSize * .5;
+		moves[1] = (maxs[1] + mins[1]) * .5 - yWindowSize * .5;
 		Transformer trans = new Transformer();
 		trans.move(moves);
 		f.addManipulation(trans);
@@ -1517,6 +2039,9 @@ public class EdgesPanel extends JPanel implements MouseListener,
 			x1 = e.getX();
 			y1 = e.getY();
 			handtouch  = true;
+			if (formatter != null) {
+				formatter.holdHistory(true);
+			}
 			System.out.println("click");
 		}
 		else
@@ -1532,16 +2057,19 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		if (mode == modes.handmode && handtouch)
 		{
 			handtouch = false;
+			if (formatter != null) {
+				formatter.holdHistory(false);
+			}
 		}
 		if (zoomRegion || idRegion) {
 			x2 = e.getX();
 			y2 = e.getY();
 			statusBar.setText("Region set to (" + x1 + "," + y1 + ") to ("
 					+ e.getX() + "," + e.getY() + ") Working on redraw...");
-			mins.set(0, 0, Math.min(x1, x2));
-			mins.set(1, 0, Math.min(y1, y2));
-			maxs.set(0, 0, Math.max(x1, x2));
-			maxs.set(1, 0, Math.max(y1, y2));
+			mins[0] = Math.min(x1, x2);
+			mins[1] = Math.min(y1, y2);
+			maxs[0] = Math.max(x1, x2);
+			maxs[1] = Math.max(y1, y2);
 			if (zoomRegion) {
 				runZoomRegion();
 			}
@@ -1557,7 +2085,7 @@ public class EdgesPanel extends JPanel implements MouseListener,
 	public void mouseDragged(MouseEvent e) {
 		if (mode == modes.handmode && handtouch)
 		{
-			if (edges == null) {
+			if (graph == null) {
 				return;
 			}
 			System.out.println("updating" +  e.getX());
@@ -1569,10 +2097,10 @@ public class EdgesPanel extends JPanel implements MouseListener,
 
 				double xmove = x2-x1;
 		
-				mins.set(0, 0, xmove);
-				mins.set(1, 0, ymove);
-				maxs.set(0, 0, xmove+ xWindowSize);
-				maxs.set(1, 0, ymove + yWindowSize);
+				mins[0] = xmove;
+				mins[1] = ymove;
+				maxs[0] = xmove+ xWindowSize;
+				maxs[1] = ymove + yWindowSize;
 		
 				VertexFitter f = new VertexFitter();
 				movePrep(f);
@@ -1585,10 +2113,10 @@ public class EdgesPanel extends JPanel implements MouseListener,
 		
 				/*double move = moveStepSize * yWindowSize;
 		
-				mins.set(0, 0, move);
-				mins.set(1, 0, 0);
-				maxs.set(0, 0, xWindowSize + move);
-				maxs.set(1, 0, yWindowSize);*/
+				mins[0] = move;
+				mins[1] = 0;
+				maxs[0] = xWindowSize + move;
+				maxs[1] = yWindowSize;*/
 		   x1 = x2;
 		   y1 = y2;
 			
@@ -0,0 +1,103 @@
+package Viewer2D;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Cuts a file into chunks for the parallel loaders. A chunk is about
+ * <code>chunkSize</code> bytes long and always starts at the beginning of a
+ * line, so it can be parsed without looking at its neighbours. The returned
+ * array holds the start offset of every chunk followed by the file size.
+ * </p>
+ */
+public class FileChunker {
+
+	private static final int WINDOW = 1 << 16;
+
+	private FileChunker() {
+	}
+
+	// ---------------------------------------------------------
+	// STATIC METHOD CALLS
+	// ---------------------------------------------------------
+
+	// Chunks starting at any line
+	public static long[] lineAligned(FileChannel channel, int chunkSize)
+			throws IOException {
+		return split(channel, chunkSize, (byte) 0);
+	}
+
+	// Chunks starting at a line whose first byte is the given marker,
+	// followed by a blank (e.g. the "# id" lines of an .lgl file)
+	public static long[] blockAligned(FileChannel channel, int chunkSize,
+			byte marker) throws IOException {
+		return split(channel, chunkSize, marker);
+	}
+
+	// Copies len bytes of b from offset into line. This moves the position
+	// of b, which the absolute get(int) of the line scans does not use. The
+	// absolute bulk get(int, byte[], int, int) is only there from Java 13.
+	static void copyLine(ByteBuffer b, int offset, byte[] line, int len) {
+		b.position(offset);
+		b.get(line, 0, len);
+	}
+
+	// PRIVATE METHOD CALLS
+	private static long[] split(FileChannel channel, int chunkSize, byte marker)
+			throws IOException {
+		long size = channel.size();
+		long[] bounds = new long[(int) (size / chunkSize) + 2];
+		int n = 0;
+		bounds[n++] = 0;
+		long next = chunkSize;
+		while (next < size) {
+			long start = nextStart(channel, next, size, marker);
+			if (start >= size) {
+				break;
+			}
+			bounds[n++] = start;
+			next = start + chunkSize;
+		}
+		bounds[n++] = size;
+		return Arrays.copyOf(bounds, n);
+	}
+
+	// First line start at or after from (that begins with the marker if
+	// there is one), or size if there is none
+	private static long nextStart(FileChannel channel, long from, long size,
+			byte marker) throws IOException {
+		// Overlap the windows by two bytes so "\n# " is never cut
+		long pos = from - 1;
+		while (pos < size) {
+			int window = (int) Math.min(WINDOW, size - pos);
+			MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY,
+					pos, window);
+			for (int ii = 0; ii < window; ++ii) {
+				if (b.get(ii) != '\n') {
+					continue;
+				}
+				if (marker == 0) {
+					return pos + ii + 1;
+				}
+				if (ii + 2 < window && b.get(ii + 1) == marker
+						&& isBlank(b.get(ii + 2))) {
+					return pos + ii + 1;
+				}
+			}
+			if (pos + window >= size) {
+				break;
+			}
+			pos += marker == 0 ? window : window - 2;
+		}
+		return size;
+	}
+
+	static boolean isBlank(byte c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0b;
+	}
+
+}
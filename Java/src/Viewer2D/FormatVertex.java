@@ -21,35 +21,49 @@ package Viewer2D;
 
 import java.util.HashMap;
 
-import Jama.Matrix;
-
+/**
+ * <p>
+ * Keeps the view of the layout: one affine transform from the layout (world)
+ * coordinates of the {@link GraphStore} to screen coordinates. The layout
+ * itself is never changed, the painters of {@link EdgesPanel} apply the view
+ * as they draw, so a pan or zoom is one {@link Affine2D} product.
+ * </p>
+ * <p>
+ * Every change of the view after the first goes to a {@link ViewHistory},
+ * which undo, redo and bookmarks swap views back in from.
+ * </p>
+ */
 public class FormatVertex {
-	private Vertex[] vertices;
+	private GraphStore graph;
 	private VertexStats stats;
 	private int[] windowSizes; // X = 0 , Y = 1 etc
-	private int threadCount;
+	private int threadCount; // for projecting, <= 0 is every core
 	private static int DIMENSION = Vertex.DIMENSION;
-	private VertexFitter fitter;
-	private HashMap<Vertex,Label> labels;
+	private VertexFitter fitter; // the last change of the view
+	private VertexFitter view; // world -> screen
+	private ViewHistory history;
+	private boolean viewShown; // false until the first view is set
+	private boolean holding; // one history entry for a gesture
+	private boolean heldRecorded;
 	private double scaleBy;
 	private double scaleCorrectionLabels;
-	private double scaleCorrectionLabelsOriginal;
-	private boolean scaleLabelUsed;
 	private double minX, maxX;
 	private double minY, maxY;
+	private double fitLow = 0, fitHigh = 1; // quantiles the fit spans
 	boolean aligncenter;
 
 	// CONSTRUCTORS
-	public FormatVertex(Vertex[] e, HashMap<Vertex,Label> labels,double scaleLabels,double minX, double minY,double maxX,double maxY,
+	public FormatVertex(GraphStore g, HashMap<Vertex,Label> labels,double scaleLabels,double minX, double minY,double maxX,double maxY,
 	boolean aligncenter,
 			VertexStats stats, int[] wSizes,
 			int threads2use) {
-		vertices = e;
+		graph = g;
 		this.stats = stats;
 		windowSizes = wSizes;
 		threadCount = threads2use;
-		this.labels =  labels;
 		fitter = new VertexFitter();
+		view = new VertexFitter(Affine2D.IDENTITY);
+		history = new ViewHistory();
 		this.scaleCorrectionLabels =  scaleLabels;
 		this.minX = minX;
 		this.maxX = maxX;
@@ -57,27 +71,77 @@ public class FormatVertex {
 		this.maxY = maxY;
 		this.aligncenter = aligncenter;
 		scaleBy = 1;
-		scaleLabelUsed = false;
 	
 	}
 
 	// MUTATORS
 
+	// Makes the whole layout, or the part between the fit quantiles,
+	// fit the window whatever the view was
 	public void fitDataToWindow() {
-		fitter.clear();
-		// Here the appropriate translation/scaling matrices
-		// must be generated and applied to the originalVertices.
-		// Stretch the vertices to fit the window
-		double scale = scalingIssues();
-		
-		// Recenter the vertices based on the avg of max and min values
-		translationIssues(scale);
+		buildFit(fitBounds());
+		setView(fitter.getManipulation());
+	}
 
+	// Makes the given region of the current view (screen coordinates)
+	// fit the window
+	public void fitRegionToWindow(VertexStats region) {
+		buildFit(region);
 		applyTransformation();
 	}
 
-	public void setVertices(Vertex[] e) {
-		this.vertices = e;
+	// Back to the view before the last change, false if there is none
+	public boolean undoView() {
+		Affine2D v = history.undo(view.getManipulation());
+		if (v == null) {
+			return false;
+		}
+		changeView(v);
+		return true;
+	}
+
+	public boolean redoView() {
+		Affine2D v = history.redo(view.getManipulation());
+		if (v == null) {
+			return false;
+		}
+		changeView(v);
+		return true;
+	}
+
+	public void bookmarkView(String name) {
+		history.addBookmark(name, view.getManipulation(), windowSizes[0],
+				windowSizes[1]);
+	}
+
+	// Shows the bookmark scaled to the window, the change can be undone
+	public void showBookmark(ViewHistory.Bookmark b) {
+		setView(b.viewFor(windowSizes[0], windowSizes[1]));
+	}
+
+	// False if there is no such bookmark
+	public boolean showBookmark(String name) {
+		ViewHistory.Bookmark b = history.getBookmark(name);
+		if (b == null) {
+			return false;
+		}
+		showBookmark(b);
+		return true;
+	}
+
+	// While held, all the changes of the view (a drag) go back as one
+	public void holdHistory(boolean hold) {
+		holding = hold;
+		heldRecorded = false;
+	}
+
+	// Lets a history, and its bookmarks, outlive this formatter
+	public void setHistory(ViewHistory h) {
+		history = h;
+	}
+
+	public void setGraph(GraphStore g) {
+		this.graph = g;
 	}
 
 	public void setStats(VertexStats stats) {
@@ -98,21 +162,29 @@ public class FormatVertex {
 
 	public void setLabelScale(double scale)
 	{
+		scaleCorrectionLabels = scale;
+	}
 
-		scaleCorrectionLabels = scale/(scaleLabelUsed? scaleCorrectionLabelsOriginal: scaleCorrectionLabels);
-		scaleLabelUsed = false;
-		scaleLabels(1);
 
+	// The fit spans the low to high quantile of each axis, 0 and 1 being
+	// the whole layout. Stray outliers are left out with say .001 and
+	// .999. Needs stats with quantiles, else the whole layout is fit.
+	public void setFitQuantiles(double low, double high) {
+		if (!(0 <= low && low < high && high <= 1)) {
+			throw new IllegalArgumentException(
+					"Fit quantiles must be 0 <= low < high <= 1.");
+		}
+		fitLow = low;
+		fitHigh = high;
 	}
 
-
 	public void threads(int t) {
 		threadCount = t;
 	}
 
 	// ACCESSORS
-	public Vertex[] getVertices() {
-		return vertices;
+	public GraphStore getGraph() {
+		return graph;
 	}
 
 	public VertexStats getStats() {
@@ -132,10 +204,26 @@ public class FormatVertex {
 		return scaleBy;
 	}
 
+	// What the sizes of the labels are multiplied by once a view is set:
+	// the scale of the view times the label scale. The labels themselves
+	// are left as loaded, so several views can share them.
+	public double labelScale() {
+		return viewShown ? scaleBy * scaleCorrectionLabels : 1;
+	}
+
 	public VertexFitter getFitter() {
 		return fitter;
 	}
 
+	// World to screen
+	public VertexFitter getView() {
+		return view;
+	}
+
+	public ViewHistory getHistory() {
+		return history;
+	}
+
 	public void print() {
 		System.out.println("Formatter Info:");
 		fitter.print();
@@ -145,7 +233,37 @@ public class FormatVertex {
 	// PRIVATE METHOD CALLS
 	// /////////////////////////////////////////////////////////////////////
 
-	private void translationIssues(double scale) {
+	// The stats bounded by the fit quantiles, from the digests built when
+	// loading so nothing is scanned again. Their mean is the middle of the
+	// bounds, which is what -a center centres on.
+	private VertexStats fitBounds() {
+		if ((fitLow <= 0 && fitHigh >= 1) || !stats.hasQuantiles()
+				|| stats.vertexCount() == 0) {
+			return stats;
+		}
+		double[] min = new double[DIMENSION];
+		double[] max = new double[DIMENSION];
+		double[] total = new double[DIMENSION];
+		for (int d = 0; d < DIMENSION; ++d) {
+			min[d] = stats.quantile(d, fitLow);
+			max[d] = stats.quantile(d, fitHigh);
+			total[d] = 0.5 * (min[d] + max[d]) * stats.vertexCount();
+		}
+		VertexStats bounds = new VertexStats();
+		bounds.set(min, max, total, (int) stats.vertexCount());
+		return bounds;
+	}
+
+	private void buildFit(VertexStats stats) {
+		fitter.clear();
+		// Stretch the vertices to fit the window
+		double scale = scalingIssues(stats);
+
+		// Recenter the vertices based on the avg of max and min values
+		translationIssues(stats, scale);
+	}
+
+	private void translationIssues(VertexStats stats, double scale) {
 		double[] offsets = new double[DIMENSION];
 		
 		if (aligncenter) {
@@ -165,7 +283,7 @@ public class FormatVertex {
 		fitter.addManipulation(transformer);
 	}
 
-	private double scalingIssues() {
+	private double scalingIssues(VertexStats stats) {
 		double scale;
 		
         if (minX!=0 && maxX!=0)
@@ -189,74 +307,23 @@ public class FormatVertex {
 		return .99 * scale;
 	}
 
-	private double calculateScale()
-	{
-		Matrix m = fitter.getManipulationMatrix();
-		double sum = 0;
-		for (int i = 0; i < Vertex.DIMENSION;i++)
-			sum += m.get(0, i)*m.get(0, i); 
-
-		double scale = Math.sqrt(sum);
-
-		return scale;
-
-	}
-
-	private void scaleLabels(double currentScale)
-	{
-		labels.forEach((k,v) -> {
-			Label l = (Label)v;
-			Vertex vertex = (Vertex) k;
-			l.linelength =(l.linelength * currentScale * scaleCorrectionLabels);
-			//l.linesize =(int) (l.linesize *  scaleBy * scaleCorrectionLabels);
-			l.bottomtextsize =  (l.bottomtextsize *  currentScale * scaleCorrectionLabels);
-			l.toptextsize =  (l.toptextsize *  currentScale * scaleCorrectionLabels);
-			l.shapesize =  (l.shapesize *  currentScale * scaleCorrectionLabels);
-
-			});
-			if (!scaleLabelUsed)
-			{
-				scaleCorrectionLabelsOriginal = scaleCorrectionLabels;
-
-			}
-			scaleLabelUsed = true;
-			scaleCorrectionLabels = 1;
-
-
+	// Puts the last change (the fitter) on top of the view
+	public void applyTransformation() {
+		setView(fitter.getManipulation().times(view.getManipulation()));
 	}
 
-	public void applyTransformation() {
-		double currentScale = calculateScale();
-		scaleBy = scaleBy * currentScale;
-		// Now to do the work to each vertex
-		long start = System.nanoTime();
-		ManipVertexArray manipa[] = new ManipVertexArray[threadCount];
-	//	VertexStats statsa[] = new VertexStats[threadCount];
-
-		for (int t = 0; t < threadCount; ++t) {
-			ManipVertexArray manip = new ManipVertexArray(vertices,"vertexrecalc"+t);
-			manipa[t] = manip;
-		//	statsa[t] = new VertexStats();
-			manip.setFitter(fitter);
-			manip.setStride(threadCount);
-			manip.setOffset(t);
-			manip.setVertexStats(stats); // Fix this if threading (race cond.)
-			manip.start();
+	private void setView(Affine2D m) {
+		if (viewShown && !(holding && heldRecorded)) {
+			history.record(view.getManipulation());
+			heldRecorded = holding;
 		}
-		for (int t = 0; t < threadCount;t++)
-		{
-			try {
-				manipa[t].getThread().join();
-			} catch (InterruptedException e) {
-				
-				e.printStackTrace();
-			}
+		viewShown = true;
+		changeView(m);
+	}
 
-		}
-		long end = System.nanoTime();
-		System.out.println("Time to recalculate vertices "+(end-start)/1000000000.0+"s");
-		scaleLabels(currentScale);
-		
+	private void changeView(Affine2D m) {
+		view.setManipulation(m);
+		scaleBy = m.scale();
 	}
 
 }
@@ -0,0 +1,358 @@
+package Viewer2D;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * <p>
+ * Binary snapshot (.lglb) of a graph loaded from a text .lgl file. It is
+ * kept next to the source and reused as long as the source keeps the same
+ * size and modification time, so reopening a graph is a handful of bulk
+ * copies out of a memory mapped file instead of a full parse.
+ * </p>
+ * <p>
+ * Layout, little endian, every section starting on an 8 byte boundary:
+ * </p>
+ *
+ * <pre>
+ * header (64 bytes)
+ *   "LGLB" version sourceSize sourceModified vertexCount edgeCount
+ *   idTableLength edgeTableLength edgeKeyCount - idPoolBytes reserved
+ * id dictionary       int[vertexCount + 1] offsets, UTF-8 bytes
+ * CSR adjacency       int[vertexCount + 1] row starts, int[edgeCount]
+ *                     targets, int[edgeCount] edge index of every slot
+ * id hash table       int[idTableLength]
+ * edge hash table     long[edgeTableLength] keys, int[edgeTableLength] values
+ * </pre>
+ * <p>
+ * A row holds the edges stored with that vertex as source, in edge order,
+ * and the per slot edge index restores the exact edge order and direction
+ * of the {@link GraphStore}. The hash tables are saved as they are, so
+ * nothing is rehashed on reopen.
+ * </p>
+ * <p>
+ * Coordinates are not kept: layouts come and go for the same graph, and
+ * only the .lgl is keyed.
+ * </p>
+ * <p>
+ * An existing snapshot is read whenever it is current, and one is written
+ * after every full parse. Graphs often sit on read-only or shared
+ * directories, so a directory that cannot be written to is skipped and a
+ * failed write leaves nothing behind (see
+ * {@link ViewerIO#setSnapshotWriting(boolean)}).
+ * </p>
+ */
+public class GraphSnapshot {
+
+	public static final String EXTENSION = ".lglb";
+	public static final int VERSION = 1;
+
+	private static final int MAGIC = 'L' | 'G' << 8 | 'L' << 16 | 'B' << 24;
+	private static final int HEADER_SIZE = 64;
+
+	private final File source;
+	private final File file;
+
+	// CONSTRUCTORS
+	public GraphSnapshot(File source) {
+		this.source = source;
+		this.file = snapshotFile(source);
+	}
+
+	// ACCESSORS
+	public File getFile() {
+		return file;
+	}
+
+	// The graph saved for the current version of the source, or null if
+	// there is none (missing, stale, other version or unreadable).
+	public GraphStore read() {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				ByteBuffer b = map(raf);
+				if (b == null || !matchesSource(b)) {
+					return null;
+				}
+				return readGraph(b);
+			} finally {
+				raf.close();
+			}
+		} catch (IOException ex) {
+			System.out.println("Ignoring snapshot " + file + ": "
+					+ ex.getMessage());
+			return null;
+		} catch (RuntimeException ex) {
+			// Truncated or corrupt file
+			System.out.println("Ignoring snapshot " + file + ": " + ex);
+			return null;
+		}
+	}
+
+	// MUTATORS
+
+	// Saves the graph, next to the source. Returns false, leaving no file,
+	// when the directory is not writable or the write fails.
+	public boolean write(GraphStore graph) {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir == null || !dir.canWrite()) {
+			return false;
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+			try {
+				raf.setLength(0);
+				Output out = new Output(raf.getChannel());
+				writeGraph(out, graph);
+				out.flush();
+			} finally {
+				raf.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		} catch (IOException ex) {
+			tmp.delete();
+			return false;
+		}
+	}
+
+	// ---------------------------------------------------------
+	// STATIC METHOD CALLS
+	// ---------------------------------------------------------
+
+	// graph.lgl -> graph.lglb, anything else gets the extension appended
+	public static File snapshotFile(File source) {
+		String path = source.getPath();
+		if (path.endsWith(".lgl")) {
+			return new File(path + "b");
+		}
+		return new File(path + EXTENSION);
+	}
+
+	// PRIVATE METHOD CALLS
+	private static ByteBuffer map(RandomAccessFile raf) throws IOException {
+		long length = raf.length();
+		if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+			return null;
+		}
+		MappedByteBuffer b = raf.getChannel().map(
+				FileChannel.MapMode.READ_ONLY, 0, length);
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		return b;
+	}
+
+	private boolean matchesSource(ByteBuffer b) {
+		return b.getInt(0) == MAGIC && b.getInt(4) == VERSION
+				&& b.getLong(8) == source.length()
+				&& b.getLong(16) == source.lastModified();
+	}
+
+	private static GraphStore readGraph(ByteBuffer b) {
+		int vertexCount = b.getInt(24);
+		int edgeCount = b.getInt(28);
+		int idTableLength = b.getInt(32);
+		int edgeTableLength = b.getInt(36);
+		int edgeKeyCount = b.getInt(40);
+		int poolBytes = (int) b.getLong(48);
+		b.position(HEADER_SIZE);
+
+		int[] offsets = getInts(b, vertexCount + 1);
+		byte[] pool = new byte[poolBytes];
+		b.get(pool);
+		align(b);
+		String[] ids = new String[vertexCount];
+		for (int v = 0; v < vertexCount; ++v) {
+			ids[v] = new String(pool, offsets[v], offsets[v + 1] - offsets[v],
+					StandardCharsets.UTF_8);
+		}
+
+		int[] rowStart = getInts(b, vertexCount + 1);
+		int[] targets = getInts(b, edgeCount);
+		int[] slotEdge = getInts(b, edgeCount);
+		int[] edgeSrc = new int[edgeCount];
+		int[] edgeDst = new int[edgeCount];
+		for (int v = 0; v < vertexCount; ++v) {
+			for (int k = rowStart[v]; k < rowStart[v + 1]; ++k) {
+				edgeSrc[slotEdge[k]] = v;
+				edgeDst[slotEdge[k]] = targets[k];
+			}
+		}
+
+		int[] idTable = getInts(b, idTableLength);
+		long[] keys = new long[edgeTableLength];
+		b.asLongBuffer().get(keys);
+		b.position(b.position() + edgeTableLength * 8);
+		int[] values = getInts(b, edgeTableLength);
+		return new GraphStore(ids, edgeSrc, edgeDst, idTable, new EdgeKeyMap(
+				keys, values, edgeKeyCount));
+	}
+
+	private static int[] getInts(ByteBuffer b, int n) {
+		int[] a = new int[n];
+		b.asIntBuffer().get(a);
+		b.position(b.position() + n * 4);
+		align(b);
+		return a;
+	}
+
+	private static void align(ByteBuffer b) {
+		b.position((b.position() + 7) & ~7);
+	}
+
+	private void writeGraph(Output out, GraphStore graph)
+			throws IOException {
+		int vertexCount = graph.vertexCount();
+		int edgeCount = graph.edgeCount();
+		int[] idTable = graph.idTable();
+		EdgeKeyMap edgeIndex = graph.edgeIndex();
+
+		int[] offsets = new int[vertexCount + 1];
+		byte[][] idBytes = new byte[vertexCount][];
+		for (int v = 0; v < vertexCount; ++v) {
+			idBytes[v] = graph.id(v).getBytes(StandardCharsets.UTF_8);
+			offsets[v + 1] = offsets[v] + idBytes[v].length;
+		}
+
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putLong(source.length());
+		out.putLong(source.lastModified());
+		out.putInt(vertexCount);
+		out.putInt(edgeCount);
+		out.putInt(idTable.length);
+		out.putInt(edgeIndex.keys().length);
+		out.putInt(edgeIndex.size());
+		out.putInt(0);
+		out.putLong(offsets[vertexCount]);
+		out.putLong(0); // reserved
+
+		out.putInts(offsets, vertexCount + 1);
+		for (int v = 0; v < vertexCount; ++v) {
+			out.putBytes(idBytes[v]);
+		}
+		out.align();
+
+		// CSR by source, every row in edge order
+		int[] src = graph.edgeSources();
+		int[] dst = graph.edgeTargets();
+		int[] rowStart = new int[vertexCount + 1];
+		for (int e = 0; e < edgeCount; ++e) {
+			++rowStart[src[e] + 1];
+		}
+		for (int v = 0; v < vertexCount; ++v) {
+			rowStart[v + 1] += rowStart[v];
+		}
+		int[] fill = rowStart.clone();
+		int[] targets = new int[edgeCount];
+		int[] slotEdge = new int[edgeCount];
+		for (int e = 0; e < edgeCount; ++e) {
+			int k = fill[src[e]]++;
+			targets[k] = dst[e];
+			slotEdge[k] = e;
+		}
+		out.putInts(rowStart, vertexCount + 1);
+		out.putInts(targets, edgeCount);
+		out.putInts(slotEdge, edgeCount);
+
+		out.putInts(idTable, idTable.length);
+		out.putLongs(edgeIndex.keys());
+		out.putInts(edgeIndex.values(), edgeIndex.values().length);
+	}
+
+	// ---------------------------------------------------------
+	// BUFFERED OUTPUT
+	// ---------------------------------------------------------
+
+	private static class Output {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		private long written;
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		long position() {
+			return written + buffer.position();
+		}
+
+		void putInt(int v) throws IOException {
+			room(4);
+			buffer.putInt(v);
+		}
+
+		void putLong(long v) throws IOException {
+			room(8);
+			buffer.putLong(v);
+		}
+
+		void putBytes(byte[] b) throws IOException {
+			int off = 0;
+			while (off < b.length) {
+				room(1);
+				int n = Math.min(b.length - off, buffer.remaining());
+				buffer.put(b, off, n);
+				off += n;
+			}
+		}
+
+		void putInts(int[] a, int n) throws IOException {
+			for (int ii = 0; ii < n;) {
+				room(4);
+				int m = Math.min(n - ii, buffer.remaining() / 4);
+				buffer.asIntBuffer().put(a, ii, m);
+				buffer.position(buffer.position() + m * 4);
+				ii += m;
+			}
+			align();
+		}
+
+		void putLongs(long[] a) throws IOException {
+			for (int ii = 0; ii < a.length;) {
+				room(8);
+				int m = Math.min(a.length - ii, buffer.remaining() / 8);
+				buffer.asLongBuffer().put(a, ii, m);
+				buffer.position(buffer.position() + m * 8);
+				ii += m;
+			}
+		}
+
+		void align() throws IOException {
+			while ((position() & 7) != 0) {
+				room(1);
+				buffer.put((byte) 0);
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				written += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		private void room(int n) throws IOException {
+			if (buffer.remaining() < n) {
+				flush();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,532 @@
+package Viewer2D;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Primitive, structure-of-arrays storage for a loaded graph. Vertex
+ * coordinates live in two contiguous <code>double[]</code> columns, edges in
+ * two <code>int[]</code> columns of vertex indices and the per-vertex display
+ * flags in bit sets, so the heap cost no longer grows with one
+ * {@link Jama.Matrix} plus one {@link Vertex} and one {@link Edge} object per
+ * element.
+ * </p>
+ * <p>
+ * {@link Vertex} and {@link Edge} are kept as lightweight views (a store
+ * reference plus an index) for the Swing dialogs and the hash maps that still
+ * key on them. The painters, the loaders and the formatter work directly on
+ * the arrays.
+ * </p>
+ */
+public class GraphStore {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private String[] ids;
+	private double[] x, y;
+	private int vertexCount;
+
+	private int[] edgeSrc, edgeDst;
+	private double[] weight; // null until an edge weight is set
+	private int edgeCount;
+
+	private BitSet showId;
+	private BitSet showVertex;
+
+	// Open addressing id -> vertex table, probed linearly. Slots hold a
+	// vertex index or -1. Lookups by byte range hash the bytes the way
+	// String.hashCode() hashes the id, so no String is needed to probe.
+	private int[] idTable;
+	private int idMask;
+	private EdgeKeyMap edgeIndex;
+
+	private long fingerprint; // of the vertex order, 0 until computed
+
+	private SpatialGrid spatialGrid; // of the current layout, null until used
+	private EdgeImportance edgeImportance; // null until used
+
+	// CONSTRUCTORS
+	public GraphStore() {
+		this(INITIAL_CAPACITY, INITIAL_CAPACITY);
+	}
+
+	public GraphStore(int vertexCapacity, int edgeCapacity) {
+		vertexCapacity = Math.max(vertexCapacity, 1);
+		edgeCapacity = Math.max(edgeCapacity, 1);
+		ids = new String[vertexCapacity];
+		x = new double[vertexCapacity];
+		y = new double[vertexCapacity];
+		edgeSrc = new int[edgeCapacity];
+		edgeDst = new int[edgeCapacity];
+		showId = new BitSet();
+		showVertex = new BitSet();
+		allocateIdTable(tableSizeFor(vertexCapacity * 2));
+		edgeIndex = new EdgeKeyMap(edgeCapacity);
+	}
+
+	// Rebuilds a store from the columns and hash tables saved by
+	// GraphSnapshot, so nothing has to be hashed again
+	GraphStore(String[] ids, int[] edgeSrc, int[] edgeDst, int[] idTable,
+			EdgeKeyMap edgeIndex) {
+		this.ids = ids;
+		vertexCount = ids.length;
+		x = new double[vertexCount];
+		y = new double[vertexCount];
+		this.edgeSrc = edgeSrc;
+		this.edgeDst = edgeDst;
+		edgeCount = edgeSrc.length;
+		showId = new BitSet();
+		showVertex = new BitSet();
+		this.idTable = idTable;
+		idMask = idTable.length - 1;
+		this.edgeIndex = edgeIndex;
+	}
+
+	// MUTATORS
+
+	// Returns the index of the vertex with the given id, appending a
+	// new vertex at (0,0) if it was not seen before.
+	public int intern(String id) {
+		int v = indexOf(id);
+		if (v >= 0) {
+			return v;
+		}
+		return addVertex(id);
+	}
+
+	// Same as intern(String) for an id held in b[off, off+len). The
+	// String is only created when the vertex is new.
+	public int intern(byte[] b, int off, int len) {
+		int v = indexOf(b, off, len);
+		if (v >= 0) {
+			return v;
+		}
+		return addVertex(new String(b, off, len, StandardCharsets.UTF_8));
+	}
+
+	// Appends a vertex without checking for duplicates.
+	public int addVertex(String id) {
+		if (vertexCount == ids.length) {
+			int capacity = grow(ids.length);
+			ids = Arrays.copyOf(ids, capacity);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+		}
+		ids[vertexCount] = id;
+		insertId(id.hashCode(), vertexCount);
+		fingerprint = 0;
+		spatialGrid = null;
+		return vertexCount++;
+	}
+
+	// Returns the index of the edge between the two vertices (in either
+	// direction), appending it if it was not seen before.
+	public int internEdge(int source, int target) {
+		int e = edgeIndex.putIfAbsent(source, target, edgeCount);
+		if (e >= 0) {
+			return e;
+		}
+		return appendEdge(source, target);
+	}
+
+	// Appends an edge the caller knows to be new. A duplicate would be
+	// stored but stay unreachable through findEdge.
+	public int addEdge(int source, int target) {
+		edgeIndex.putIfAbsent(source, target, edgeCount);
+		return appendEdge(source, target);
+	}
+
+	private int appendEdge(int source, int target) {
+		if (edgeCount == edgeSrc.length) {
+			int capacity = grow(edgeSrc.length);
+			edgeSrc = Arrays.copyOf(edgeSrc, capacity);
+			edgeDst = Arrays.copyOf(edgeDst, capacity);
+			if (weight != null) {
+				weight = Arrays.copyOf(weight, capacity);
+				Arrays.fill(weight, edgeCount, capacity, 1.0);
+			}
+		}
+		edgeSrc[edgeCount] = source;
+		edgeDst[edgeCount] = target;
+		spatialGrid = null;
+		edgeImportance = null;
+		return edgeCount++;
+	}
+
+	// Edges without a weight of their own weigh 1
+	public void setEdgeWeight(int e, double w) {
+		if (weight == null) {
+			weight = new double[edgeSrc.length];
+			Arrays.fill(weight, 1.0);
+		}
+		weight[e] = w;
+	}
+
+	public void setLocation(int v, double px, double py) {
+		x[v] = px;
+		y[v] = py;
+		spatialGrid = null;
+	}
+
+	// To be called after writing the location columns directly
+	public void layoutChanged() {
+		spatialGrid = null;
+	}
+
+	public void showID(int v, boolean b) {
+		showId.set(v, b);
+	}
+
+	public void showAllIDs(boolean b) {
+		showId.set(0, vertexCount, b);
+	}
+
+	public void showVertex(int v, boolean b) {
+		showVertex.set(v, b);
+	}
+
+	public void showAllVertices(boolean b) {
+		showVertex.set(0, vertexCount, b);
+	}
+
+	// Drops the unused tail of the growable arrays once loading is done.
+	public void trim() {
+		if (ids.length != vertexCount) {
+			ids = Arrays.copyOf(ids, vertexCount);
+			x = Arrays.copyOf(x, vertexCount);
+			y = Arrays.copyOf(y, vertexCount);
+		}
+		if (edgeSrc.length != edgeCount) {
+			edgeSrc = Arrays.copyOf(edgeSrc, edgeCount);
+			edgeDst = Arrays.copyOf(edgeDst, edgeCount);
+		}
+		if (weight != null && weight.length != edgeCount) {
+			weight = Arrays.copyOf(weight, edgeCount);
+		}
+	}
+
+	// ACCESSORS
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	// Returns -1 for unknown ids
+	public int indexOf(String id) {
+		int slot = spread(id.hashCode()) & idMask;
+		int v;
+		while ((v = idTable[slot]) >= 0) {
+			if (ids[v].equals(id)) {
+				return v;
+			}
+			slot = (slot + 1) & idMask;
+		}
+		return -1;
+	}
+
+	// Looks up the id held in b[off, off+len) without allocating, as
+	// long as it is plain ASCII.
+	public int indexOf(byte[] b, int off, int len) {
+		int h = 0;
+		for (int ii = off; ii < off + len; ++ii) {
+			if (b[ii] < 0) {
+				// Multi byte UTF-8, hash the decoded id
+				return indexOf(new String(b, off, len, StandardCharsets.UTF_8));
+			}
+			h = 31 * h + b[ii];
+		}
+		int slot = spread(h) & idMask;
+		int v;
+		while ((v = idTable[slot]) >= 0) {
+			if (sameId(ids[v], b, off, len)) {
+				return v;
+			}
+			slot = (slot + 1) & idMask;
+		}
+		return -1;
+	}
+
+	// 64 bit FNV-1a hash of the ids in vertex order, used to check that
+	// a file indexed by vertex (e.g. BinaryCoords) belongs to this graph
+	public long fingerprint() {
+		if (fingerprint == 0) {
+			long h = 0xcbf29ce484222325L;
+			for (int v = 0; v < vertexCount; ++v) {
+				String id = ids[v];
+				for (int ii = 0; ii < id.length(); ++ii) {
+					h = (h ^ id.charAt(ii)) * 0x100000001b3L;
+				}
+				h = (h ^ '\n') * 0x100000001b3L;
+			}
+			fingerprint = h == 0 ? 1 : h;
+		}
+		return fingerprint;
+	}
+
+	// Returns the edge between the two vertices in either direction, or
+	// -1 if there is none.
+	public int findEdge(int v1, int v2) {
+		return edgeIndex.get(v1, v2);
+	}
+
+	public int findEdge(String id1, String id2) {
+		int v1 = indexOf(id1);
+		int v2 = indexOf(id2);
+		if (v1 < 0 || v2 < 0) {
+			return -1;
+		}
+		return edgeIndex.get(v1, v2);
+	}
+
+	public Edge edge(String id1, String id2) {
+		int e = findEdge(id1, id2);
+		return e < 0 ? null : new Edge(this, e);
+	}
+
+	public String id(int v) {
+		return ids[v];
+	}
+
+	public double x(int v) {
+		return x[v];
+	}
+
+	public double y(int v) {
+		return y[v];
+	}
+
+	public int edgeSource(int e) {
+		return edgeSrc[e];
+	}
+
+	public int edgeTarget(int e) {
+		return edgeDst[e];
+	}
+
+	public boolean hasEdgeWeights() {
+		return weight != null;
+	}
+
+	public double edgeWeight(int e) {
+		return weight == null ? 1.0 : weight[e];
+	}
+
+	public boolean doesShowID(int v) {
+		return showId.get(v);
+	}
+
+	public boolean doesShowVertex(int v) {
+		return showVertex.get(v);
+	}
+
+	// The backing columns. Only the first vertexCount() / edgeCount()
+	// entries are valid. Callers must not keep them across loads.
+	public double[] xs() {
+		return x;
+	}
+
+	public double[] ys() {
+		return y;
+	}
+
+	public int[] edgeSources() {
+		return edgeSrc;
+	}
+
+	public int[] edgeTargets() {
+		return edgeDst;
+	}
+
+	// Grid over the current layout, built on first use and dropped when a
+	// location changes. Built once when views ask for it at the same time.
+	public synchronized SpatialGrid spatialGrid() {
+		SpatialGrid g = spatialGrid;
+		if (g == null) {
+			g = new SpatialGrid(this);
+			spatialGrid = g;
+		}
+		return g;
+	}
+
+	// Importance order of the edges, built on first use and dropped when
+	// an edge is added
+	public synchronized EdgeImportance edgeImportance() {
+		EdgeImportance i = edgeImportance;
+		if (i == null) {
+			i = new EdgeImportance(this);
+			edgeImportance = i;
+		}
+		return i;
+	}
+
+	// The hash tables, for GraphSnapshot
+	int[] idTable() {
+		return idTable;
+	}
+
+	EdgeKeyMap edgeIndex() {
+		return edgeIndex;
+	}
+
+	// Views for the code that still works on objects
+	public Vertex vertex(int v) {
+		return new Vertex(this, v);
+	}
+
+	public Edge edge(int e) {
+		return new Edge(this, e);
+	}
+
+	public Vertex vertex(String id) {
+		int v = indexOf(id);
+		return v < 0 ? null : new Vertex(this, v);
+	}
+
+	// Builds a view array. Only meant for the dialogs, the painters must
+	// use the columns.
+	public Vertex[] vertexViews() {
+		Vertex[] views = new Vertex[vertexCount];
+		for (int ii = 0; ii < vertexCount; ++ii) {
+			views[ii] = new Vertex(this, ii);
+		}
+		return views;
+	}
+
+	// ---------------------------------------------------------
+	// HEAP REPORT
+	// ---------------------------------------------------------
+
+	// Rough heap cost of the arrays, the id strings and the id index,
+	// assuming compressed oops (12 byte headers, 4 byte references).
+	public long estimatedHeapBytes() {
+		long bytes = 0;
+		bytes += array(ids.length, 4) + array(x.length, 8) + array(y.length, 8);
+		bytes += array(edgeSrc.length, 4) + array(edgeDst.length, 4);
+		if (weight != null) {
+			bytes += array(weight.length, 8);
+		}
+		bytes += showId.size() / 8 + showVertex.size() / 8;
+		bytes += stringBytes();
+		bytes += array(idTable.length, 4);
+		bytes += edgeIndex.estimatedHeapBytes();
+		return bytes;
+	}
+
+	// What the same graph cost with one Vertex (+ 3x1 Jama Matrix) and
+	// one Edge object per element, kept in Vectors, arrays and the
+	// "id1 id2" string keyed edge map.
+	public long estimatedObjectModelBytes() {
+		long vertex = 32 // Vertex object
+				+ 24 // Matrix object
+				+ array(3, 4) // double[][] rows
+				+ 3 * array(1, 8) // double[1] per row
+				+ 52 + 4 + 4; // id map entry, Vector and array slots
+		long edge = 24 // Edge object
+				+ 32 + 4 + 4 // edge map node, Vector and array slots
+				+ 24 + 16; // "id1 id2" key string (plus its chars)
+		long idChars = stringBytes();
+		long edgeKeyChars = (long) edgeCount * (2 * averageIdLength() + 1);
+		return (long) vertexCount * vertex + idChars + (long) edgeCount * edge
+				+ edgeKeyChars;
+	}
+
+	// The two estimates above, then the heap the JVM reports in use
+	// after a collection (everything loaded so far, not only the graph)
+	public void printMemoryReport() {
+		long now = estimatedHeapBytes();
+		long before = estimatedObjectModelBytes();
+		int e = Math.max(edgeCount, 1);
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long used = runtime.totalMemory() - runtime.freeMemory();
+		System.out.println("\tH E A P");
+		System.out.println("Vertices: " + vertexCount + " Edges: " + edgeCount);
+		System.out.println("Object model (estimated): " + (before >> 20)
+				+ "MB (" + (before / e) + " bytes/edge)");
+		System.out.println("Graph store (estimated):  " + (now >> 20)
+				+ "MB (" + (now / e) + " bytes/edge)");
+		System.out.println("Heap in use (measured):   " + (used >> 20)
+				+ "MB");
+	}
+
+	// PRIVATE METHOD CALLS
+	private void insertId(int hash, int v) {
+		if (vertexCount + 1 > (idMask + 1) / 2) {
+			allocateIdTable((idMask + 1) << 1);
+			for (int ii = 0; ii < vertexCount; ++ii) {
+				placeId(ids[ii].hashCode(), ii);
+			}
+		}
+		placeId(hash, v);
+	}
+
+	private void placeId(int hash, int v) {
+		int slot = spread(hash) & idMask;
+		while (idTable[slot] >= 0) {
+			slot = (slot + 1) & idMask;
+		}
+		idTable[slot] = v;
+	}
+
+	private void allocateIdTable(int capacity) {
+		idTable = new int[capacity];
+		Arrays.fill(idTable, -1);
+		idMask = capacity - 1;
+	}
+
+	private static int spread(int h) {
+		h *= 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean sameId(String id, byte[] b, int off, int len) {
+		if (id.length() != len) {
+			return false;
+		}
+		for (int ii = 0; ii < len; ++ii) {
+			if (id.charAt(ii) != b[off + ii]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int tableSizeFor(int size) {
+		int capacity = Integer.highestOneBit(Math.max(size, 16) - 1) << 1;
+		return Math.min(capacity, 1 << 30);
+	}
+
+	private static int grow(int capacity) {
+		long next = (long) capacity + (capacity >> 1) + 1;
+		return (int) Math.min(next, Integer.MAX_VALUE - 8);
+	}
+
+	private static long array(long length, int elementBytes) {
+		return 16 + length * elementBytes;
+	}
+
+	private long stringBytes() {
+		// String object (24) + byte[] header (16) + latin1 chars
+		return (long) vertexCount * (40 + averageIdLength());
+	}
+
+	private int averageIdLength() {
+		if (vertexCount == 0) {
+			return 0;
+		}
+		long chars = 0;
+		int step = Math.max(1, vertexCount / 1024);
+		int sampled = 0;
+		for (int ii = 0; ii < vertexCount; ii += step) {
+			chars += ids[ii].length();
+			++sampled;
+		}
+		return (int) (chars / sampled);
+	}
+
+}
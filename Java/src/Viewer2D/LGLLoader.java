@@ -0,0 +1,331 @@
+package Viewer2D;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Parallel loader for the .lgl (SHORT) format:
+ * </p>
+ *
+ * <pre>
+ * # id1
+ * id2 [weight]
+ * id3 [weight]
+ * # id4
+ * ...
+ * </pre>
+ * <p>
+ * Every "# id" line starts a self contained block, so the memory mapped file
+ * is cut at block starts ({@link FileChunker#blockAligned}) and the chunks are
+ * parsed on the common fork-join pool. Each chunk interns its ids and edges
+ * locally, in order of first appearance. The merge then walks the chunks in
+ * file order and interns their local ids and edges into one
+ * {@link GraphStore}, which gives exactly the vertex and edge order of the
+ * sequential {@link ViewerIO#loadSHORTFile()} path:
+ * </p>
+ * <ul>
+ * <li>the "# id" vertex is only added with its first edge,</li>
+ * <li>an edge keeps the direction and index of its first appearance,</li>
+ * <li>reading stops at the first empty line.</li>
+ * </ul>
+ */
+public class LGLLoader {
+
+	// Fixed so the result only depends on the file
+	public static final int CHUNK_SIZE = 1 << 22;
+
+	// CONSTRUCTORS
+	public LGLLoader() {
+	}
+
+	public GraphStore load(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long[] bounds = FileChunker.blockAligned(channel, CHUNK_SIZE,
+					(byte) '#');
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			for (int ii = 0; ii + 1 < bounds.length; ++ii) {
+				chunks.add(new Chunk(channel, bounds[ii], bounds[ii + 1]));
+			}
+			ForkJoinTask.invokeAll(chunks);
+			return merge(chunks);
+		} finally {
+			raf.close();
+		}
+	}
+
+	// PRIVATE METHOD CALLS
+	private GraphStore merge(List<Chunk> chunks) throws IOException {
+		int vertices = 0, edges = 0, used = 0;
+		int linesBefore = 0;
+		for (Chunk c : chunks) {
+			if (c.failure != null) {
+				throw c.failure;
+			}
+			if (c.error != null) {
+				throw new IOException("Error at line "
+						+ (linesBefore + c.errorLine) + ": " + c.error);
+			}
+			vertices += c.ids.count;
+			edges += c.edgeCount;
+			++used;
+			if (c.stopped) {
+				// Everything after the first empty line is ignored
+				break;
+			}
+			linesBefore += c.lines;
+		}
+
+		GraphStore graph = new GraphStore(vertices, edges);
+		for (int ii = 0; ii < used; ++ii) {
+			Chunk c = chunks.get(ii);
+			LocalIds ids = c.ids;
+			int[] global = new int[ids.count];
+			for (int v = 0; v < ids.count; ++v) {
+				global[v] = graph.intern(ids.pool, ids.offset[v], ids.length[v]);
+			}
+			for (int e = 0; e < c.edgeCount; ++e) {
+				graph.internEdge(global[c.edgeSrc[e]], global[c.edgeDst[e]]);
+			}
+			chunks.set(ii, null);
+		}
+		graph.trim();
+		return graph;
+	}
+
+	// ---------------------------------------------------------
+	// CHUNK TASK
+	// ---------------------------------------------------------
+
+	private static class Chunk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long start, end;
+
+		final LocalIds ids = new LocalIds();
+		int[] edgeSrc = new int[1024];
+		int[] edgeDst = new int[1024];
+		int edgeCount;
+		private final EdgeKeyMap edgeIndex = new EdgeKeyMap(1024);
+
+		int lines; // newlines seen
+		boolean stopped; // hit an empty line
+		String error;
+		int errorLine;
+		IOException failure;
+
+		// The pending "# id" of the current block
+		private byte[] header = new byte[64];
+		private int headerLength;
+		private boolean headerPending;
+		private int v1 = -1;
+
+		Chunk(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute() {
+			try {
+				int length = (int) (end - start);
+				if (length == 0) {
+					return;
+				}
+				MappedByteBuffer map = channel.map(
+						FileChannel.MapMode.READ_ONLY, start, length);
+				byte[] line = new byte[256];
+				int lineStart = 0;
+				for (int ii = 0; ii <= length; ++ii) {
+					if (ii < length && map.get(ii) != '\n') {
+						continue;
+					}
+					int len = ii - lineStart;
+					if (ii < length || len > 0) {
+						++lines;
+						if (len > line.length) {
+							line = new byte[Math.max(len, line.length * 2)];
+						}
+						FileChunker.copyLine(map, lineStart, line, len);
+						if (!parseLine(line, len)) {
+							return;
+						}
+					}
+					lineStart = ii + 1;
+				}
+			} catch (IOException ex) {
+				failure = ex;
+			}
+		}
+
+		// Returns false once the chunk is done (empty line or error)
+		private boolean parseLine(byte[] b, int len) {
+			int p = skipBlanks(b, 0, len);
+			if (p == len) {
+				stopped = true;
+				return false;
+			}
+			int s = p;
+			p = skipToken(b, p, len);
+			if (p - s == 1 && b[s] == '#') {
+				s = skipBlanks(b, p, len);
+				p = skipToken(b, s, len);
+				if (p == s) {
+					return fail("Missing vertex id after '#'.");
+				}
+				headerLength = p - s;
+				if (headerLength > header.length) {
+					header = new byte[headerLength * 2];
+				}
+				System.arraycopy(b, s, header, 0, headerLength);
+				headerPending = true;
+				return true;
+			}
+			if (headerPending) {
+				v1 = ids.intern(header, 0, headerLength);
+				headerPending = false;
+			} else if (v1 < 0) {
+				return fail("Edge found before the first '#' line.");
+			}
+			int v2 = ids.intern(b, s, p - s);
+			if (edgeIndex.putIfAbsent(v1, v2, edgeCount) < 0) {
+				if (edgeCount == edgeSrc.length) {
+					edgeSrc = Arrays.copyOf(edgeSrc, edgeCount * 2);
+					edgeDst = Arrays.copyOf(edgeDst, edgeCount * 2);
+				}
+				edgeSrc[edgeCount] = v1;
+				edgeDst[edgeCount] = v2;
+				++edgeCount;
+			}
+			return true;
+		}
+
+		private boolean fail(String message) {
+			error = message;
+			errorLine = lines;
+			return false;
+		}
+
+		private static int skipBlanks(byte[] b, int p, int len) {
+			while (p < len && FileChunker.isBlank(b[p])) {
+				++p;
+			}
+			return p;
+		}
+
+		private static int skipToken(byte[] b, int p, int len) {
+			while (p < len && !FileChunker.isBlank(b[p])) {
+				++p;
+			}
+			return p;
+		}
+
+	}
+
+	// ---------------------------------------------------------
+	// CHUNK LOCAL IDS
+	// ---------------------------------------------------------
+
+	// The ids of one chunk in order of first appearance. The bytes are
+	// packed into one pool so no String is made before the merge.
+	private static class LocalIds {
+
+		byte[] pool = new byte[1 << 12];
+		int poolSize;
+		int[] offset = new int[256];
+		int[] length = new int[256];
+		int[] hash = new int[256];
+		int count;
+
+		private int[] table = newTable(512);
+		private int mask = 511;
+
+		int intern(byte[] b, int off, int len) {
+			int h = 0;
+			for (int ii = off; ii < off + len; ++ii) {
+				h = 31 * h + b[ii];
+			}
+			int slot = spread(h) & mask;
+			int v;
+			while ((v = table[slot]) >= 0) {
+				if (hash[v] == h && same(v, b, off, len)) {
+					return v;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return add(b, off, len, h, slot);
+		}
+
+		private int add(byte[] b, int off, int len, int h, int slot) {
+			if (poolSize + len > pool.length) {
+				pool = Arrays.copyOf(pool, Math.max(poolSize + len,
+						pool.length * 2));
+			}
+			System.arraycopy(b, off, pool, poolSize, len);
+			if (count == offset.length) {
+				offset = Arrays.copyOf(offset, count * 2);
+				length = Arrays.copyOf(length, count * 2);
+				hash = Arrays.copyOf(hash, count * 2);
+			}
+			offset[count] = poolSize;
+			length[count] = len;
+			hash[count] = h;
+			poolSize += len;
+			table[slot] = count;
+			if (++count > (mask + 1) / 2) {
+				rehash();
+			}
+			return count - 1;
+		}
+
+		private boolean same(int v, byte[] b, int off, int len) {
+			if (length[v] != len) {
+				return false;
+			}
+			int o = offset[v];
+			for (int ii = 0; ii < len; ++ii) {
+				if (pool[o + ii] != b[off + ii]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void rehash() {
+			table = newTable((mask + 1) * 2);
+			mask = table.length - 1;
+			for (int v = 0; v < count; ++v) {
+				int slot = spread(hash[v]) & mask;
+				while (table[slot] >= 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = v;
+			}
+		}
+
+		private static int[] newTable(int size) {
+			int[] t = new int[size];
+			Arrays.fill(t, -1);
+			return t;
+		}
+
+		private static int spread(int h) {
+			h *= 0x9e3779b9;
+			return h ^ (h >>> 16);
+		}
+
+	}
+
+}
@@ -0,0 +1,539 @@
+package Viewer2D;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Draws one pixel wide lines straight into the <code>int[]</code> of a
+ * TYPE_INT_ARGB or TYPE_INT_RGB {@link BufferedImage}, without going through
+ * the Java2D shape pipeline.
+ * </p>
+ * <p>
+ * Anti-aliased lines walk their major axis one pixel at a time as in Xiaolin
+ * Wu's algorithm, but give every pixel its exact share of a Java2D stroke of
+ * width 1: ends moved to pixel centers, as Java2D normalizes strokes, half a
+ * pixel of square cap at both ends, and 1 / cos of the slope tall across
+ * each column, so diagonals are as heavy as with Java2D. The fast mode draws
+ * aliased lines with Bresenham's algorithm.
+ * </p>
+ * <p>
+ * Lines are kept when they cross the image and drawn in batches of
+ * {@link #BATCH_SIZE}. Each batch is drawn over horizontal bands of the
+ * image on a fork-join pool. Every band goes through the lines in the order
+ * they were added and only writes its own rows, so the result does not
+ * depend on the number of threads.
+ * </p>
+ * <p>
+ * The image may be a tile of a larger picture, see
+ * {@link #begin(BufferedImage, int, int)}. Pixels are computed from the
+ * whole line whatever the tile, so tiles drawn apart put together to the
+ * same picture as drawn at once. Only lines reaching past
+ * {@link #FAR} pixels are first clipped to that distance, the same for every
+ * tile, to keep their math exact.
+ * </p>
+ * <p>
+ * Blending is either source over, as Java2D's default composite, or
+ * additive, where overlapping lines add up to a density map.
+ * </p>
+ */
+public class LineRasterizer {
+
+	public enum Blend {
+		SOURCE_OVER, ADDITIVE
+	}
+
+	// Lines buffered before they are drawn
+	public static final int BATCH_SIZE = 1 << 15;
+	// Rows per band at least, less is not worth a task
+	public static final int MIN_BAND_HEIGHT = 32;
+
+	// Ends further away than this are clipped to it
+	public static final double FAR = 1 << 20;
+
+	// Lines reach this far past their ends, caps and rounding
+	private static final double MARGIN = 2;
+
+	private final int threads;
+	private ForkJoinPool pool;
+	private boolean antialiased = true;
+	private Blend blend = Blend.SOURCE_OVER;
+
+	// Target image, and where its top left pixel is in the picture
+	private int[] pixels;
+	private int width, height;
+	private int originX, originY;
+	private boolean opaque;
+
+	// Batch: x1, y1, x2, y2 per line, and its color
+	private final double[] coords = new double[4 * BATCH_SIZE];
+	private final int[] colors = new int[BATCH_SIZE];
+	private int count;
+
+	// CONSTRUCTORS
+
+	// threads <= 0 uses the common pool, that is every core, 1 draws on
+	// the calling thread
+	public LineRasterizer(int threads) {
+		this.threads = threads;
+	}
+
+	// Draws on a pool owned by the caller, in as many bands as it has
+	// threads
+	public LineRasterizer(ForkJoinPool pool) {
+		this.threads = pool.getParallelism();
+		this.pool = pool;
+	}
+
+	// MUTATORS
+	public void setAntialiased(boolean b) {
+		antialiased = b;
+	}
+
+	public void setBlend(Blend b) {
+		blend = b;
+	}
+
+	// Starts drawing into image, which must be supported
+	public void begin(BufferedImage image) {
+		begin(image, 0, 0);
+	}
+
+	// Same, image being the tile of a larger picture whose top left pixel
+	// is originX, originY. Lines are then added in picture coordinates.
+	public void begin(BufferedImage image, int originX, int originY) {
+		if (!supports(image)) {
+			throw new IllegalArgumentException("Unsupported image type "
+					+ image.getType() + ".");
+		}
+		WritableRaster raster = image.getRaster();
+		pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+		width = image.getWidth();
+		height = image.getHeight();
+		this.originX = originX;
+		this.originY = originY;
+		opaque = image.getType() == BufferedImage.TYPE_INT_RGB;
+		count = 0;
+	}
+
+	// Adds a line in picture coordinates, argb being its non premultiplied
+	// color. Lines missing the image or not made of numbers are dropped.
+	public void add(double x1, double y1, double x2, double y2, int argb) {
+		if ((argb >>> 24) == 0) {
+			return;
+		}
+		if (!(Math.abs(x1) <= FAR && Math.abs(y1) <= FAR
+				&& Math.abs(x2) <= FAR && Math.abs(y2) <= FAR)) {
+			double[] c = clipFar(x1, y1, x2, y2);
+			if (c == null) {
+				return;
+			}
+			x1 = c[0];
+			y1 = c[1];
+			x2 = c[2];
+			y2 = c[3];
+		}
+		// Java2D moves the ends of strokes to pixel centers, integers here
+		x1 = Math.floor(x1);
+		y1 = Math.floor(y1);
+		x2 = Math.floor(x2);
+		y2 = Math.floor(y2);
+		if (Math.max(x1, x2) < originX - MARGIN
+				|| Math.min(x1, x2) > originX + width + MARGIN
+				|| Math.max(y1, y2) < originY - MARGIN
+				|| Math.min(y1, y2) > originY + height + MARGIN) {
+			return;
+		}
+		if (count == BATCH_SIZE) {
+			flush();
+		}
+		int k = 4 * count;
+		coords[k] = x1;
+		coords[k + 1] = y1;
+		coords[k + 2] = x2;
+		coords[k + 3] = y2;
+		colors[count] = argb;
+		++count;
+	}
+
+	// Draws what is buffered and lets go of the image
+	public void finish() {
+		flush();
+		pixels = null;
+	}
+
+	// ACCESSORS
+	public boolean isAntialiased() {
+		return antialiased;
+	}
+
+	public Blend getBlend() {
+		return blend;
+	}
+
+	// True for unshared TYPE_INT_ARGB and TYPE_INT_RGB images, whose rows
+	// follow one another in one int[]
+	public static boolean supports(BufferedImage image) {
+		int type = image.getType();
+		if (type != BufferedImage.TYPE_INT_ARGB
+				&& type != BufferedImage.TYPE_INT_RGB) {
+			return false;
+		}
+		WritableRaster raster = image.getRaster();
+		if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+				|| !(raster.getDataBuffer() instanceof DataBufferInt)) {
+			return false;
+		}
+		SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster
+				.getSampleModel();
+		return sm.getScanlineStride() == image.getWidth()
+				&& raster.getSampleModelTranslateX() == 0
+				&& raster.getSampleModelTranslateY() == 0
+				&& raster.getDataBuffer().getOffset() == 0;
+	}
+
+	// ---------------------------------------------------------
+	// PRIVATE METHOD CALLS
+	// ---------------------------------------------------------
+
+	private void flush() {
+		if (count == 0) {
+			return;
+		}
+		int parallelism = threads <= 0 ? ForkJoinPool.getCommonPoolParallelism()
+				: threads;
+		int bands = Math.max(1, Math.min(parallelism, height / MIN_BAND_HEIGHT));
+		if (bands == 1) {
+			drawBand(originY, originY + height);
+		} else {
+			Band[] tasks = new Band[bands];
+			for (int ii = 0; ii < bands; ++ii) {
+				tasks[ii] = new Band(originY + height * ii / bands, originY
+						+ height * (ii + 1) / bands);
+			}
+			if (pool == null) {
+				pool = threads <= 0 ? ForkJoinPool.commonPool()
+						: new ForkJoinPool(threads);
+			}
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				protected void compute() {
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+		count = 0;
+	}
+
+	// Liang-Barsky clip of a line to FAR around the origin of the picture,
+	// null if it misses or is not made of numbers
+	private static double[] clipFar(double x1, double y1, double x2,
+			double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double t0 = 0, t1 = 1;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x1 + FAR, FAR - x1, y1 + FAR, FAR - y1 };
+		for (int ii = 0; ii < 4; ++ii) {
+			if (p[ii] == 0) {
+				if (!(q[ii] >= 0)) {
+					return null;
+				}
+				continue;
+			}
+			double t = q[ii] / p[ii];
+			if (p[ii] < 0) {
+				t0 = Math.max(t0, t);
+			} else {
+				t1 = Math.min(t1, t);
+			}
+		}
+		if (!(t0 <= t1)) {
+			return null;
+		}
+		return new double[] { x1 + t0 * dx, y1 + t0 * dy, x1 + t1 * dx,
+				y1 + t1 * dy };
+	}
+
+	// Draws the batch on picture rows [top, bottom)
+	private void drawBand(int top, int bottom) {
+		for (int ii = 0; ii < count; ++ii) {
+			int k = 4 * ii;
+			double y1 = coords[k + 1];
+			double y2 = coords[k + 3];
+			if (Math.max(y1, y2) < top - 1 || Math.min(y1, y2) > bottom + 1) {
+				continue;
+			}
+			if (antialiased) {
+				wu(coords[k], y1, coords[k + 2], y2, colors[ii], top, bottom);
+			} else {
+				bresenham(coords[k], y1, coords[k + 2], y2, colors[ii], top,
+						bottom);
+			}
+		}
+	}
+
+	// Xiaolin Wu's line, walking the major axis one column at a time, with
+	// pixel centers taken at integers. Each column gets the exact share of
+	// its rows covered by a stroke of width 1, which is 1 / cos of the
+	// slope tall across the column.
+	private void wu(double x1, double y1, double x2, double y2, int argb,
+			int top, int bottom) {
+		boolean steep = Math.abs(y2 - y1) > Math.abs(x2 - x1);
+		if (steep) {
+			double t = x1;
+			x1 = y1;
+			y1 = t;
+			t = x2;
+			x2 = y2;
+			y2 = t;
+		}
+		if (x1 > x2) {
+			double t = x1;
+			x1 = x2;
+			x2 = t;
+			t = y1;
+			y1 = y2;
+			y2 = t;
+		}
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		double gradient = dx == 0 ? 0 : dy / dx;
+		double half = dx == 0 ? 0.5 : 0.5 * length / dx;
+		// Square caps: half a pixel more along the line at both ends
+		double cap = length == 0 ? 0.5 : 0.5 * dx / length;
+		x1 -= cap;
+		y1 -= cap * gradient;
+		x2 += cap;
+		y2 += cap * gradient;
+
+		long range = columns(Math.floor(x1 + 0.5), Math.floor(x2 + 0.5), y1,
+				gradient, half, steep, top, bottom);
+		int from = (int) (range >> 32);
+		int to = (int) range;
+		int color = argb & 0xFFFFFF;
+		double alpha = argb >>> 24;
+		for (int x = from; x <= to; ++x) {
+			// Part of the column the line covers, and where its center
+			// enters and leaves
+			double left = Math.max(x - 0.5, x1);
+			double right = Math.min(x + 0.5, x2);
+			if (right <= left) {
+				continue;
+			}
+			double c0 = y1 + gradient * (left - x1);
+			double c1 = y1 + gradient * (right - x1);
+			column(x, c0, c1, half, alpha * (right - left), steep, color, top,
+					bottom);
+		}
+	}
+
+	// Plots column x, crossed by a stroke half tall either side of a center
+	// going from c0 to c1. Row r, [r - 0.5, r + 0.5], gets the mean overlap
+	// of the stroke, which is the mean part of the stroke above its lower
+	// edge less that above its upper edge. Only the rows in the image (and
+	// in the band) are computed.
+	private void column(int x, double c0, double c1, double half,
+			double alpha, boolean steep, int color, int top, int bottom) {
+		double lo = Math.min(c0, c1);
+		double hi = Math.max(c0, c1);
+		int r0 = (int) Math.floor(lo - half + 0.5);
+		int r1 = (int) Math.floor(hi + half + 0.5);
+		// Rows are picture columns when steep, the column then being a row
+		// of the band (see columns)
+		int i, step;
+		if (steep) {
+			r0 = Math.max(r0, originX);
+			r1 = Math.min(r1, originX + width - 1);
+			i = (x - originY) * width + r0 - originX;
+			step = 1;
+		} else {
+			if (x < originX || x >= originX + width) {
+				return;
+			}
+			r0 = Math.max(r0, top);
+			r1 = Math.min(r1, bottom - 1);
+			i = (r0 - originY) * width + x - originX;
+			step = width;
+		}
+		double mid = 0.5 * (lo + hi);
+		// Never used when level, the ramps then being plain
+		double inverse = hi > lo ? 0.5 / (hi - lo) : 0;
+		double edge = r0 - 0.5;
+		double above = meanRamp(edge + half, lo, hi, mid, inverse)
+				- meanRamp(edge - half, lo, hi, mid, inverse);
+		for (int r = r0; r <= r1; ++r, i += step) {
+			edge = r + 0.5;
+			double a = meanRamp(edge + half, lo, hi, mid, inverse)
+					- meanRamp(edge - half, lo, hi, mid, inverse);
+			double c = alpha * (a - above);
+			above = a;
+			if (c >= 0.5) {
+				blend(i, color, c);
+			}
+		}
+	}
+
+	// Mean of max(e - c, 0) for c spread evenly over [lo, hi], mid being
+	// their middle and inverse 1 / (2 * (hi - lo))
+	private static double meanRamp(double e, double lo, double hi,
+			double mid, double inverse) {
+		if (e >= hi) {
+			return e - mid;
+		}
+		if (e <= lo) {
+			return 0;
+		}
+		double d = e - lo;
+		return d * d * inverse;
+	}
+
+	// Columns (rows when steep) from first to last, of a line whose
+	// center is at y1 + gradient * (x - first), that may touch the image
+	// on rows [top, bottom). Packed as from << 32 | to, so nothing is
+	// made per line.
+	private long columns(double first, double last, double y1,
+			double gradient, double half, boolean steep, int top, int bottom) {
+		double from = first;
+		double to = last;
+		if (steep) {
+			from = Math.max(from, top);
+			to = Math.min(to, bottom - 1);
+		} else {
+			from = Math.max(from, originX - 1);
+			to = Math.min(to, originX + width);
+			if (gradient != 0) {
+				double a = first + (top - 1 - half - y1) / gradient;
+				double b = first + (bottom + half - y1) / gradient;
+				from = Math.max(from, Math.floor(Math.min(a, b)));
+				to = Math.min(to, Math.ceil(Math.max(a, b)));
+			}
+		}
+		return (long) from << 32 | (int) to & 0xFFFFFFFFL;
+	}
+
+	// Bresenham's line between the pixels holding the ends, each step
+	// taken straight from the ends so a band starts where it needs to
+	private void bresenham(double x1, double y1, double x2, double y2,
+			int argb, int top, int bottom) {
+		boolean steep = Math.abs(y2 - y1) > Math.abs(x2 - x1);
+		if (steep) {
+			double t = x1;
+			x1 = y1;
+			y1 = t;
+			t = x2;
+			x2 = y2;
+			y2 = t;
+		}
+		if (x1 > x2) {
+			double t = x1;
+			x1 = x2;
+			x2 = t;
+			t = y1;
+			y1 = y2;
+			y2 = t;
+		}
+		long dx = (long) (x2 - x1);
+		long dy = (long) (y2 - y1);
+		long range = columns(x1, x2, y1, dx == 0 ? 0 : (double) dy / dx,
+				0.5, steep, top, bottom);
+		int color = argb & 0xFFFFFF;
+		double alpha = argb >>> 24;
+		for (int x = (int) (range >> 32), to = (int) range; x <= to; ++x) {
+			// Midpoint rounding of the exact row
+			long y = (long) y1
+					+ (dx == 0 ? 0 : Math.floorDiv(2 * (x - (long) x1) * dy + dx,
+							2 * dx));
+			if (steep) {
+				plot((int) y, x, color, alpha, top, bottom);
+			} else {
+				plot(x, (int) y, color, alpha, top, bottom);
+			}
+		}
+	}
+
+	// Blends color with alpha (0..255, may be over) into picture pixel x, y
+	// when it lies in the image and on rows [top, bottom)
+	private void plot(int x, int y, int color, double alpha, int top,
+			int bottom) {
+		x -= originX;
+		if (y < top || y >= bottom || x < 0 || x >= width) {
+			return;
+		}
+		blend((y - originY) * width + x, color, alpha);
+	}
+
+	// Blends color with alpha into pixels[i]
+	private void blend(int i, int color, double alpha) {
+		int a = alpha >= 255 ? 255 : (int) (alpha + 0.5);
+		if (a <= 0) {
+			return;
+		}
+		int d = pixels[i];
+		int da = d >>> 24;
+		if (blend == Blend.SOURCE_OVER && (opaque || da == 255)) {
+			// Red and blue side by side in 16 bit lanes, each rounded as
+			// div255 does
+			int ia = 255 - a;
+			int rb = (color & 0xFF00FF) * a + (d & 0xFF00FF) * ia + 0x800080;
+			rb = (rb + (rb >>> 8 & 0xFF00FF)) >>> 8 & 0xFF00FF;
+			int g = (color & 0xFF00) * a + (d & 0xFF00) * ia + 0x8000;
+			g = (g + (g >>> 8 & 0xFF00)) >>> 8 & 0xFF00;
+			pixels[i] = (d & 0xFF000000) | rb | g;
+			return;
+		}
+		int sr = color >> 16 & 0xFF, sg = color >> 8 & 0xFF, sb = color & 0xFF;
+		int dr = d >> 16 & 0xFF, dg = d >> 8 & 0xFF, db = d & 0xFF;
+		if (blend == Blend.ADDITIVE) {
+			int r = Math.min(255, dr + div255(sr * a));
+			int g = Math.min(255, dg + div255(sg * a));
+			int b = Math.min(255, db + div255(sb * a));
+			int oa = opaque ? da : Math.min(255, da + a);
+			pixels[i] = oa << 24 | r << 16 | g << 8 | b;
+			return;
+		}
+		// Non premultiplied destination with its own alpha, all * 255
+		int fd = da * (255 - a);
+		int oa = a * 255 + fd;
+		int half = oa / 2;
+		int r = (sr * a * 255 + dr * fd + half) / oa;
+		int g = (sg * a * 255 + dg * fd + half) / oa;
+		int b = (sb * a * 255 + db * fd + half) / oa;
+		pixels[i] = div255(oa) << 24 | r << 16 | g << 8 | b;
+	}
+
+	// v / 255 rounded, for 0 <= v <= 255 * 255
+	private static int div255(int v) {
+		v += 128;
+		return (v + (v >> 8)) >> 8;
+	}
+
+	// ---------------------------------------------------------
+	// BAND TASK
+	// ---------------------------------------------------------
+
+	private class Band extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int top, bottom;
+
+		Band(int top, int bottom) {
+			this.top = top;
+			this.bottom = bottom;
+		}
+
+		protected void compute() {
+			drawBand(top, bottom);
+		}
+
+	}
+
+}
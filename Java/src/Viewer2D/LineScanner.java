@@ -0,0 +1,295 @@
+package Viewer2D;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Line oriented tokenizer working on raw bytes. Each call to
+ * {@link #readNextLine()} splits the next line in place and records the
+ * offset and length of every token in the internal buffer, so callers can
+ * compare ids, look them up ({@link GraphStore#indexOf(byte[], int, int)}) and
+ * parse numbers without creating a String per token.
+ * </p>
+ * <p>
+ * Delimiters made only of blanks (the default <code>" \t"</code>) separate
+ * tokens by runs, so repeated or leading blanks never produce empty tokens.
+ * Any other delimiter set (e.g. <code>","</code> for the label CSV) ends a
+ * field at every delimiter, keeping empty fields, including a trailing one.
+ * An empty line has no tokens.
+ * </p>
+ * <p>
+ * Replaces the old String/StringTokenizer based FileInputHandler.
+ * </p>
+ */
+public class LineScanner implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_TOKENS = 32;
+	private static final String DELIMETERS = " \t";
+
+	private final InputStream in;
+	private byte[] buffer;
+	private int bufferStart; // first unread byte
+	private int bufferEnd; // end of valid data
+	private boolean eof;
+
+	private int lineStart, lineEnd;
+	private int lineNumber;
+
+	private int[] tokenStart;
+	private int[] tokenEnd;
+	private int tokenCount;
+
+	private boolean[] isDelimeter;
+	private boolean collapse;
+
+	// CONSTRUCTORS
+	public LineScanner(String filename) throws FileNotFoundException {
+		this(new FileInputStream(filename));
+	}
+
+	public LineScanner(String filename, String delimeters)
+			throws FileNotFoundException {
+		this(filename);
+		setDelimeters(delimeters);
+	}
+
+	public LineScanner(InputStream in) {
+		this.in = in;
+		buffer = new byte[BUFFER_SIZE];
+		tokenStart = new int[MAX_TOKENS];
+		tokenEnd = new int[MAX_TOKENS];
+		setDelimeters(DELIMETERS);
+	}
+
+	// MUTATORS
+	public void setDelimeters(String delimeters) {
+		isDelimeter = new boolean[128];
+		collapse = true;
+		for (int ii = 0; ii < delimeters.length(); ++ii) {
+			char c = delimeters.charAt(ii);
+			isDelimeter[c] = true;
+			if (c != ' ' && c != '\t') {
+				collapse = false;
+			}
+		}
+	}
+
+	public boolean readNextLine() throws IOException {
+		if (!nextLine()) {
+			tokenCount = 0;
+			return false;
+		}
+		++lineNumber;
+		performSplit();
+		return true;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	// ACCESSORS
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	// 1 based number of the current line
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	// The buffer the offsets below point into. Its content is only valid
+	// until the next readNextLine().
+	public byte[] buffer() {
+		return buffer;
+	}
+
+	public int tokenOffset(int i) {
+		checkToken(i);
+		return tokenStart[i];
+	}
+
+	public int tokenLength(int i) {
+		checkToken(i);
+		return tokenEnd[i] - tokenStart[i];
+	}
+
+	public boolean tokenEquals(int i, String s) {
+		checkToken(i);
+		int len = tokenEnd[i] - tokenStart[i];
+		if (len != s.length()) {
+			return false;
+		}
+		for (int ii = 0; ii < len; ++ii) {
+			if (buffer[tokenStart[i] + ii] != s.charAt(ii)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean isEmpty(int i) {
+		return tokenLength(i) == 0;
+	}
+
+	// Allocates. Only for the tokens that have to outlive the line.
+	public String getToken(int i) {
+		checkToken(i);
+		return new String(buffer, tokenStart[i], tokenEnd[i] - tokenStart[i],
+				StandardCharsets.UTF_8);
+	}
+
+	public String getLine() {
+		return new String(buffer, lineStart, lineEnd - lineStart,
+				StandardCharsets.UTF_8);
+	}
+
+	// NUMBERS. The is* methods validate, the getTokenAs* methods parse
+	// and throw NumberFormatException on malformed input.
+
+	public boolean isDouble(int i) {
+		checkToken(i);
+		return NumberParser.isDouble(buffer, tokenStart[i], tokenEnd[i]);
+	}
+
+	public double getTokenAsDouble(int i) {
+		checkToken(i);
+		return NumberParser.parseDouble(buffer, tokenStart[i], tokenEnd[i]);
+	}
+
+	public boolean isInt(int i) {
+		return isInt(i, 10);
+	}
+
+	public boolean isInt(int i, int radix) {
+		checkToken(i);
+		return NumberParser.isInt(buffer, tokenStart[i], tokenEnd[i], radix);
+	}
+
+	public int getTokenAsInt(int i) {
+		return getTokenAsInt(i, 10);
+	}
+
+	public int getTokenAsInt(int i, int radix) {
+		checkToken(i);
+		return NumberParser.parseInt(buffer, tokenStart[i], tokenEnd[i], radix);
+	}
+
+	public void print() {
+		System.out.println(getLine());
+	}
+
+	// INTERNAL METHODS
+
+	// Moves lineStart/lineEnd to the next line, refilling the buffer as
+	// needed. The line terminator (\n or \r\n) is not part of the line.
+	private boolean nextLine() throws IOException {
+		int scan = bufferStart;
+		while (true) {
+			for (; scan < bufferEnd; ++scan) {
+				if (buffer[scan] == '\n') {
+					setLine(bufferStart, scan);
+					bufferStart = scan + 1;
+					return true;
+				}
+			}
+			if (eof) {
+				if (bufferStart == bufferEnd) {
+					return false;
+				}
+				// Last line without terminator
+				setLine(bufferStart, bufferEnd);
+				bufferStart = bufferEnd;
+				return true;
+			}
+			scan -= bufferStart;
+			fill();
+		}
+	}
+
+	private void setLine(int start, int end) {
+		if (end > start && buffer[end - 1] == '\r') {
+			--end;
+		}
+		lineStart = start;
+		lineEnd = end;
+	}
+
+	// Keeps the partial line, compacting or growing the buffer, and reads
+	// more bytes behind it.
+	private void fill() throws IOException {
+		int pending = bufferEnd - bufferStart;
+		if (bufferStart > 0) {
+			System.arraycopy(buffer, bufferStart, buffer, 0, pending);
+		} else if (pending == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		bufferStart = 0;
+		bufferEnd = pending;
+		int n = in.read(buffer, bufferEnd, buffer.length - bufferEnd);
+		if (n < 0) {
+			eof = true;
+		} else {
+			bufferEnd += n;
+		}
+	}
+
+	private void performSplit() {
+		tokenCount = 0;
+		if (lineStart == lineEnd) {
+			return;
+		}
+		int p = lineStart;
+		if (collapse) {
+			while (true) {
+				while (p < lineEnd && delimeter(buffer[p])) {
+					++p;
+				}
+				if (p == lineEnd) {
+					return;
+				}
+				int start = p;
+				while (p < lineEnd && !delimeter(buffer[p])) {
+					++p;
+				}
+				addToken(start, p);
+			}
+		}
+		int start = p;
+		for (; p < lineEnd; ++p) {
+			if (delimeter(buffer[p])) {
+				addToken(start, p);
+				start = p + 1;
+			}
+		}
+		addToken(start, lineEnd);
+	}
+
+	private boolean delimeter(byte b) {
+		return b >= 0 && isDelimeter[b];
+	}
+
+	private void addToken(int start, int end) {
+		if (tokenCount == tokenStart.length) {
+			tokenStart = Arrays.copyOf(tokenStart, tokenCount * 2);
+			tokenEnd = Arrays.copyOf(tokenEnd, tokenCount * 2);
+		}
+		tokenStart[tokenCount] = start;
+		tokenEnd[tokenCount] = end;
+		++tokenCount;
+	}
+
+	private void checkToken(int i) {
+		if (i < 0 || i >= tokenCount) {
+			throw new ArrayIndexOutOfBoundsException(i + " >= " + tokenCount);
+		}
+	}
+
+}
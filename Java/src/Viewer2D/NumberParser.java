@@ -0,0 +1,375 @@
+package Viewer2D;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Parses numbers straight out of a byte range, as handed out by
+ * {@link LineScanner}, without building a String first.
+ * </p>
+ * <p>
+ * Decimal doubles are read into a 64 bit significand (the first 19
+ * significant digits) and a power of ten, and converted with:
+ * </p>
+ * <ol>
+ * <li>Clinger's fast path: a significand below 2^53 and |e| &lt;= 22 is one
+ * exact multiplication or division, which is correctly rounded;</li>
+ * <li>the Eisel-Lemire algorithm: the significand times a 128 bit truncated
+ * power of ten, which is correctly rounded unless the product lands too
+ * close to a halfway point, when it gives up;</li>
+ * <li>{@link Double#parseDouble(String)} for what is left: the rare
+ * ambiguous cases, exponents out of range, "NaN", hex floats, surrounding
+ * blanks and malformed input, so the accepted syntax, the results and the
+ * exceptions are those of the JDK.</li>
+ * </ol>
+ * <p>
+ * The first two steps do not allocate. Input the JDK would reject is told
+ * apart by a scan of its syntax before the third, so {@link #isDouble} never
+ * throws nor allocates on it.
+ * </p>
+ */
+public class NumberParser {
+
+	private static final long MAX_EXACT = 1L << 53;
+
+	// Range of the table. Outside of it the value is 0 or infinite for any
+	// 19 digit significand, the slow path sorts that out.
+	private static final int MIN_EXPONENT = -342;
+	private static final int MAX_EXPONENT = 308;
+
+	// 10^e for MIN_EXPONENT <= e <= MAX_EXPONENT, normalized to 128 bits
+	// and rounded down: high word at 2 * (e - MIN_EXPONENT), low word after
+	private static final long[] POWERS_OF_TEN_128 = powersOfTen();
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	// Returned by scanInt for malformed or out of range input
+	private static final long INVALID = Long.MIN_VALUE;
+
+	// Returned by scanDouble for malformed input, a NaN that parsing never
+	// gives (it always returns the canonical one)
+	private static final long INVALID_DOUBLE = 0x7FF0000000000001L;
+
+	private NumberParser() {
+	}
+
+	// ---------------------------------------------------------
+	// STATIC METHOD CALLS
+	// ---------------------------------------------------------
+
+	public static double parseDouble(byte[] b, int start, int end) {
+		long bits = scanDouble(b, start, end);
+		if (bits == INVALID_DOUBLE) {
+			// Throws the exception of the JDK
+			return Double.parseDouble(ascii(b, start, end));
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	public static boolean isDouble(byte[] b, int start, int end) {
+		return scanDouble(b, start, end) != INVALID_DOUBLE;
+	}
+
+	public static int parseInt(byte[] b, int start, int end, int radix) {
+		long value = scanInt(b, start, end, radix);
+		if (value == INVALID) {
+			throw new NumberFormatException("For input string: \""
+					+ ascii(b, start, end) + "\""
+					+ (radix == 10 ? "" : " under radix " + radix));
+		}
+		return (int) value;
+	}
+
+	public static boolean isInt(byte[] b, int start, int end, int radix) {
+		return scanInt(b, start, end, radix) != INVALID;
+	}
+
+	// PRIVATE METHOD CALLS
+
+	// The bits of the double, or INVALID_DOUBLE when Double.parseDouble
+	// would throw
+	private static long scanDouble(byte[] b, int start, int end) {
+		int p = start;
+		boolean negative = false;
+		if (p < end && (b[p] == '-' || b[p] == '+')) {
+			negative = b[p] == '-';
+			++p;
+		}
+		long significand = 0;
+		int digits = 0; // significant digits, leading zeros excluded
+		int exponent = 0;
+		boolean truncated = false; // nonzero digits past the 19th
+		boolean any = false;
+		for (; p < end && isDigit(b[p]); ++p) {
+			any = true;
+			if (digits < 19) {
+				if (significand != 0 || b[p] != '0') {
+					significand = significand * 10 + (b[p] - '0');
+					++digits;
+				}
+			} else {
+				truncated |= b[p] != '0';
+				++exponent;
+			}
+		}
+		if (p < end && b[p] == '.') {
+			++p;
+			for (; p < end && isDigit(b[p]); ++p) {
+				any = true;
+				if (digits < 19) {
+					if (significand != 0 || b[p] != '0') {
+						significand = significand * 10 + (b[p] - '0');
+						++digits;
+					}
+					--exponent;
+				} else {
+					truncated |= b[p] != '0';
+				}
+			}
+		}
+		if (any && p < end && (b[p] == 'e' || b[p] == 'E')) {
+			++p;
+			boolean negativeExponent = false;
+			if (p < end && (b[p] == '-' || b[p] == '+')) {
+				negativeExponent = b[p] == '-';
+				++p;
+			}
+			int e = 0;
+			boolean expDigits = false;
+			for (; p < end && isDigit(b[p]); ++p) {
+				expDigits = true;
+				if (e < 100000) {
+					e = e * 10 + (b[p] - '0');
+				}
+			}
+			if (!expDigits) {
+				return slowPath(b, start, end);
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if (!any || p != end) {
+			return slowPath(b, start, end);
+		}
+		if (significand == 0) {
+			return negative ? Long.MIN_VALUE : 0;
+		}
+		if (!truncated && significand >= 0 && significand <= MAX_EXACT
+				&& exponent >= -22 && exponent <= 22) {
+			double value = significand;
+			if (exponent > 0) {
+				value *= POWERS_OF_TEN[exponent];
+			} else if (exponent < 0) {
+				value /= POWERS_OF_TEN[-exponent];
+			}
+			return Double.doubleToRawLongBits(negative ? -value : value);
+		}
+		long bits = eiselLemire(significand, exponent);
+		if (bits >= 0 && truncated) {
+			// The exact value lies between significand and significand + 1
+			// (19 digits cannot overflow), both must round the same way
+			if (eiselLemire(significand + 1, exponent) != bits) {
+				bits = -1;
+			}
+		}
+		if (bits < 0) {
+			return slowPath(b, start, end);
+		}
+		return negative ? bits | Long.MIN_VALUE : bits;
+	}
+
+	// The bits of the double nearest to w * 10^q for w != 0, or -1 if
+	// that cannot be decided here (see Lemire, "Number Parsing at a
+	// Gigabyte per Second", 2021)
+	private static long eiselLemire(long w, int q) {
+		if (q < MIN_EXPONENT || q > MAX_EXPONENT) {
+			return -1;
+		}
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		int index = 2 * (q - MIN_EXPONENT);
+		// floor(log2(10^q)) + 64 + exponent bias
+		long exp2 = ((217706L * q) >> 16) + 64 + 1023 - lz;
+
+		long hi = unsignedMultiplyHigh(w, POWERS_OF_TEN_128[index]);
+		long lo = w * POWERS_OF_TEN_128[index];
+		if ((hi & 0x1FF) == 0x1FF && Long.compareUnsigned(lo + w, w) < 0) {
+			// The truncation of the power may matter, take its low word in
+			long yHi = unsignedMultiplyHigh(w, POWERS_OF_TEN_128[index + 1]);
+			long yLo = w * POWERS_OF_TEN_128[index + 1];
+			long mergedLo = lo + yHi;
+			long mergedHi = Long.compareUnsigned(mergedLo, lo) < 0 ? hi + 1
+					: hi;
+			if ((mergedHi & 0x1FF) == 0x1FF && mergedLo == -1
+					&& Long.compareUnsigned(yLo + w, w) < 0) {
+				return -1;
+			}
+			hi = mergedHi;
+			lo = mergedLo;
+		}
+
+		// 54 bits, one more than needed for rounding
+		int msb = (int) (hi >>> 63);
+		long mantissa = hi >>> (msb + 9);
+		exp2 -= 1 ^ msb;
+		if (lo == 0 && (hi & 0x1FF) == 0 && (mantissa & 3) == 1) {
+			// Exactly halfway as far as we can tell
+			return -1;
+		}
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if ((mantissa >>> 53) != 0) {
+			mantissa >>>= 1;
+			++exp2;
+		}
+		if (exp2 <= 0 || exp2 >= 0x7FF) {
+			// Subnormal or infinite
+			return -1;
+		}
+		return exp2 << 52 | (mantissa & 0x000FFFFFFFFFFFFFL);
+	}
+
+	private static long unsignedMultiplyHigh(long x, long y) {
+		return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+	}
+
+	private static long[] powersOfTen() {
+		long[] table = new long[2 * (MAX_EXPONENT - MIN_EXPONENT + 1)];
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(
+				BigInteger.ONE);
+		for (int q = MIN_EXPONENT; q <= MAX_EXPONENT; ++q) {
+			BigInteger m;
+			if (q >= 0) {
+				BigInteger p = BigInteger.TEN.pow(q);
+				int shift = p.bitLength() - 128;
+				m = shift >= 0 ? p.shiftRight(shift) : p.shiftLeft(-shift);
+			} else {
+				// 2^k / 10^-q has exactly 128 bits for this k
+				BigInteger p = BigInteger.TEN.pow(-q);
+				m = BigInteger.ONE.shiftLeft(p.bitLength() + 127).divide(p);
+			}
+			int index = 2 * (q - MIN_EXPONENT);
+			table[index] = m.shiftRight(64).longValue();
+			table[index + 1] = m.and(mask).longValue();
+		}
+		return table;
+	}
+
+	// Same syntax and range as Integer.parseInt
+	private static long scanInt(byte[] b, int start, int end, int radix) {
+		int p = start;
+		boolean negative = false;
+		if (p < end && (b[p] == '-' || b[p] == '+')) {
+			negative = b[p] == '-';
+			++p;
+		}
+		if (p == end) {
+			return INVALID;
+		}
+		long value = 0;
+		for (; p < end; ++p) {
+			int d = Character.digit(b[p], radix);
+			if (d < 0) {
+				return INVALID;
+			}
+			value = value * radix + d;
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				return INVALID;
+			}
+		}
+		if (negative) {
+			return -value;
+		}
+		return value > Integer.MAX_VALUE ? INVALID : value;
+	}
+
+	private static long slowPath(byte[] b, int start, int end) {
+		if (!javaSyntax(b, start, end)) {
+			return INVALID_DOUBLE;
+		}
+		return Double.doubleToRawLongBits(Double.parseDouble(ascii(b, start,
+				end)));
+	}
+
+	// Whether Double.parseDouble takes the input: blanks around, a sign,
+	// then NaN, Infinity, or decimal or hex digits with an exponent
+	// (required for hex) and a float or double suffix
+	private static boolean javaSyntax(byte[] b, int start, int end) {
+		while (start < end && (b[start] & 0xFF) <= ' ') {
+			++start;
+		}
+		while (end > start && (b[end - 1] & 0xFF) <= ' ') {
+			--end;
+		}
+		int p = start;
+		if (p < end && (b[p] == '-' || b[p] == '+')) {
+			++p;
+		}
+		if (matches(b, p, end, "NaN") || matches(b, p, end, "Infinity")) {
+			return true;
+		}
+		boolean hex = end - p > 1 && b[p] == '0'
+				&& (b[p + 1] == 'x' || b[p + 1] == 'X');
+		int radix = 10;
+		if (hex) {
+			p += 2;
+			radix = 16;
+		}
+		int digits = 0;
+		for (; p < end && Character.digit(b[p], radix) >= 0; ++p) {
+			++digits;
+		}
+		if (p < end && b[p] == '.') {
+			for (++p; p < end && Character.digit(b[p], radix) >= 0; ++p) {
+				++digits;
+			}
+		}
+		if (digits == 0) {
+			return false;
+		}
+		if (p < end && (hex ? b[p] == 'p' || b[p] == 'P' : b[p] == 'e'
+				|| b[p] == 'E')) {
+			++p;
+			if (p < end && (b[p] == '-' || b[p] == '+')) {
+				++p;
+			}
+			int expStart = p;
+			while (p < end && isDigit(b[p])) {
+				++p;
+			}
+			if (p == expStart) {
+				return false;
+			}
+		} else if (hex) {
+			return false;
+		}
+		if (p < end && (b[p] == 'f' || b[p] == 'F' || b[p] == 'd'
+				|| b[p] == 'D')) {
+			++p;
+		}
+		return p == end;
+	}
+
+	private static boolean matches(byte[] b, int start, int end, String word) {
+		if (end - start != word.length()) {
+			return false;
+		}
+		for (int ii = 0; ii < word.length(); ++ii) {
+			if (b[start + ii] != word.charAt(ii)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String ascii(byte[] b, int start, int end) {
+		return new String(b, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+
+}
@@ -0,0 +1,554 @@
+package Viewer2D;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Streams an 8 bit RGBA PNG out a few rows at a time, so an image never has
+ * to be held whole to be written. Rows are ARGB ints, as in a
+ * {@link java.awt.image.BufferedImage#TYPE_INT_ARGB} image, and come in from
+ * the top.
+ * </p>
+ * <p>
+ * Given a palette, from {@link #palette(BufferedImage)} for instance, it
+ * writes an indexed PNG instead, with as few bits per pixel as the palette
+ * needs and the alpha of the palette in a tRNS chunk when some of it is
+ * not opaque. Every pixel must then be one of the palette colours.
+ * </p>
+ * <p>
+ * Rows are left unfiltered, as ImageIO does: antialiased lines on a flat
+ * background deflate smaller that way than under the adaptive filters.
+ * </p>
+ * <p>
+ * The rows are deflated the way pigz does, in blocks of about
+ * {@link #BLOCK_SIZE} bytes on a fork-join pool. Each block is primed with
+ * the last 32K of the block before it, so it still finds the matches
+ * reaching back into it, and ends on a byte boundary with a sync flush:
+ * the blocks put together in order are one deflate stream, cut into IDAT
+ * chunks. Blocks are written as soon as they and those before them are
+ * done, and only a couple per thread are held at once.
+ * </p>
+ */
+public class PngWriter implements Closeable {
+
+	// Deflate level ImageIO writes PNGs with
+	public static final int DEFAULT_LEVEL = 4;
+	// For previews, a good deal quicker and somewhat larger
+	public static final int FAST_LEVEL = 1;
+	public static final int BLOCK_SIZE = 1 << 18;
+	public static final int MAX_PALETTE = 256;
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G',
+			'\r', '\n', 0x1a, '\n' };
+	private static final int CHUNK_SIZE = 1 << 15;
+	private static final int DICTIONARY_SIZE = 1 << 15;
+	private static final int BYTES_PER_PIXEL = 4;
+	private static final int ADLER_BASE = 65521;
+
+	private final OutputStream out;
+	private final int width;
+	private final int height;
+	private final int level;
+	private final int threads;
+	private ForkJoinPool pool;
+	// Bits per pixel and bytes of a row with its filter type. The palette
+	// and the index of each colour in it, null for RGBA.
+	private final int depth;
+	private final int rowLength;
+	private final int[] palette;
+	private final ColorTable index;
+	private final ChunkStream chunks = new ChunkStream();
+	private int rows;
+
+	// Rows waiting for their block to fill, and the last block sent
+	private final int blockRows;
+	private int[] block;
+	private int blockUsed;
+	private int[] previous;
+	private int previousRows;
+
+	// Blocks being deflated, in order, and the checksum of those written
+	private final ArrayDeque<ForkJoinTask<Deflated>> pending = new ArrayDeque<ForkJoinTask<Deflated>>();
+	private long adler = 1;
+
+	// CONSTRUCTORS
+	public PngWriter(OutputStream out, int width, int height)
+			throws IOException {
+		this(out, width, height, DEFAULT_LEVEL, 1);
+	}
+
+	public PngWriter(OutputStream out, int width, int height, int level,
+			int threads) throws IOException {
+		this(out, width, height, level, threads, null);
+	}
+
+	// Writes the header right away. level is a Deflater level, threads
+	// <= 0 uses the common pool, that is every core. palette, of ARGB
+	// colours, makes an indexed PNG when not null.
+	public PngWriter(OutputStream out, int width, int height, int level,
+			int threads, int[] palette) throws IOException {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Empty image " + width + " x "
+					+ height);
+		}
+		if (palette != null
+				&& (palette.length == 0 || palette.length > MAX_PALETTE)) {
+			throw new IllegalArgumentException("Palette of "
+					+ palette.length + " colours");
+		}
+		this.out = out;
+		this.width = width;
+		this.height = height;
+		this.level = level;
+		this.threads = threads;
+		this.palette = palette == null ? null : palette.clone();
+		if (palette == null) {
+			depth = 8 * BYTES_PER_PIXEL;
+			index = null;
+		} else {
+			depth = palette.length <= 2 ? 1 : palette.length <= 4 ? 2
+					: palette.length <= 16 ? 4 : 8;
+			index = new ColorTable();
+			for (int ii = 0; ii < palette.length; ++ii) {
+				if (index.add(palette[ii]) == ii) {
+					throw new IllegalArgumentException("Colour "
+							+ Integer.toHexString(palette[ii])
+							+ " twice in the palette");
+				}
+			}
+		}
+		long rowBytes = ((long) width * depth + 7) / 8 + 1;
+		rowLength = Math.toIntExact(rowBytes);
+		blockRows = (int) Math.max(1, Math.min(height, BLOCK_SIZE / rowBytes));
+		block = new int[Math.multiplyExact(blockRows, width)];
+
+		out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = (byte) (palette == null ? 8 : depth); // bit depth
+		header[9] = (byte) (palette == null ? 6 : 3); // RGBA or indexed
+		chunk("IHDR", header, header.length);
+		if (palette != null) {
+			writePalette();
+		}
+		chunks.write(zlibHeader(level));
+	}
+
+	// MUTATORS
+
+	// Writes count rows of ARGB pixels, row r starting at
+	// argb[offset + r * stride]
+	public void writeRows(int[] argb, int offset, int stride, int count)
+			throws IOException {
+		if (rows + count > height) {
+			throw new IOException("More than the " + height + " rows of the "
+					+ "image");
+		}
+		for (int r = 0; r < count; ++r) {
+			System.arraycopy(argb, offset + r * stride, block, blockUsed
+					* width, width);
+			++rows;
+			if (++blockUsed == blockRows || rows == height) {
+				send();
+			}
+		}
+	}
+
+	// Writes all of image, of any type, as rows
+	public void writeImage(BufferedImage image) throws IOException {
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB
+				&& image.getRaster().getParent() == null) {
+			int[] argb = ((DataBufferInt) image.getRaster().getDataBuffer())
+					.getData();
+			writeRows(argb, 0, image.getWidth(), image.getHeight());
+			return;
+		}
+		int[] argb = new int[blockRows * width];
+		for (int y = 0; y < image.getHeight(); y += blockRows) {
+			int count = Math.min(blockRows, image.getHeight() - y);
+			image.getRGB(0, y, width, count, argb, 0, width);
+			writeRows(argb, 0, width, count);
+		}
+	}
+
+	// The colours of image, opaque ones last, or null when there are more
+	// than MAX_PALETTE. Gives up at the first colour too many.
+	public static int[] palette(BufferedImage image) {
+		ColorTable colors = new ColorTable();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean direct = image.getType() == BufferedImage.TYPE_INT_ARGB
+				&& image.getRaster().getParent() == null;
+		int[] argb = direct ? ((DataBufferInt) image.getRaster()
+				.getDataBuffer()).getData() : new int[width];
+		for (int y = 0; y < height; ++y) {
+			int i = direct ? y * width : 0;
+			if (!direct) {
+				image.getRGB(0, y, width, 1, argb, 0, width);
+			}
+			int last = ~argb[i];
+			for (int end = i + width; i < end; ++i) {
+				int c = argb[i];
+				if (c != last && colors.add(c) > MAX_PALETTE) {
+					return null;
+				}
+				last = c;
+			}
+		}
+		int[] palette = colors.colors();
+		// Opaque colours sort last, so tRNS stops short of them
+		for (int ii = 0; ii < palette.length; ++ii) {
+			palette[ii] ^= 0x80000000;
+		}
+		Arrays.sort(palette);
+		for (int ii = 0; ii < palette.length; ++ii) {
+			palette[ii] ^= 0x80000000;
+		}
+		return palette;
+	}
+
+	// Ends the image and closes the stream. Fails, still closing it, when
+	// rows are missing.
+	public void close() throws IOException {
+		try {
+			if (rows == height) {
+				while (!pending.isEmpty()) {
+					write(pending.poll().join());
+				}
+				byte[] trailer = new byte[4];
+				putInt(trailer, 0, (int) adler);
+				chunks.write(trailer);
+				chunks.flush();
+				chunk("IEND", new byte[0], 0);
+			}
+			out.flush();
+		} finally {
+			for (ForkJoinTask<Deflated> task : pending) {
+				task.cancel(false);
+			}
+			if (pool != null && pool != ForkJoinPool.commonPool()) {
+				pool.shutdown();
+			}
+			out.close();
+		}
+		if (rows != height) {
+			throw new IOException("Only " + rows + " of the " + height
+					+ " rows of the image were written");
+		}
+	}
+
+	// ---------------------------------------------------------
+	// PRIVATE METHOD CALLS
+	// ---------------------------------------------------------
+
+	// Hands the rows gathered to a block task, then writes the blocks done
+	// in order, waiting for the oldest while too many are out
+	private void send() throws IOException {
+		BlockTask task = new BlockTask(block, blockUsed, previous,
+				previousRows, rows == height);
+		previous = block;
+		previousRows = blockUsed;
+		block = rows == height ? null : new int[block.length];
+		blockUsed = 0;
+		if (threads == 1) {
+			write(task.invoke());
+			return;
+		}
+		if (pool == null) {
+			pool = threads <= 0 ? ForkJoinPool.commonPool()
+					: new ForkJoinPool(threads);
+		}
+		pending.add(pool.submit(task));
+		int limit = 2 * pool.getParallelism();
+		while (!pending.isEmpty()
+				&& (pending.size() > limit || pending.peek().isDone())) {
+			write(pending.poll().join());
+		}
+	}
+
+	private void write(Deflated d) throws IOException {
+		chunks.write(d.bytes, 0, d.length);
+		adler = combineAdler(adler, d.adler, d.rawLength);
+	}
+
+	// PLTE, and tRNS up to the last colour that is not opaque
+	private void writePalette() throws IOException {
+		byte[] rgb = new byte[3 * palette.length];
+		byte[] alpha = new byte[palette.length];
+		int translucent = 0;
+		for (int ii = 0; ii < palette.length; ++ii) {
+			int c = palette[ii];
+			rgb[3 * ii] = (byte) (c >>> 16);
+			rgb[3 * ii + 1] = (byte) (c >>> 8);
+			rgb[3 * ii + 2] = (byte) c;
+			alpha[ii] = (byte) (c >>> 24);
+			if (c >>> 24 != 0xff) {
+				translucent = ii + 1;
+			}
+		}
+		chunk("PLTE", rgb, rgb.length);
+		if (translucent > 0) {
+			chunk("tRNS", alpha, translucent);
+		}
+	}
+
+	// zlib header, with the level hint zlib itself would put
+	private static byte[] zlibHeader(int level) {
+		int cmf = 0x78; // deflate, 32K window
+		int hint = level == Deflater.DEFAULT_COMPRESSION ? 2 : level < 2 ? 0
+				: level < 6 ? 1 : level == 6 ? 2 : 3;
+		int flg = hint << 6;
+		flg += 31 - (cmf << 8 | flg) % 31;
+		return new byte[] { (byte) cmf, (byte) flg };
+	}
+
+	// Adler-32 of two runs of bytes one after the other, from the
+	// checksum of each and the length of the second, as in zlib
+	private static long combineAdler(long adler1, long adler2, long length2) {
+		long rem = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = rem * sum1 % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += (adler1 >>> 16) + (adler2 >>> 16) + ADLER_BASE - rem;
+		sum1 %= ADLER_BASE;
+		sum2 %= ADLER_BASE;
+		return sum2 << 16 | sum1;
+	}
+
+	private void chunk(String type, byte[] data, int length)
+			throws IOException {
+		byte[] bytes = new byte[4];
+		putInt(bytes, 0, length);
+		out.write(bytes);
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		out.write(name);
+		out.write(data, 0, length);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, 0, length);
+		putInt(bytes, 0, (int) crc.getValue());
+		out.write(bytes);
+	}
+
+	private static void putInt(byte[] bytes, int i, int v) {
+		bytes[i] = (byte) (v >>> 24);
+		bytes[i + 1] = (byte) (v >>> 16);
+		bytes[i + 2] = (byte) (v >>> 8);
+		bytes[i + 3] = (byte) v;
+	}
+
+	// ---------------------------------------------------------
+	// BLOCK TASK
+	// ---------------------------------------------------------
+
+	private static class Deflated {
+		byte[] bytes;
+		int length;
+		long adler; // of the bytes before deflating
+		long rawLength;
+	}
+
+	// Turns the rows of a block into PNG rows and deflates them, primed
+	// with the end of the block before
+	private class BlockTask extends RecursiveTask<Deflated> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] pixels;
+		private final int count;
+		private final int[] before;
+		private final int beforeCount;
+		private final boolean last;
+
+		BlockTask(int[] pixels, int count, int[] before, int beforeCount,
+				boolean last) {
+			this.pixels = pixels;
+			this.count = count;
+			this.before = before;
+			this.beforeCount = beforeCount;
+			this.last = last;
+		}
+
+		protected Deflated compute() {
+			Deflated d = new Deflated();
+			byte[] raw = rowBytes(pixels, 0, count);
+			Adler32 sum = new Adler32();
+			sum.update(raw);
+			d.adler = sum.getValue();
+			d.rawLength = raw.length;
+
+			Deflater deflater = new Deflater(level, true);
+			try {
+				if (before != null) {
+					int from = Math.max(0, beforeCount
+							- (DICTIONARY_SIZE + rowLength - 1) / rowLength);
+					byte[] dictionary = rowBytes(before, from, beforeCount);
+					int n = Math.min(DICTIONARY_SIZE, dictionary.length);
+					deflater.setDictionary(dictionary, dictionary.length - n, n);
+				}
+				deflater.setInput(raw);
+				if (last) {
+					deflater.finish();
+				}
+				int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+				byte[] b = new byte[raw.length / 4 + 64];
+				int length = 0;
+				while (true) {
+					if (length == b.length) {
+						b = Arrays.copyOf(b, 2 * b.length);
+					}
+					int space = b.length - length;
+					int n = deflater.deflate(b, length, space, flush);
+					length += n;
+					// A sync flush is through once it leaves room over
+					if (last ? deflater.finished() : n < space) {
+						break;
+					}
+				}
+				d.bytes = b;
+				d.length = length;
+			} finally {
+				deflater.end();
+			}
+			return d;
+		}
+
+		// Rows from to to of pixels as PNG rows, filter type 0 then RGBA
+		// or packed palette indices
+		private byte[] rowBytes(int[] pixels, int from, int to) {
+			byte[] raw = new byte[(to - from) * rowLength];
+			for (int r = from, b = 0; r < to; ++r, b += rowLength) {
+				if (palette == null) {
+					for (int x = 0, j = b + 1; x < width; ++x) {
+						int p = pixels[r * width + x];
+						raw[j] = (byte) (p >>> 16);
+						raw[j + 1] = (byte) (p >>> 8);
+						raw[j + 2] = (byte) p;
+						raw[j + 3] = (byte) (p >>> 24);
+						j += BYTES_PER_PIXEL;
+					}
+					continue;
+				}
+				// Pixels fill the bytes from the high bits down
+				int perByte = 8 / depth;
+				int last = ~pixels[r * width];
+				int k = 0;
+				for (int x = 0, i = r * width; x < width; ++x, ++i) {
+					int p = pixels[i];
+					if (p != last) {
+						k = index.get(p);
+						if (k < 0) {
+							throw new IllegalArgumentException("Colour "
+									+ Integer.toHexString(p)
+									+ " is not in the palette");
+						}
+						last = p;
+					}
+					int shift = 8 - depth * (x % perByte + 1);
+					raw[b + 1 + x / perByte] |= k << shift;
+				}
+			}
+			return raw;
+		}
+
+	}
+
+	// ---------------------------------------------------------
+	// COLOUR TABLE
+	// ---------------------------------------------------------
+
+	// ARGB colours and their index in order of adding, open addressing
+	// over a table four times the largest palette
+	private static class ColorTable {
+
+		private static final int BITS = 10;
+
+		private final int[] keys = new int[1 << BITS];
+		private final short[] values = new short[1 << BITS]; // index + 1
+		private final int[] colors = new int[MAX_PALETTE + 1];
+		private int size;
+
+		// Adds c unless it is there already or MAX_PALETTE + 1 are, returns
+		// how many there are
+		int add(int c) {
+			int slot = slot(c);
+			if (values[slot] == 0 && size < colors.length) {
+				keys[slot] = c;
+				colors[size] = c;
+				values[slot] = (short) ++size;
+			}
+			return size;
+		}
+
+		// Index of c, -1 when it is not there
+		int get(int c) {
+			return values[slot(c)] - 1;
+		}
+
+		int[] colors() {
+			return Arrays.copyOf(colors, size);
+		}
+
+		// Slot of c, or the empty one it would go in
+		private int slot(int c) {
+			int slot = (c * 0x9E3779B9) >>> (32 - BITS);
+			while (values[slot] != 0 && keys[slot] != c) {
+				slot = (slot + 1) & (keys.length - 1);
+			}
+			return slot;
+		}
+
+	}
+
+	// ---------------------------------------------------------
+	// IDAT CHUNKS
+	// ---------------------------------------------------------
+
+	// Cuts the deflated stream into IDAT chunks
+	private class ChunkStream extends OutputStream {
+
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+		private int used;
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = Math.min(len, buffer.length - used);
+				System.arraycopy(b, off, buffer, used, n);
+				used += n;
+				off += n;
+				len -= n;
+				if (used == buffer.length) {
+					flush();
+				}
+			}
+		}
+
+		// Writes what is buffered as a chunk
+		public void flush() throws IOException {
+			if (used > 0) {
+				chunk("IDAT", buffer, used);
+				used = 0;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,175 @@
+package Viewer2D;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Projects the layout of a {@link GraphStore} through a view into screen
+ * coordinate buffers, and gathers the {@link VertexStats} of the projected
+ * points on the way.
+ * </p>
+ * <p>
+ * Both steps run on {@link CoordKernels}, the reduce on SIMD where
+ * available. The vertices are cut into contiguous ranges of
+ * {@link #RANGE_SIZE} which are handed to a fork-join pool, each with its
+ * own stats. The stats are merged pairwise up the same split tree with
+ * {@link VertexStats#integrateVertexStats}. The split only depends on the
+ * vertex count, so the result (down to the order the totals are summed in)
+ * does not depend on the number of threads.
+ * </p>
+ */
+public class Projector {
+
+	// Vertices per task
+	public static final int RANGE_SIZE = 1 << 14;
+
+	private final ForkJoinPool pool;
+	private double[] xs = new double[0];
+	private double[] ys = new double[0];
+	private VertexStats stats = new VertexStats();
+	private int count; // vertices in the last projection
+
+	// CONSTRUCTORS
+
+	// threads <= 0 uses the common pool, that is every core
+	public Projector(int threads) {
+		this(threads <= 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(
+				threads));
+	}
+
+	// Runs on a pool owned by the caller
+	public Projector(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	// MUTATORS
+	public void project(GraphStore graph, Affine2D view) {
+		int n = graph.vertexCount();
+		ensureCapacity(n);
+		Range all = new Range(graph, view, 0, n);
+		pool.invoke(all);
+		stats = all.stats;
+		count = n;
+	}
+
+	// Projects only the listed vertices, the other entries of xs() and
+	// ys() are left as they were. Does not touch the stats.
+	public void project(GraphStore graph, Affine2D view, int[] vertices,
+			int count) {
+		ensureCapacity(graph.vertexCount());
+		for (int k = 0; k < count; ++k) {
+			put(graph, view, vertices[k]);
+		}
+	}
+
+	// Same for both endpoints of the listed edges
+	public void projectEdges(GraphStore graph, Affine2D view, int[] edges,
+			int count) {
+		ensureCapacity(graph.vertexCount());
+		int[] src = graph.edgeSources();
+		int[] dst = graph.edgeTargets();
+		for (int k = 0; k < count; ++k) {
+			put(graph, view, src[edges[k]]);
+			put(graph, view, dst[edges[k]]);
+		}
+	}
+
+	// Same for a single vertex
+	public void project(GraphStore graph, Affine2D view, int v) {
+		ensureCapacity(graph.vertexCount());
+		put(graph, view, v);
+	}
+
+	// ACCESSORS
+
+	// Screen coordinates by vertex index, valid up to the vertex count of
+	// the last projected graph
+	public double[] xs() {
+		return xs;
+	}
+
+	public double[] ys() {
+		return ys;
+	}
+
+	// Stats of the last projection, NaN points are left out
+	public VertexStats stats() {
+		return stats;
+	}
+
+	// True if every point of the last projection is a number within
+	// 0..width x 0..height
+	public boolean allWithin(int width, int height) {
+		if (count == 0) {
+			return true;
+		}
+		if (stats.vertexCount() != count) {
+			return false; // NaN points
+		}
+		return stats.min(0) >= 0 && stats.max(0) <= width
+				&& stats.min(1) >= 0 && stats.max(1) <= height;
+	}
+
+	// Same operations as the transform kernels, so a vertex lands on the
+	// same point either way
+	private void put(GraphStore graph, Affine2D view, int v) {
+		double x = graph.x(v);
+		double y = graph.y(v);
+		xs[v] = view.transformX(x, y);
+		ys[v] = view.transformY(x, y);
+	}
+
+	private void ensureCapacity(int n) {
+		if (xs.length < n) {
+			xs = new double[n];
+			ys = new double[n];
+		}
+	}
+
+	// ---------------------------------------------------------
+	// RANGE TASK
+	// ---------------------------------------------------------
+
+	private class Range extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final GraphStore graph;
+		private final Affine2D view;
+		private final int start, end;
+		VertexStats stats;
+
+		Range(GraphStore graph, Affine2D view, int start, int end) {
+			this.graph = graph;
+			this.view = view;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute() {
+			if (end - start > RANGE_SIZE) {
+				// Split on a range boundary
+				int half = (end - start + RANGE_SIZE - 1) / RANGE_SIZE / 2;
+				int mid = start + half * RANGE_SIZE;
+				Range left = new Range(graph, view, start, mid);
+				Range right = new Range(graph, view, mid, end);
+				invokeAll(left, right);
+				stats = left.stats;
+				if (right.stats.vertexCount() > 0) {
+					stats.integrateVertexStats(right.stats);
+				}
+				return;
+			}
+			CoordKernels kernels = CoordKernels.get();
+			kernels.transform(view, graph.xs(), graph.ys(), xs, ys, start, end
+					- start);
+			double[] reduced = new double[CoordKernels.RESULT_SIZE];
+			kernels.reduce(xs, ys, start, end - start, reduced);
+			stats = new VertexStats();
+			stats.addReduced(reduced);
+		}
+
+	}
+
+}
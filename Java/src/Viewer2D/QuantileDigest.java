@@ -0,0 +1,297 @@
+package Viewer2D;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Mergeable quantile sketch of a stream of doubles (a merging t-digest).
+ * Values are buffered and merged into a sorted list of weighted centroids
+ * whose size is bounded by <code>4 W q (1 - q) / compression</code>, where W
+ * is the total weight and q the quantile of the centroid. So centroids stay
+ * small at the tails, where the fit bounds are taken, and the list has
+ * O(compression) entries whatever the number of values.
+ * </p>
+ * <p>
+ * Buffered values are kept as order preserving long keys and radix sorted
+ * on their top 32 bits (sign, exponent and 20 bits of mantissa), which costs
+ * a fixed few operations per value where a comparison sort mispredicts a
+ * branch on about every compare. Values within about 1e-6 of each other
+ * (relative) may stay out of order, which moves a centroid by no more.
+ * </p>
+ * <p>
+ * The min and max are kept exactly. Merging digests built over chunks of the
+ * data gives a digest of the whole; merged in a fixed order the result is
+ * deterministic.
+ * </p>
+ */
+public class QuantileDigest {
+
+	public static final double DEFAULT_COMPRESSION = 100;
+
+	// Values buffered between merges
+	private static final int BUFFER_SIZE = 4096;
+
+	private final double compression;
+
+	// Sorted centroids
+	private double[] means;
+	private double[] weights;
+	private int size;
+
+	// Unit weight values not merged yet, as sort keys (see key())
+	private final long[] buffer = new long[BUFFER_SIZE];
+	private int buffered;
+	private long[] sortScratch;
+	private double[] sorted;
+
+	private double totalWeight;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	// Merge scratch
+	private double[] mergeMeans = new double[0];
+	private double[] mergeWeights = new double[0];
+
+	// CONSTRUCTORS
+	public QuantileDigest() {
+		this(DEFAULT_COMPRESSION);
+	}
+
+	public QuantileDigest(double compression) {
+		this.compression = compression;
+		int capacity = (int) Math.ceil(compression * 2) + 8;
+		means = new double[capacity];
+		weights = new double[capacity];
+	}
+
+	// MUTATORS
+	public void add(double x) {
+		if (x != x) {
+			return;
+		}
+		if (buffered == buffer.length) {
+			flush();
+		}
+		buffer[buffered++] = key(x);
+		totalWeight += 1;
+		if (x < min) {
+			min = x;
+		}
+		if (x > max) {
+			max = x;
+		}
+	}
+
+	// Adds everything d has seen
+	public void merge(QuantileDigest d) {
+		d.flush();
+		flush();
+		if (d.size == 0) {
+			return;
+		}
+		totalWeight += d.totalWeight;
+		min = Math.min(min, d.min);
+		max = Math.max(max, d.max);
+		compress(d.means, d.weights, d.size);
+	}
+
+	public void clear() {
+		size = 0;
+		buffered = 0;
+		totalWeight = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	// Merges the buffered values into the centroids
+	public void flush() {
+		if (buffered == 0) {
+			return;
+		}
+		int n = buffered;
+		buffered = 0;
+		compress(sortBuffer(n), null, n);
+	}
+
+	// ACCESSORS
+
+	// The value below which a fraction q of the values lie. NaN when
+	// empty, the exact min and max for q <= 0 and q >= 1.
+	public double quantile(double q) {
+		flush();
+		if (size == 0) {
+			return Double.NaN;
+		}
+		if (q <= 0) {
+			return min;
+		}
+		if (q >= 1) {
+			return max;
+		}
+		if (size == 1) {
+			return means[0];
+		}
+		// Centroid ii is taken to sit at the middle of its weight
+		double index = q * totalWeight;
+		double half = weights[0] / 2;
+		if (index < half) {
+			return min + (means[0] - min) * index / half;
+		}
+		double soFar = half;
+		for (int ii = 0; ii + 1 < size; ++ii) {
+			double step = (weights[ii] + weights[ii + 1]) / 2;
+			if (soFar + step > index) {
+				return means[ii] + (index - soFar) / step
+						* (means[ii + 1] - means[ii]);
+			}
+			soFar += step;
+		}
+		double last = weights[size - 1] / 2;
+		double x = means[size - 1] + (index - soFar) / last
+				* (max - means[size - 1]);
+		return Math.min(x, max);
+	}
+
+	public double compression() {
+		return compression;
+	}
+
+	public double totalWeight() {
+		return totalWeight;
+	}
+
+	public double min() {
+		return min;
+	}
+
+	public double max() {
+		return max;
+	}
+
+	// ---------------------------------------------------------
+	// PRIVATE METHOD CALLS
+	// ---------------------------------------------------------
+
+	// Merges the sorted (m, w) run into the centroids, w null meaning
+	// unit weights, then joins neighbours while they stay under the size
+	// bound
+	private void compress(double[] m, double[] w, int n) {
+		int total = size + n;
+		if (mergeMeans.length < total) {
+			mergeMeans = new double[total];
+			mergeWeights = new double[total];
+		}
+		int a = 0, b = 0;
+		for (int k = 0; k < total; ++k) {
+			if (b == n || (a < size && means[a] <= m[b])) {
+				mergeMeans[k] = means[a];
+				mergeWeights[k] = weights[a];
+				++a;
+			} else {
+				mergeMeans[k] = m[b];
+				mergeWeights[k] = w == null ? 1 : w[b];
+				++b;
+			}
+		}
+
+		double all = 0;
+		for (int k = 0; k < total; ++k) {
+			all += mergeWeights[k];
+		}
+		size = 0;
+		double soFar = 0;
+		double mean = mergeMeans[0];
+		double weight = mergeWeights[0];
+		double normalizer = 4 / (compression * all);
+		for (int k = 1; k < total; ++k) {
+			double proposed = weight + mergeWeights[k];
+			// Bound of the merged centroid, in units of weight:
+			// 4 W q (1 - q) / compression at the end closer to the tail
+			double right = soFar + proposed;
+			double limit = Math.min(soFar * (all - soFar), right
+					* (all - right))
+					* normalizer;
+			if (proposed <= limit) {
+				mean += (mergeMeans[k] - mean) * mergeWeights[k] / proposed;
+				weight = proposed;
+			} else {
+				append(mean, weight);
+				soFar += weight;
+				mean = mergeMeans[k];
+				weight = mergeWeights[k];
+			}
+		}
+		append(mean, weight);
+	}
+
+	// The bits of x with the sign bit flipped for positives and every bit
+	// flipped for negatives: unsigned order of the keys is the order of
+	// the values
+	private static long key(double x) {
+		long b = Double.doubleToRawLongBits(x);
+		return b ^ ((b >> 63) | Long.MIN_VALUE);
+	}
+
+	private static double value(long k) {
+		return Double.longBitsToDouble(k ^ ((~k >> 63) | Long.MIN_VALUE));
+	}
+
+	// LSD radix sort of the first n buffered keys on their top 4 bytes,
+	// skipping the bytes all keys share. Returns the values in order.
+	private double[] sortBuffer(int n) {
+		if (sortScratch == null) {
+			sortScratch = new long[BUFFER_SIZE];
+			sorted = new double[BUFFER_SIZE];
+		}
+		int[][] counts = new int[4][256];
+		for (int ii = 0; ii < n; ++ii) {
+			int k = (int) (buffer[ii] >>> 32);
+			++counts[0][k & 0xFF];
+			++counts[1][(k >>> 8) & 0xFF];
+			++counts[2][(k >>> 16) & 0xFF];
+			++counts[3][k >>> 24];
+		}
+		long[] src = buffer;
+		long[] dst = sortScratch;
+		for (int p = 0; p < 4; ++p) {
+			int[] c = counts[p];
+			int shift = 32 + p * 8;
+			if (c[(int) (src[0] >>> shift) & 0xFF] == n) {
+				continue;
+			}
+			int offset = 0;
+			for (int d = 0; d < 256; ++d) {
+				int count = c[d];
+				c[d] = offset;
+				offset += count;
+			}
+			for (int ii = 0; ii < n; ++ii) {
+				long k = src[ii];
+				dst[c[(int) (k >>> shift) & 0xFF]++] = k;
+			}
+			long[] t = src;
+			src = dst;
+			dst = t;
+		}
+		for (int ii = 0; ii < n; ++ii) {
+			sorted[ii] = value(src[ii]);
+		}
+		return sorted;
+	}
+
+	private void append(double mean, double weight) {
+		ensureCapacity(size + 1);
+		means[size] = mean;
+		weights[size] = weight;
+		++size;
+	}
+
+	private void ensureCapacity(int n) {
+		if (means.length < n) {
+			int capacity = Math.max(n, means.length * 2);
+			means = Arrays.copyOf(means, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+		}
+	}
+
+}
@@ -77,15 +77,13 @@ public class SaveResults extends JFrame
     // colors
     public String getColoredEdges()
     {
-	HashMap ce = panel.getEdgeColors();
-	Iterator i = ce.entrySet().iterator();
+	ColorColumn ce = panel.getEdgeColors();
 	String s = new String();
-	while ( i.hasNext() )   
+	for ( int ii = ce.next(0); ii >= 0; ii = ce.next(ii + 1) )
 	    {
-		Map.Entry entry =  (Map.Entry) i.next();
-		Edge e = (Edge) entry.getKey();
+		Edge e = panel.getGraph().edge(ii);
 		s += e.vertex1().id() + " " + e.vertex2().id() + " ";
-		Color c = (Color) entry.getValue();
+		Color c = ce.color(ii);
 		s += (float)c.getRed() / 255.0 + " ";
 		s += (float)c.getGreen() / 255.0 + " ";
 		s += (float)c.getBlue() / 255.0 + "\n";
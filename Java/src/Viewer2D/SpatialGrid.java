@@ -0,0 +1,407 @@
+package Viewer2D;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Uniform grid over the layout of a {@link GraphStore}, so a view zoomed
+ * into part of the layout only visits the vertices and edges near it.
+ * </p>
+ * <p>
+ * Vertices are bucketed by the cell they lie in, edges by every cell their
+ * bounding box covers. Edges covering more than {@link #MAX_EDGE_CELLS}
+ * cells, or with an endpoint that has no location, go to a list that every
+ * query checks. The buckets are stored CSR style, a start offset per cell
+ * into one array of indices, and a row of cells is one contiguous run.
+ * </p>
+ * <p>
+ * The grid spans the 0.1%..99.9% quantiles of a sample of the layout, cells
+ * past it are clamped to the border, so a few far away vertices do not
+ * squeeze the rest into a handful of cells. The bounds are taken when the
+ * grid is created, the buckets are built on the first query: views showing
+ * the whole layout never need them. A grid is only valid for the layout it
+ * was built from, see {@link GraphStore#spatialGrid()}.
+ * </p>
+ * <p>
+ * Queries return candidates in increasing index order, each once, so the
+ * painters draw them in the order a full scan would.
+ * </p>
+ */
+public class SpatialGrid {
+
+	// Located vertices per cell, on average
+	public static final int VERTICES_PER_CELL = 16;
+	public static final int MAX_CELLS = 1 << 22;
+	// Edges with a bounding box over more cells are checked on every query
+	public static final int MAX_EDGE_CELLS = 9;
+	// Queries over more of the grid are left to a full scan
+	public static final double MAX_QUERY_FRACTION = 0.5;
+
+	// Points sampled for the grid bounds
+	private static final int SAMPLE_SIZE = 1 << 16;
+	private static final double BOUNDS_QUANTILE = 0.001;
+
+	private final GraphStore graph;
+	private final int vertexCount, edgeCount;
+
+	// Exact bounds of the located (non NaN) vertices
+	private final double minX, minY, maxX, maxY;
+	private final int located;
+
+	// Grid bounds and cell size
+	private double gridX, gridY, cellScaleX, cellScaleY;
+	private int columns, rows;
+
+	// Buckets, null until the first query
+	private int[] vertexCell; // -1 for vertices without a location
+	private int[] vertexStart, vertexIds;
+	private int[] edgeStart, edgeIds;
+	private int[] longEdges;
+
+	// CONSTRUCTORS
+	public SpatialGrid(GraphStore graph) {
+		this.graph = graph;
+		vertexCount = graph.vertexCount();
+		edgeCount = graph.edgeCount();
+		double[] r = new double[CoordKernels.RESULT_SIZE];
+		CoordKernels.get().reduce(graph.xs(), graph.ys(), 0, vertexCount, r);
+		minX = r[CoordKernels.MIN_X];
+		minY = r[CoordKernels.MIN_Y];
+		maxX = r[CoordKernels.MAX_X];
+		maxY = r[CoordKernels.MAX_Y];
+		located = (int) r[CoordKernels.COUNT];
+		layOutCells();
+	}
+
+	// ACCESSORS
+	public GraphStore getGraph() {
+		return graph;
+	}
+
+	// Vertices with a location
+	public int locatedCount() {
+		return located;
+	}
+
+	// True if every vertex has a location and view puts them all within
+	// 0..width x 0..height
+	public boolean allWithin(Affine2D view, int width, int height) {
+		if (vertexCount == 0) {
+			return true;
+		}
+		if (located != vertexCount) {
+			return false;
+		}
+		double[] b = transformedBounds(view, minX, minY, maxX, maxY);
+		return b[0] >= 0 && b[2] <= width && b[1] >= 0 && b[3] <= height;
+	}
+
+	// Vertices that may lie in [x0,x1] x [y0,y1], null if the range covers
+	// too much of the grid to beat a full scan
+	public synchronized Hits vertices(double x0, double y0, double x1,
+			double y1, Hits hits) {
+		int[] c = cellRange(x0, y0, x1, y1);
+		if (c == null) {
+			return null;
+		}
+		build();
+		hits.clear();
+		for (int cy = c[1]; cy <= c[3]; ++cy) {
+			int row = cy * columns;
+			int from = vertexStart[row + c[0]];
+			hits.add(vertexIds, from, vertexStart[row + c[2] + 1] - from);
+		}
+		hits.sort();
+		return hits;
+	}
+
+	// Edges whose bounding box may meet [x0,x1] x [y0,y1], null as above.
+	// With endpointInside only those with an endpoint in the rectangle.
+	public synchronized Hits edges(double x0, double y0, double x1,
+			double y1, boolean endpointInside, Hits hits) {
+		int[] c = cellRange(x0, y0, x1, y1);
+		if (c == null) {
+			return null;
+		}
+		build();
+		hits.clear();
+		int[] src = graph.edgeSources();
+		int[] dst = graph.edgeTargets();
+		double[] xs = graph.xs();
+		double[] ys = graph.ys();
+		for (int cy = c[1]; cy <= c[3]; ++cy) {
+			for (int cx = c[0]; cx <= c[2]; ++cx) {
+				int cell = cy * columns + cx;
+				for (int k = edgeStart[cell]; k < edgeStart[cell + 1]; ++k) {
+					int e = edgeIds[k];
+					// An edge is in every cell of its box, only take it
+					// from the first one the query meets
+					int a = vertexCell[src[e]];
+					int b = vertexCell[dst[e]];
+					int firstX = Math.max(Math.min(a % columns, b % columns),
+							c[0]);
+					int firstY = Math.max(Math.min(a / columns, b / columns),
+							c[1]);
+					if (firstX == cx
+							&& firstY == cy
+							&& (!endpointInside || inside(xs[src[e]],
+									ys[src[e]], x0, y0, x1, y1) || inside(
+									xs[dst[e]], ys[dst[e]], x0, y0, x1, y1))) {
+						hits.add(e);
+					}
+				}
+			}
+		}
+		for (int e : longEdges) {
+			int a = src[e];
+			int b = dst[e];
+			if (endpointInside) {
+				if (!inside(xs[a], ys[a], x0, y0, x1, y1)
+						&& !inside(xs[b], ys[b], x0, y0, x1, y1)) {
+					continue;
+				}
+			} else if (Math.max(xs[a], xs[b]) < x0
+					|| Math.min(xs[a], xs[b]) > x1
+					|| Math.max(ys[a], ys[b]) < y0
+					|| Math.min(ys[a], ys[b]) > y1) {
+				// NaN fails every compare, such edges are always taken
+				continue;
+			}
+			hits.add(e);
+		}
+		hits.sort();
+		return hits;
+	}
+
+	// Bounds {minX, minY, maxX, maxY} of the rectangle [x0,x1] x [y0,y1]
+	// once through t
+	public static double[] transformedBounds(Affine2D t, double x0,
+			double y0, double x1, double y1) {
+		double[] xs = { t.transformX(x0, y0), t.transformX(x1, y0),
+				t.transformX(x0, y1), t.transformX(x1, y1) };
+		double[] ys = { t.transformY(x0, y0), t.transformY(x1, y0),
+				t.transformY(x0, y1), t.transformY(x1, y1) };
+		double[] b = { xs[0], ys[0], xs[0], ys[0] };
+		for (int ii = 1; ii < 4; ++ii) {
+			b[0] = Math.min(b[0], xs[ii]);
+			b[1] = Math.min(b[1], ys[ii]);
+			b[2] = Math.max(b[2], xs[ii]);
+			b[3] = Math.max(b[3], ys[ii]);
+		}
+		return b;
+	}
+
+	// ---------------------------------------------------------
+	// PRIVATE METHOD CALLS
+	// ---------------------------------------------------------
+
+	private static boolean inside(double x, double y, double x0, double y0,
+			double x1, double y1) {
+		return x0 <= x && x <= x1 && y0 <= y && y <= y1;
+	}
+
+	// Grid bounds from a sample of the layout, and the cell count
+	private void layOutCells() {
+		columns = rows = 1;
+		gridX = gridY = 0;
+		cellScaleX = cellScaleY = 0;
+		if (located == 0) {
+			return;
+		}
+		double[] xs = graph.xs();
+		double[] ys = graph.ys();
+		int step = Math.max(1, vertexCount / SAMPLE_SIZE);
+		double[] sx = new double[vertexCount / step + 1];
+		double[] sy = new double[sx.length];
+		int n = 0;
+		for (int v = 0; v < vertexCount; v += step) {
+			if (xs[v] == xs[v] && ys[v] == ys[v]) {
+				sx[n] = xs[v];
+				sy[n] = ys[v];
+				++n;
+			}
+		}
+		double x0 = minX, y0 = minY, x1 = maxX, y1 = maxY;
+		if (n > 0) {
+			Arrays.sort(sx, 0, n);
+			Arrays.sort(sy, 0, n);
+			int lo = (int) (BOUNDS_QUANTILE * (n - 1));
+			int hi = n - 1 - lo;
+			x0 = sx[lo];
+			y0 = sy[lo];
+			x1 = sx[hi];
+			y1 = sy[hi];
+		}
+		double w = x1 - x0;
+		double h = y1 - y0;
+		int cells = Math.max(1, Math.min(MAX_CELLS, located
+				/ VERTICES_PER_CELL));
+		if (w > 0 && h > 0) {
+			columns = (int) Math.max(1, Math.min(cells,
+					Math.round(Math.sqrt(cells * w / h))));
+			rows = Math.max(1, cells / columns);
+		} else if (w > 0) {
+			columns = cells;
+		} else if (h > 0) {
+			rows = cells;
+		}
+		gridX = x0;
+		gridY = y0;
+		cellScaleX = w > 0 ? columns / w : 0;
+		cellScaleY = h > 0 ? rows / h : 0;
+	}
+
+	// {cx0, cy0, cx1, cy1}, null if the range is too large or not a number
+	private int[] cellRange(double x0, double y0, double x1, double y1) {
+		if (!(x0 <= x1 && y0 <= y1)) {
+			return null;
+		}
+		int[] c = { column(x0), row(y0), column(x1), row(y1) };
+		long count = (long) (c[2] - c[0] + 1) * (c[3] - c[1] + 1);
+		if (count > MAX_QUERY_FRACTION * columns * rows) {
+			return null;
+		}
+		return c;
+	}
+
+	private int column(double x) {
+		double c = Math.floor((x - gridX) * cellScaleX);
+		return (int) Math.max(0, Math.min(columns - 1, c));
+	}
+
+	private int row(double y) {
+		double r = Math.floor((y - gridY) * cellScaleY);
+		return (int) Math.max(0, Math.min(rows - 1, r));
+	}
+
+	private void build() {
+		if (vertexCell != null) {
+			return;
+		}
+		double[] xs = graph.xs();
+		double[] ys = graph.ys();
+		int cells = columns * rows;
+
+		vertexCell = new int[vertexCount];
+		vertexStart = new int[cells + 1];
+		for (int v = 0; v < vertexCount; ++v) {
+			if (xs[v] == xs[v] && ys[v] == ys[v]) {
+				int cell = row(ys[v]) * columns + column(xs[v]);
+				vertexCell[v] = cell;
+				++vertexStart[cell + 1];
+			} else {
+				vertexCell[v] = -1;
+			}
+		}
+		for (int ii = 0; ii < cells; ++ii) {
+			vertexStart[ii + 1] += vertexStart[ii];
+		}
+		vertexIds = new int[located];
+		int[] fill = Arrays.copyOf(vertexStart, cells);
+		for (int v = 0; v < vertexCount; ++v) {
+			if (vertexCell[v] >= 0) {
+				vertexIds[fill[vertexCell[v]]++] = v;
+			}
+		}
+
+		// Edges: count per cell, then fill
+		int[] src = graph.edgeSources();
+		int[] dst = graph.edgeTargets();
+		edgeStart = new int[cells + 1];
+		int longCount = 0;
+		for (int e = 0; e < edgeCount; ++e) {
+			int a = vertexCell[src[e]];
+			int b = vertexCell[dst[e]];
+			if (a < 0 || b < 0 || boxCells(a, b) > MAX_EDGE_CELLS) {
+				++longCount;
+				continue;
+			}
+			int cx0 = Math.min(a % columns, b % columns);
+			int cx1 = Math.max(a % columns, b % columns);
+			int cy0 = Math.min(a / columns, b / columns);
+			int cy1 = Math.max(a / columns, b / columns);
+			for (int cy = cy0; cy <= cy1; ++cy) {
+				for (int cx = cx0; cx <= cx1; ++cx) {
+					++edgeStart[cy * columns + cx + 1];
+				}
+			}
+		}
+		for (int ii = 0; ii < cells; ++ii) {
+			edgeStart[ii + 1] += edgeStart[ii];
+		}
+		edgeIds = new int[edgeStart[cells]];
+		longEdges = new int[longCount];
+		fill = Arrays.copyOf(edgeStart, cells);
+		longCount = 0;
+		for (int e = 0; e < edgeCount; ++e) {
+			int a = vertexCell[src[e]];
+			int b = vertexCell[dst[e]];
+			if (a < 0 || b < 0 || boxCells(a, b) > MAX_EDGE_CELLS) {
+				longEdges[longCount++] = e;
+				continue;
+			}
+			int cx0 = Math.min(a % columns, b % columns);
+			int cx1 = Math.max(a % columns, b % columns);
+			int cy0 = Math.min(a / columns, b / columns);
+			int cy1 = Math.max(a / columns, b / columns);
+			for (int cy = cy0; cy <= cy1; ++cy) {
+				for (int cx = cx0; cx <= cx1; ++cx) {
+					edgeIds[fill[cy * columns + cx]++] = e;
+				}
+			}
+		}
+	}
+
+	// Cells in the box of two cells
+	private int boxCells(int a, int b) {
+		int w = Math.abs(a % columns - b % columns) + 1;
+		int h = Math.abs(a / columns - b / columns) + 1;
+		return w * h;
+	}
+
+	// ---------------------------------------------------------
+	// HITS
+	// ---------------------------------------------------------
+
+	// Growable list of indices returned by the queries, meant to be
+	// reused from frame to frame
+	public static class Hits {
+
+		private int[] ids = new int[256];
+		private int size;
+
+		public int size() {
+			return size;
+		}
+
+		// Only the first size() entries are valid
+		public int[] ids() {
+			return ids;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		void add(int id) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		void add(int[] from, int offset, int len) {
+			if (size + len > ids.length) {
+				ids = Arrays.copyOf(ids, Math.max(size + len, ids.length * 2));
+			}
+			System.arraycopy(from, offset, ids, size, len);
+			size += len;
+		}
+
+		void sort() {
+			Arrays.sort(ids, 0, size);
+		}
+
+	}
+
+}
@@ -0,0 +1,178 @@
+package Viewer2D;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Paints the window of an {@link EdgesPanel} into an image tile by tile on a
+ * fork-join pool. The layout is projected once, then every tile is painted
+ * into its own image, from what the spatial grid finds under it, with its
+ * own clip and line rasterizer, and copied into place.
+ * </p>
+ * <p>
+ * A tile paints everything reaching into it with the coordinates of the
+ * whole image, so edges, vertices and labels across tile borders come out
+ * the same as painted at once: the tiles put together give the image
+ * {@link EdgesPanel#paintImage(BufferedImage)} would.
+ * </p>
+ * <p>
+ * {@link #write(EdgesPanel, PngWriter)} goes down the window a band of tiles
+ * at a time instead, handing each band to the PNG writer before painting
+ * the next, so only a band of the image is ever held.
+ * </p>
+ */
+public class TiledRenderer {
+
+	public static final int DEFAULT_TILE_SIZE = 512;
+
+	private final int threads;
+	private ForkJoinPool pool;
+	private int tileSize = DEFAULT_TILE_SIZE;
+
+	// CONSTRUCTORS
+
+	// threads <= 0 uses the common pool, that is every core
+	public TiledRenderer(int threads) {
+		this.threads = threads;
+	}
+
+	// Paints on a pool owned by the caller
+	public TiledRenderer(ForkJoinPool pool) {
+		this.threads = pool.getParallelism();
+		this.pool = pool;
+	}
+
+	// MUTATORS
+	public void setTileSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Tile size must be > 0.");
+		}
+		tileSize = size;
+	}
+
+	// Paints the window of panel into image, which has its size. Images the
+	// line rasterizer cannot draw into, or no larger than a tile, are
+	// painted at once.
+	public void render(EdgesPanel panel, BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (panel.getGraph() == null || !LineRasterizer.supports(image)
+				|| (width <= tileSize && height <= tileSize)) {
+			panel.paintImage(image);
+			return;
+		}
+		panel.prepareTiles();
+		paintBand(panel, image, 0, height);
+	}
+
+	// Paints the window of panel into png, which has its size, a band of
+	// tileSize rows at a time
+	public void write(EdgesPanel panel, PngWriter png) throws IOException {
+		int width = panel.windowSizeX();
+		int height = panel.windowSizeY();
+		BufferedImage band = new BufferedImage(width, Math.min(tileSize,
+				height), BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) band.getRaster().getDataBuffer())
+				.getData();
+		boolean empty = panel.getGraph() == null;
+		if (!empty) {
+			panel.prepareTiles();
+		}
+		for (int top = 0; top < height; top += tileSize) {
+			int rows = Math.min(tileSize, height - top);
+			if (empty) {
+				panel.paintImage(band);
+			} else {
+				paintBand(panel, band, top, rows);
+			}
+			png.writeRows(pixels, 0, width, rows);
+		}
+	}
+
+	// ACCESSORS
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	// ---------------------------------------------------------
+	// PRIVATE METHOD CALLS
+	// ---------------------------------------------------------
+
+	// Paints the rows of the window from top into the first rows of image
+	private void paintBand(EdgesPanel panel, BufferedImage image, int top,
+			int rows) {
+		int width = image.getWidth();
+		List<Tile> tasks = new ArrayList<Tile>();
+		for (int y = top; y < top + rows; y += tileSize) {
+			for (int x = 0; x < width; x += tileSize) {
+				tasks.add(new Tile(panel, image, top, x, y, Math.min(tileSize,
+						width - x), Math.min(tileSize, top + rows - y)));
+			}
+		}
+		pool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			protected void compute() {
+				ForkJoinTask.invokeAll(tasks);
+			}
+		});
+	}
+
+	private ForkJoinPool pool() {
+		if (pool == null) {
+			pool = threads <= 0 ? ForkJoinPool.commonPool()
+					: new ForkJoinPool(threads);
+		}
+		return pool;
+	}
+
+	// ---------------------------------------------------------
+	// TILE TASK
+	// ---------------------------------------------------------
+
+	private static class Tile extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final EdgesPanel panel;
+		private final BufferedImage image;
+		private final int top; // row of the window at the top of image
+		private final int x, y, width, height;
+
+		Tile(EdgesPanel panel, BufferedImage image, int top, int x, int y,
+				int width, int height) {
+			this.panel = panel;
+			this.image = image;
+			this.top = top;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		protected void compute() {
+			BufferedImage tile = new BufferedImage(width, height, image
+					.getType());
+			panel.paintTile(tile, x, y);
+			// Tiles do not overlap, each copies its own part of the array
+			int[] from = ((DataBufferInt) tile.getRaster().getDataBuffer())
+					.getData();
+			int[] to = ((DataBufferInt) image.getRaster().getDataBuffer())
+					.getData();
+			int stride = image.getWidth();
+			for (int row = 0; row < height; ++row) {
+				System.arraycopy(from, row * width, to, (y - top + row)
+						* stride + x, width);
+			}
+		}
+
+	}
+
+}
@@ -19,23 +19,17 @@
 
 package Viewer2D;
 
-import Jama.*;
-import Jama.Matrix.*;
 import java.lang.Math;
 
-// This class is used to generate matrices that
-// perform a given transformation/maninpulation.
-// It is basically a wrapper for a matrix with a
-// palatable interface
 
 public class Transformer {
 
-    private Matrix transformation;
+    private Affine2D transformation;
     private static final int DIMENSION = Edge.DIMENSION;
 
     public Transformer()
     {
-	transformation = Matrix.identity( DIMENSION+1 , DIMENSION+1 );
+	transformation = Affine2D.IDENTITY;
     }
 
     public Transformer( Transformer t )
@@ -50,17 +44,15 @@ public class Transformer {
     // Symmetric move
     public void move( double distance )
     {
-	for ( int ii=0; ii<DIMENSION; ++ii ) {
-	    transformation.set(ii,DIMENSION,distance);
-	}
+	move( new double[] { distance , distance } );
     }
 
     // Move by a given array amount
     public void move( double[] distances )
     {
-	for ( int ii=0; ii<DIMENSION; ++ii ) {
-	    transformation.set(ii,DIMENSION,distances[ii]);
-	}
+	Affine2D t = transformation;
+	transformation = new Affine2D( t.m00() , t.m01() , distances[0] ,
+				       t.m10() , t.m11() , distances[1] );
     }
 
     // This will make the transformer one that will scale
@@ -68,38 +60,36 @@ public class Transformer {
     // Symmetric scaling
     public void scale( double s )
     {
-	for ( int ii=0; ii<DIMENSION; ++ii ) {
-	    transformation.set(ii,ii,s);
-	}
+	scale( new double[] { s , s } );
     }
 
     // Scale by a given array amount
     public void scale( double[] s )
     {
-	for ( int ii=0; ii<DIMENSION; ++ii ) {
-	    transformation.set(ii,ii,s[ii]);
-	}
+	Affine2D t = transformation;
+	transformation = new Affine2D( s[0] , t.m01() , t.m02() ,
+				       t.m10() , s[1] , t.m12() );
     }
 
     // This will make the transformer one that will rotate
     // points by a certain amount.
     public void rotate_cc_2D( double theta )
     {
-	transformation.set(0,0,Math.cos(theta));
-	transformation.set(0,1,-Math.sin(theta));
-	transformation.set(1,0,Math.sin(theta));
-	transformation.set(1,1,-Math.cos(theta));
+	Affine2D t = transformation;
+	transformation = new Affine2D( Math.cos(theta) , -Math.sin(theta) ,
+				       t.m02() , Math.sin(theta) ,
+				       -Math.cos(theta) , t.m12() );
     }
 
     // ACCESSORS
 
-    // This will return the resulting transformation matrix
-    public Matrix getTransformationMatrix() { return transformation; }
+    // This will return the resulting transformation
+    public Affine2D getTransformation() { return transformation; }
 
     public void print()
     {
-	System.out.println("Transformation Matrix: ");
-	transformation.print(5,3);
+	System.out.println("Transformation: ");
+	transformation.print();
     }
 
 }
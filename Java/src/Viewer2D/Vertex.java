@@ -21,49 +21,29 @@ package Viewer2D;
 
 import Jama.Matrix;
 
+// A lightweight view of one vertex of a GraphStore. The location and the
+// flags live in the store; this only carries the index.
 public class Vertex implements Comparable {
-	private Matrix locus;
-	private int ndx;
-	private String name;
-	// private String descrip;
-	private boolean showid;
+	private final GraphStore graph;
+	private final int ndx;
 	private boolean showDescrip;
-	private boolean showV;
 	static public final int DIMENSION = 2;
 
 	// CONSTRUCTORS
-	public Vertex() {
-		ndx = 0;
-		locus = new Matrix(DIMENSION + 1, 1);
-		name = null;
-		matrixPrep();
-		varPrep();
-	}
-
-	public Vertex(Matrix m, int ndx, String n) {
+	public Vertex(GraphStore graph, int ndx) {
+		this.graph = graph;
 		this.ndx = ndx;
-		locus = m;
-		name = n;
-		varPrep();
+		showDescrip = false;
 	}
 
 	// MUTATORS
-	public void index(int i) {
-		ndx = i;
-	}
-
 	public void location(Matrix l) {
-		locus = l;
-		matrixPrep();
-	}
-
-	public void id(String s) {
-		name = s;
+		graph.setLocation(ndx, l.get(0, 0), l.get(1, 0));
 	}
 
 	// public void description( String s ) { descrip = s; }
 	public void showID(boolean b) {
-		showid = b;
+		graph.showID(ndx, b);
 	}
 
 	public void showDescription(boolean b) {
@@ -71,33 +51,51 @@ public class Vertex implements Comparable {
 	}
 
 	public void showVertex(boolean b) {
-		showV = b;
+		graph.showVertex(ndx, b);
 	}
 
 	// ACCESSORS
 	public void print() {
-		System.out.println("Vertex " + name + " with index " + ndx);
+		System.out.println("Vertex " + id() + " with index " + ndx);
 		// System.out.println("Descrip: " + descrip );
-		System.out
-				.println("ShowID: " + showid + " ShowDescrip: " + showDescrip);
-		locus.print(5, 3);
+		System.out.println("ShowID: " + doesShowID() + " ShowDescrip: "
+				+ showDescrip);
+		location().print(5, 3);
 	}
 
 	public int index() {
 		return ndx;
 	}
 
+	public GraphStore graph() {
+		return graph;
+	}
+
+	// Returns a copy of the location in homogeneous coordinates.
+	// Changing it does not move the vertex, use location(Matrix).
 	public Matrix location() {
+		Matrix locus = new Matrix(DIMENSION + 1, 1);
+		locus.set(0, 0, graph.x(ndx));
+		locus.set(1, 0, graph.y(ndx));
+		locus.set(DIMENSION, 0, 1);
 		return locus;
 	}
 
+	public double x() {
+		return graph.x(ndx);
+	}
+
+	public double y() {
+		return graph.y(ndx);
+	}
+
 	public String id() {
-		return name;
+		return graph.id(ndx);
 	}
 
 	// public String description() { return descrip; }
 	public boolean doesShowID() {
-		return showid;
+		return graph.doesShowID(ndx);
 	}
 
 	public boolean doesShowDescription() {
@@ -105,7 +103,7 @@ public class Vertex implements Comparable {
 	}
 
 	public boolean doesShowVertex() {
-		return showV;
+		return graph.doesShowVertex(ndx);
 	}
 
 	// ---------------------------------------------------------
@@ -116,27 +114,20 @@ public class Vertex implements Comparable {
 		if (!(o instanceof Vertex))
 			return false;
 		Vertex v = (Vertex) o;
-		return name.equals(v.id());
+		return graph == v.graph && ndx == v.ndx;
+	}
+
+	// The index: maps keyed by vertices iterate in hash layout order, so
+	// what is drawn from one (the labels) is kept in a LinkedHashMap
+	public int hashCode() {
+		return ndx;
 	}
 
 	public int compareTo(Object o) {
 		Vertex v = (Vertex) o;
-		return name.compareTo(v.id());
+		return id().compareTo(v.id());
 	}
 
 	// ---------------------------------------------------------
 
-	// PRIVATE METHOD CALLS
-	private void matrixPrep() {
-		// This just makes sure the matrices
-		// are transformation ready
-		locus.set(DIMENSION, 0, 1);
-	}
-
-	private void varPrep() {
-		showid = false;
-		showDescrip = false;
-		showV = false;
-	}
-
 }
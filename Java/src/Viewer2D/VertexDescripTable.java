@@ -265,7 +265,8 @@ public class VertexDescripTable extends JFrame {
 	if ( format == SHOW_ALL ) {
 	    return true;
 	} else if ( format == SHOW_ONLY_VISIBLE ) {
-	    return panel.visible( v.location() );
+	    return panel.visible( panel.screenX( v.index() ) ,
+				  panel.screenY( v.index() ) );
 	} else if ( format == SHOW_ONLY_HIGHLIGHTED ) {
 	    return v.doesShowID();
 	}
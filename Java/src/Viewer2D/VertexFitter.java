@@ -19,58 +19,46 @@
 
 package Viewer2D;
 
-import Jama.*;
-//import Jama.Matrix.*;
-
 // This class is used to fit vertexes to a window
 
 public class VertexFitter {
 
-    private Matrix manipulation;
-    //private static final int DIMENSION = Vertex.DIMENSION;
+    private Affine2D manipulation;
 
     // CONSTRUCTORS
-    VertexFitter( Matrix m ) { manipulation = m; }
+    VertexFitter( Affine2D m ) { manipulation = m; }
 
     VertexFitter() { manipulation = null; }
 
     VertexFitter( Transformer t ) {
-	manipulation = t.getTransformationMatrix();
+	manipulation = t.getTransformation();
     }
 
     // ACCESSORS
 
     public void print() {
-	System.out.println("VertexFitter Manip. Matrix:");
-	manipulation.print(5,3);
+	System.out.println("VertexFitter Manipulation:");
+	manipulation.print();
     }
 
-    public Matrix getManipulationMatrix() { return manipulation; }
+    public Affine2D getManipulation() { return manipulation; }
 
     // MUTATOR
 
-    // This method returns a new vertex fitted given the transformations
-    public void fitVertex( Vertex original )
-    {
-	original.location( manipulation.times( original.location() ) );
-    }
-
-  
-
     // This is to add a manipulation to the 'to do' list.
     // This permits composite manipulations
     public void addManipulation( Transformer manip )
     {
 	if ( manipulation == null ) {
-	    manipulation = manip.getTransformationMatrix();
+	    manipulation = manip.getTransformation();
 	} else {
 	    manipulation = 
-		manipulation.times( manip.getTransformationMatrix() );
+		manipulation.times( manip.getTransformation() );
 	}
     }
 
     public void clear() { manipulation = null; }
 
-    public void setManipulationMatrix( Matrix m ) { manipulation = m; }
+    public void setManipulation( Affine2D m ) { manipulation = m; }
 
 }
@@ -19,41 +19,94 @@
 
 package Viewer2D;
 
-import Jama.Matrix;
+import java.util.Arrays;
 
 public class VertexStats {
 
-	private Matrix mins, maxs;
-	private Matrix totals; // Used to determine avg
+	// Points in homogeneous coordinates, the last element is 1
+	private double[] mins, maxs;
+	private double[] totals; // Used to determine avg
 	private int vertexCtr;
+	private QuantileDigest[] digests; // one per axis, null if not kept
 	private static final int DIMENSION = Vertex.DIMENSION;
 
 	// CONSTRUCTORS
 	public VertexStats() {
-		mins = new Matrix(DIMENSION + 1, 1, Double.MAX_VALUE);
-		maxs = new Matrix(DIMENSION + 1, 1, Double.MIN_VALUE);
-		totals = new Matrix(DIMENSION + 1, 1, 0.0);
+		this(false);
+	}
+
+	// With quantiles, every point also goes to a QuantileDigest per axis
+	// so fits can use robust bounds (see quantile())
+	public VertexStats(boolean quantiles) {
+		mins = new double[DIMENSION + 1];
+		maxs = new double[DIMENSION + 1];
+		totals = new double[DIMENSION + 1];
+		Arrays.fill(mins, Double.MAX_VALUE);
+		Arrays.fill(maxs, Double.MIN_VALUE);
 		vertexCtr = 0;
+		if (quantiles) {
+			digests = new QuantileDigest[DIMENSION];
+			for (int d = 0; d < DIMENSION; ++d) {
+				digests[d] = new QuantileDigest();
+			}
+		}
 		prepMatrices();
 	}
 
 	// MUTATORS
 	public void addStatsOfVertex(Vertex v) {
-		minMaxTest(v.location());
-		totals.plusEquals(v.location());
+		addStats(v.x(), v.y());
+	}
+
+	// Same as addStatsOfVertex but straight from the coordinate columns
+	public void addStats(double x, double y) {
+		minMaxTest(0, x);
+		minMaxTest(1, y);
+		totals[0] += x;
+		totals[1] += y;
 		++vertexCtr;
+		if (digests != null) {
+			digests[0].add(x);
+			digests[1].add(y);
+		}
+	}
+
+	// Adds a CoordKernels.reduce() result, the same as adding its points
+	// one by one
+	public void addReduced(double[] r) {
+		if (r[CoordKernels.COUNT] == 0) {
+			return;
+		}
+		minMaxTest(0, r[CoordKernels.MIN_X]);
+		minMaxTest(1, r[CoordKernels.MIN_Y]);
+		minMaxTest(0, r[CoordKernels.MAX_X]);
+		minMaxTest(1, r[CoordKernels.MAX_Y]);
+		totals[0] += r[CoordKernels.SUM_X];
+		totals[1] += r[CoordKernels.SUM_Y];
+		vertexCtr += (int) r[CoordKernels.COUNT];
+	}
+
+	// Both bounds are tested, so the first value also counts as a max and
+	// stats merged from chunks match a single pass over the same values
+	private void minMaxTest(int d, double value) {
+		if (value < mins[d]) {
+			mins[d] = value;
+		}
+		if (value > maxs[d]) {
+			maxs[d] = value;
+		}
 	}
 
 	// This tests both mins and maxs
-	public void minMaxTest(Matrix m) {
+	public void minMaxTest(double[] m) {
 		// Only the firt DIMENSION elements need to be
 		// checked. The last element is just a place
 		// holder
 		for (int ii = 0; ii < DIMENSION; ++ii) {
-			if (m.get(ii, 0) < mins.get(ii, 0)) {
-				mins.set(ii, 0, m.get(ii, 0));
-			} else if (m.get(ii, 0) > maxs.get(ii, 0)) {
-				maxs.set(ii, 0, m.get(ii, 0));
+			if (m[ii] < mins[ii]) {
+				mins[ii] = m[ii];
+			} else if (m[ii] > maxs[ii]) {
+				maxs[ii] = m[ii];
 			}
 		}
 	}
@@ -66,64 +119,118 @@ public class VertexStats {
 	public void integrateVertexStats(VertexStats es) {
 		minMaxTest(es.mins);
 		minMaxTest(es.maxs);
-		totals.plusEquals(es.totals);
+		for (int ii = 0; ii < totals.length; ++ii) {
+			totals[ii] += es.totals[ii];
+		}
 		vertexCtr += es.vertexCtr;
+		if (digests != null && es.digests != null) {
+			for (int d = 0; d < DIMENSION; ++d) {
+				digests[d].merge(es.digests[d]);
+			}
+		}
 	}
 
 	// Reset to defaults, set ready for next read.
 	public void clear() {
 		vertexCtr = 0;
 		for (int ii = 0; ii < DIMENSION; ++ii) {
-			mins.set(ii, 0, Double.MAX_VALUE);
-			maxs.set(ii, 0, Double.MIN_VALUE);
-			totals.set(ii, 0, 0.0);
+			mins[ii] = Double.MAX_VALUE;
+			maxs[ii] = Double.MIN_VALUE;
+			totals[ii] = 0.0;
+			if (digests != null) {
+				digests[ii].clear();
+			}
 		}
 	}
 
-	public void setMin(Matrix m) {
+	public void setMin(double[] m) {
 		mins = m;
 	}
 
-	public void setMax(Matrix m) {
+	public void setMax(double[] m) {
 		maxs = m;
 	}
 
+	// Sets everything at once
+	public void set(double[] min, double[] max, double[] total, int count) {
+		for (int ii = 0; ii < DIMENSION; ++ii) {
+			mins[ii] = min[ii];
+			maxs[ii] = max[ii];
+			totals[ii] = total[ii];
+		}
+		vertexCtr = count;
+	}
+
+	// Merges what the digests have buffered. After that the quantiles are
+	// only read, and the stats can be shared across threads.
+	public void flush() {
+		if (digests == null) {
+			return;
+		}
+		for (QuantileDigest q : digests) {
+			q.flush();
+		}
+	}
+
 	// ACCESSORS
 	public double vertexCount() {
 		return vertexCtr;
 	}
 
 	public double min(int d) {
-		return mins.get(d, 0);
+		return mins[d];
 	}
 
 	public double max(int d) {
-		return maxs.get(d, 0);
+		return maxs[d];
 	}
 
 	public double span(int d) {
-		return maxs.get(d, 0) - mins.get(d, 0);
+		return maxs[d] - mins[d];
 	}
 
-	public boolean fitsSpan(Matrix m) {
+	public boolean fitsSpan(double[] m) {
 		for (int ii = 0; ii < DIMENSION; ++ii) {
-			if (m.get(ii, 0) < mins.get(ii, 0)
-					|| maxs.get(ii, 0) < m.get(ii, 0)) {
+			if (m[ii] < mins[ii] || maxs[ii] < m[ii]) {
 				return false;
 			}
 		}
 		return true;
 	}
 
+	public boolean hasQuantiles() {
+		return digests != null;
+	}
+
+	// Value below which a fraction q of the points lie on axis d,
+	// estimated from the digest. Without one only min (q <= 0) and max
+	// (q >= 1) are known.
+	public double quantile(int d, double q) {
+		if (digests == null) {
+			if (q <= 0) {
+				return mins[d];
+			}
+			if (q >= 1) {
+				return maxs[d];
+			}
+			throw new IllegalStateException("No quantiles kept.");
+		}
+		return digests[d].quantile(q);
+	}
+
+	public double total(int d) {
+		return totals[d];
+	}
+
 	public double avg(int d) {
-		return (totals.get(d, 0) / (double) vertexCtr);
+		return (totals[d] / (double) vertexCtr);
 	}
 
-	public Matrix mins() {
+	public double[] mins() {
 		return mins;
 	}
 
-	public Matrix maxs() {
+	public double[] maxs() {
 		return maxs;
 	}
 
@@ -133,7 +240,7 @@ public class VertexStats {
 		String [] names = {"x:","y:","z:"};
 		for (int i = 0; i < DIMENSION;i++)
 		{
-			System.out.print(names[i]+" "+mins.get(i,0));
+			System.out.print(names[i]+" "+mins[i]);
 			
 			if (i!=DIMENSION)
 			System.out.print(" ");
@@ -144,7 +251,7 @@ public class VertexStats {
 		//maxs.print(4, 2);
 		for (int i = 0; i < DIMENSION;i++)
 		{
-			System.out.print(names[i]+" "+maxs.get(i,0));
+			System.out.print(names[i]+" "+maxs[i]);
 			
 			if (i!=DIMENSION)
 			System.out.print(" ");
@@ -155,13 +262,23 @@ public class VertexStats {
 		for (int ii = 0; ii < DIMENSION; ++ii) {
 			System.out.println("Avg " + names[ii] + " " + avg(ii));
 		}
+		if (digests != null && vertexCtr > 0) {
+			double[] qs = { .001, .01, .5, .99, .999 };
+			for (int ii = 0; ii < DIMENSION; ++ii) {
+				System.out.print("Quantiles " + names[ii]);
+				for (double q : qs) {
+					System.out.print(" " + (q * 100) + "%: " + quantile(ii, q));
+				}
+				System.out.println();
+			}
+		}
 		System.out.println("Vertices Counted: " + vertexCtr);
 	}
 
 	// PRIVATE METHOD CALLS
 	private void prepMatrices() {
-		mins.set(DIMENSION, 0, 1);
-		maxs.set(DIMENSION, 0, 1);
+		mins[DIMENSION] = 1;
+		maxs[DIMENSION] = 1;
 	}
 
 }
@@ -0,0 +1,220 @@
+package Viewer2D;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * <p>
+ * Past and named views of the layout. A view is the world to screen
+ * {@link Affine2D} of {@link FormatVertex}, the zoom level is its
+ * {@link Affine2D#scale()}. Going back to a view swaps that transform in,
+ * the layout is never touched.
+ * </p>
+ * <p>
+ * Undo and redo are two stacks, every step is O(1). The undo stack keeps
+ * the last {@link #getDepth()} views, the oldest one is dropped past that.
+ * </p>
+ * <p>
+ * Bookmarks keep the window size they were taken with and are saved one per
+ * line:
+ * </p>
+ *
+ * <pre>
+ * # name width height m00 m01 m02 m10 m11 m12
+ * asia 800 600 0.0123 0.0 12.5 0.0 0.0123 -3.25
+ * </pre>
+ */
+public class ViewHistory {
+
+	public static final int DEFAULT_DEPTH = 256;
+
+	private final int depth;
+	private final ArrayDeque<Affine2D> undo = new ArrayDeque<Affine2D>();
+	private final ArrayDeque<Affine2D> redo = new ArrayDeque<Affine2D>();
+	private final LinkedHashMap<String, Bookmark> bookmarks = new LinkedHashMap<String, Bookmark>();
+
+	// CONSTRUCTORS
+	public ViewHistory() {
+		this(DEFAULT_DEPTH);
+	}
+
+	public ViewHistory(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("History depth must be > 0.");
+		}
+		this.depth = depth;
+	}
+
+	// MUTATORS
+
+	// The view is about to be left for a new one
+	public void record(Affine2D previous) {
+		if (undo.size() == depth) {
+			undo.removeFirst();
+		}
+		undo.addLast(previous);
+		redo.clear();
+	}
+
+	// The view to go back to from current, null if there is none
+	public Affine2D undo(Affine2D current) {
+		Affine2D v = undo.pollLast();
+		if (v != null) {
+			redo.addLast(current);
+		}
+		return v;
+	}
+
+	// The view undone last, null if there is none
+	public Affine2D redo(Affine2D current) {
+		Affine2D v = redo.pollLast();
+		if (v != null) {
+			undo.addLast(current);
+		}
+		return v;
+	}
+
+	// Forgets undo and redo, for a new layout. Bookmarks are kept.
+	public void clear() {
+		undo.clear();
+		redo.clear();
+	}
+
+	public void addBookmark(String name, Affine2D view, int width, int height) {
+		if (name.isEmpty() || name.matches(".*\\s.*")) {
+			throw new IllegalArgumentException("Bad bookmark name \"" + name
+					+ "\": must be one word.");
+		}
+		bookmarks.put(name, new Bookmark(name, view, width, height));
+	}
+
+	public void removeBookmark(String name) {
+		bookmarks.remove(name);
+	}
+
+	// Adds the bookmarks of f, replacing the ones with the same name
+	public void readBookmarks(File f) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(f));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				++lineNumber;
+				line = line.trim();
+				if (line.isEmpty() || line.charAt(0) == '#') {
+					continue;
+				}
+				String[] t = line.split("\\s+");
+				if (t.length != 9) {
+					throw new IOException("Error at line " + lineNumber
+							+ ": Found " + t.length
+							+ " values while 9 are expected.");
+				}
+				try {
+					double[] m = new double[6];
+					for (int ii = 0; ii < m.length; ++ii) {
+						m[ii] = Double.parseDouble(t[3 + ii]);
+					}
+					addBookmark(t[0], new Affine2D(m[0], m[1], m[2], m[3],
+							m[4], m[5]), Integer.parseInt(t[1]),
+							Integer.parseInt(t[2]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Error at line " + lineNumber + ": "
+							+ e.getMessage());
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public void writeBookmarks(File f) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(f));
+		try {
+			out.println("# name width height m00 m01 m02 m10 m11 m12");
+			for (Bookmark b : bookmarks.values()) {
+				Affine2D v = b.view;
+				out.println(b.name + " " + b.width + " " + b.height + " "
+						+ v.m00() + " " + v.m01() + " " + v.m02() + " "
+						+ v.m10() + " " + v.m11() + " " + v.m12());
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Could not write " + f.getPath());
+		}
+	}
+
+	// ACCESSORS
+	public int getDepth() {
+		return depth;
+	}
+
+	public boolean canUndo() {
+		return !undo.isEmpty();
+	}
+
+	public boolean canRedo() {
+		return !redo.isEmpty();
+	}
+
+	// Null if there is no such bookmark
+	public Bookmark getBookmark(String name) {
+		return bookmarks.get(name);
+	}
+
+	// In the order they were added
+	public List<String> bookmarkNames() {
+		return new ArrayList<String>(bookmarks.keySet());
+	}
+
+	// ---------------------------------------------------------
+	// BOOKMARK
+	// ---------------------------------------------------------
+
+	public static class Bookmark {
+
+		private final String name;
+		private final Affine2D view;
+		private final int width, height;
+
+		Bookmark(String name, Affine2D view, int width, int height) {
+			this.name = name;
+			this.view = view;
+			this.width = width;
+			this.height = height;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		// The view as taken, for its own window size
+		public Affine2D getView() {
+			return view;
+		}
+
+		// The view for a window of the given size: the bookmarked window is
+		// scaled to fit and centered, so the same region shows
+		public Affine2D viewFor(int w, int h) {
+			if (w == width && h == height) {
+				return view;
+			}
+			double s = Math.min((double) w / width, (double) h / height);
+			return Affine2D.translation((w - s * width) / 2,
+					(h - s * height) / 2).times(Affine2D.scaling(s, s))
+					.times(view);
+		}
+
+	}
+
+}
@@ -88,6 +88,7 @@ public class Viewer2D {
 		{
 			System.out.println("Loading edges file " + pa.edgeFile);
 			frame.loadSHORTFile(new File(pa.edgeFile));
+			frame.setFitQuantiles(pa.fitQuantiles[0], pa.fitQuantiles[1]);
 			//if (args.length > 1) 
 			{
 				System.out.println("Loading coords file " + pa.coordFiles.get(0));
@@ -98,6 +99,9 @@ public class Viewer2D {
 				File colorfile = new File(pa.edgeColorFile);
 				frame.loadEdgeColorFile(colorfile);
 			}
+			if (!pa.bookmarkFile.isEmpty()) {
+				frame.loadBookmarks(new File(pa.bookmarkFile));
+			}
 		}
 	}
 
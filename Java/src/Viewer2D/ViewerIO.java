@@ -20,23 +20,16 @@
 package Viewer2D;
 
 import java.awt.Color;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.text.MessageFormat;
 import java.util.HashMap;
-import java.util.Vector;
-
-import Jama.Matrix;
+import java.util.LinkedHashMap;
 
 /**
  * <p>
  * This handles all the IO for the viewer. That just basically means reading in
- * the file, checking for the format, and returning an array of edge objects.
+ * the file, checking for the format, and filling a {@link GraphStore}.
  * The dimension is set by the DIMENSION variable in Edge.java
  * </p>
  * <b>SESS - 2014.05.11:</b>
@@ -44,43 +37,77 @@ import Jama.Matrix;
  * <li>Cleanup code a little bit.</li>
  * <li>{@link #loadVertexCoords(File)} reimplemented. Now validates the
  * structure of each line.</li>
+ * <li>{@link #loadVertexCoords(File)} now goes through the parallel
+ * {@link CoordsLoader}.</li>
  * </ul>
  */
 public class ViewerIO {
 
 	private File file;
-	private Edge[] edges;
-	private Vertex[] vertices;
+	private GraphStore graph;
 	// private final String DELIMETER = " \t";
-	private FileInputHandler fileio;
+	private LineScanner fileio;
 	private VertexStats stats;
 	private static final int DIMENSION = Vertex.DIMENSION;
+	private static final String STDIN = "-";
 	// private int index, lineNumber;
-	private int tokenCounter;
-	private HashMap vertexIdMap;
-	private HashMap edgeIdMap;
-	private HashMap edgeColorMap;
-	private HashMap vertexColorMap;
-	private Vector edgesV;
-	private Vector verticesV;
-	private HashMap labelMap;
+	private ColorColumn edgeColorMap;
+	private ColorColumn vertexColorMap;
+	private HashMap<Vertex, Label> labelMap;
 	private double scalingLabel;
 	private double customMinX;
 	private double customMaxX;
 	private double customMinY;
 	private double customMaxY;
+	private boolean parallelLoading;
+	private boolean snapshotCaching;
+	private boolean snapshotWriting;
 
 	public ViewerIO(File filename) throws FileNotFoundException, IOException {
 		file = filename;
-		edgeColorMap = new HashMap();
-		vertexColorMap = new HashMap();
-		labelMap = new HashMap();
+		edgeColorMap = new ColorColumn();
+		vertexColorMap = new ColorColumn();
+		// Labels are drawn in the order of the label file
+		labelMap = new LinkedHashMap<Vertex, Label>();
 		scalingLabel = 1;
 		customMinX = 0;
 		customMaxX = 0;
 		customMinY = 0;
 		customMaxY = 0;
+		parallelLoading = true;
+		snapshotCaching = !"off".equals(System.getProperty("lgl.snapshot"));
+		snapshotWriting = snapshotCaching;
+
+	}
+
+	// Switches loadSHORTFile between the parallel LGLLoader and the
+	// sequential reader. Both give the same vertex and edge order.
+	public void setParallelLoading(boolean b) {
+		parallelLoading = b;
+	}
+
+	public boolean isParallelLoading() {
+		return parallelLoading;
+	}
 
+	// Reuse the binary .lglb snapshot next to the .lgl file when it is
+	// current, see GraphSnapshot. -Dlgl.snapshot=off turns it off.
+	public void setSnapshotCaching(boolean b) {
+		snapshotCaching = b;
+	}
+
+	public boolean isSnapshotCaching() {
+		return snapshotCaching;
+	}
+
+	// Write the snapshot next to the .lgl file after parsing it, skipped
+	// without a word where it cannot be written
+	public void setSnapshotWriting(boolean b) {
+		snapshotWriting = b;
+	}
+
+	public boolean isSnapshotWriting() {
+		return snapshotWriting;
 	}
 
 	public void setLabelScale(double scale)
@@ -118,106 +145,165 @@ public class ViewerIO {
 		return this.scalingLabel;
 	}
 
-	// TODO: SESS - should move to "utils" class?
-	static boolean isDouble(String value) {
+	// The stats are settled once loaded, see VertexStats.flush()
+	public void loadVertexCoords(File f) throws IOException {
+		if (stats == null) {
+			stats = new VertexStats(true); // quantiles for the fit
+		} else {
+			stats.clear();
+		}
 		try {
-			Double.parseDouble(value);
-			return true;
-		} catch (NumberFormatException ex) {
-			return false;
+			readVertexCoords(f);
+		} finally {
+			stats.flush();
 		}
 	}
 
-	// TODO: SESS - should move to "utils" class?
-	static double[] toDouble(String[] values, int startIndex, int endIndex) {
-		double[] result = new double[endIndex - startIndex + 1];
-		for (int i = startIndex; i <= endIndex; i++) {
-			result[i - startIndex] = Double.parseDouble(values[i]);
+	private void readVertexCoords(File f) throws IOException {
+		if (BinaryCoords.isBinary(f)) {
+			BinaryCoords.load(f, graph, stats);
+			return;
 		}
-		return result;
+		new CoordsLoader(graph).load(f, stats, null);
 	}
 
-	public void loadVertexCoords(File f) throws IOException {
-		InputStream in = new FileInputStream(f);
-		if (stats == null) {
-			stats = new VertexStats();
+	public void loadSHORTFile() throws IOException, FileNotFoundException {
+		this.loadSHORTFile(file);
+	}
+
+	public void loadSHORTFile(File f) throws IOException, FileNotFoundException {
+		GraphSnapshot s = snapshotCaching ? new GraphSnapshot(file) : null;
+		if (s != null) {
+			graph = s.read();
+			if (graph != null) {
+				return;
+			}
+		}
+		if (parallelLoading) {
+			graph = new LGLLoader().load(file);
 		} else {
-			stats.clear();
+			readSHORTFile();
 		}
+		if (s != null && snapshotWriting) {
+			s.write(graph);
+		}
+	}
+
+	// The sequential reader
+	private void readSHORTFile() throws IOException {
+		graph = new GraphStore();
+		fileio = new LineScanner(file.getAbsolutePath());
 		try {
-			BufferedReader reader = new BufferedReader(
-					new InputStreamReader(in));
-			try {
-				String line;
-				int currLine = 0;
-				while ((line = reader.readLine()) != null) {
-					currLine++;
-					line = line.trim();
-					if (line.isEmpty() || line.startsWith("#")) {
-						continue;
-					}
-					String[] parts = line.split("\\s+");
-					int expected = DIMENSION + 1;
-					if (parts.length != expected) {
-						throw new IOException(
-								MessageFormat
-										.format("Error at line {0}: Found {1} values while {2} are expected.",
-												currLine, parts.length,
-												expected));
-					}
-					for (int i = 1; i <= DIMENSION; i++) {
-						if (!isDouble(parts[i])) {
-							throw new IOException(
-									MessageFormat
-											.format("Error at line {0}: Column {1} must be a double value.",
-													currLine, i));
-						}
-					}
-					String id = parts[0];
-					Vertex vertex = (Vertex) vertexIdMap.get(id);
-					if (vertex == null) {
-						// TODO: We should at least log that no vertex found
-						continue;
-					}
-					double[] values = toDouble(parts, 1, DIMENSION);
-					Matrix location = vertex.location();
-					for (int i = 0; i < values.length; i++) {
-						location.set(i, 0, values[i]);
-					}
-					// TODO: SESS - I don't know why so lets keep this code...
-					if (location.get(0, 0) < 10000) {
-						stats.addStatsOfVertex(vertex);
+			// The "# id" vertex is only added once its first edge is read,
+			// so keep its bytes around until then
+			byte[] header = new byte[64];
+			int headerLength = -1;
+			boolean headerPending = false;
+			int v1 = -1;
+			while (fileio.readNextLine()) {
+				if (fileio.getTokenCount() == 0) {
+					break;
+				}
+				if (fileio.tokenEquals(0, "#")) {
+					headerLength = fileio.tokenLength(1);
+					if (headerLength > header.length) {
+						header = new byte[headerLength * 2];
 					}
+					System.arraycopy(fileio.buffer(), fileio.tokenOffset(1),
+							header, 0, headerLength);
+					headerPending = true;
+					continue;
+				}
+				if (headerPending) {
+					v1 = graph.intern(header, 0, headerLength);
+					headerPending = false;
+				} else if (v1 < 0) {
+					throw new IOException("Error at line "
+							+ fileio.getLineNumber()
+							+ ": Edge found before the first '#' line.");
 				}
-			} finally {
-				reader.close();
+				loadEdge(v1, loadVertex(0));
 			}
 		} finally {
-			in.close();
+			fileio.close();
 		}
+		tidyNewVerticesAndEdges();
 	}
 
-	public void loadSHORTFile() throws IOException, FileNotFoundException {
-		this.loadSHORTFile(file);
+	// Picks the reader from the file name: .ncol (or "-" for stdin),
+	// .ls, anything else is read as the SHORT (.lgl) format
+	public void loadEdgeFile() throws IOException, FileNotFoundException {
+		this.loadEdgeFile(file);
 	}
 
-	public void loadSHORTFile(File f) throws IOException, FileNotFoundException {
-		edgeIdMap = new HashMap();
-		vertexIdMap = new HashMap();
-		edgesV = new Vector();
-		verticesV = new Vector();
-		fileio = new FileInputHandler(file.getAbsolutePath());
-		String v1 = null;
-		while (fileio.readNextLine()) {
-			if (fileio.getTokenCount() == 0) {
-				break;
+	public void loadEdgeFile(File f) throws IOException, FileNotFoundException {
+		file = f;
+		String name = f.getName();
+		if (isStdin(f) || name.endsWith(".ncol")) {
+			loadNCOLFile(f);
+		} else if (name.endsWith(".ls")) {
+			loadLSFile(f);
+		} else {
+			loadSHORTFile(f);
+		}
+	}
+
+	public void loadNCOLFile() throws IOException, FileNotFoundException {
+		this.loadNCOLFile(file);
+	}
+
+	// Reads an edge list, one "id1 id2 [weight]" per line, in a single
+	// pass. Self loops and repeated edges (in either direction) are
+	// dropped, the first occurrence keeps its weight. Blank lines and
+	// lines starting with '#' are skipped. A file named "-" is stdin.
+	public void loadNCOLFile(File f) throws IOException, FileNotFoundException {
+		graph = new GraphStore();
+		fileio = isStdin(f) ? new LineScanner(System.in)
+				: new LineScanner(f.getAbsolutePath());
+		int selfLoops = 0, duplicates = 0;
+		try {
+			while (fileio.readNextLine()) {
+				int n = fileio.getTokenCount();
+				if (n == 0 || fileio.buffer()[fileio.tokenOffset(0)] == '#') {
+					continue;
+				}
+				if (n != 2 && n != 3) {
+					throw new IOException("Error at line "
+							+ fileio.getLineNumber() + ": Found " + n
+							+ " values while 2 or 3 are expected.");
+				}
+				double weight = 0;
+				if (n == 3) {
+					try {
+						weight = fileio.getTokenAsDouble(2);
+					} catch (NumberFormatException ex) {
+						throw new IOException("Error at line "
+								+ fileio.getLineNumber()
+								+ ": Column 3 must be a double value.");
+					}
+				}
+				if (sameToken(0, 1)) {
+					++selfLoops;
+					continue;
+				}
+				int v1 = loadVertex(0);
+				int v2 = loadVertex(1);
+				int edges = graph.edgeCount();
+				int e = loadEdge(v1, v2);
+				if (e < edges) {
+					++duplicates;
+				} else if (n == 3) {
+					graph.setEdgeWeight(e, weight);
+				}
 			}
-			String id1 = fileio.getToken(0);
-			if (id1.equals("#")) {
-				v1 = fileio.getToken(1);
-				continue;
+		} finally {
+			if (!isStdin(f)) {
+				fileio.close();
 			}
-			loadEdge(v1, fileio.getToken(0));
+		}
+		if (selfLoops > 0 || duplicates > 0) {
+			System.out.println("Dropped " + selfLoops + " self loops and "
+					+ duplicates + " repeated edges.");
 		}
 		tidyNewVerticesAndEdges();
 	}
@@ -229,62 +315,72 @@ public class ViewerIO {
 	}
 
 	public void loadLSFile(File f) throws IOException, FileNotFoundException {
-		edgeIdMap = new HashMap();
-		vertexIdMap = new HashMap();
-		fileio = new FileInputHandler(file.getAbsolutePath());
-		fileio.readNextLine();
-		int vertexCount = fileio.getTokenAsInt(0);
-		while (true) {
+		graph = new GraphStore();
+		fileio = new LineScanner(file.getAbsolutePath());
+		try {
 			fileio.readNextLine();
-			if (fileio.getTokenAsInt(0) == -1 || fileio.getTokenCount() == 0) {
-				break;
+			int vertexCount = fileio.getTokenAsInt(0);
+			while (true) {
+				fileio.readNextLine();
+				if (fileio.getTokenCount() == 0 || fileio.getTokenAsInt(0) == -1) {
+					break;
+				}
+				int v = loadVertex(1);
+				int size = fileio.getTokenAsInt(0);
+				loadGroup(fileio, v, size);
 			}
-			Vertex v = loadVertex(fileio.getToken(1));
-			int size = fileio.getTokenAsInt(0);
-			loadGroup(fileio, v, size);
+		} finally {
+			fileio.close();
 		}
 		tidyNewVerticesAndEdges();
 	}
 
 	public void loadEdgeColorFile(File f) throws IOException,
 			FileNotFoundException {
-		if (edges == null) {
+		if (graph == null) {
 			return;
 		}
-		fileio = new FileInputHandler(f.getAbsolutePath());
-		while (fileio.readNextLine()) {
-			if (fileio.getTokenCount() != 5) {
-				throw new IOException();
-			}
-			String id1 = fileio.getToken(0);
-			String id2 = fileio.getToken(1);
-			String edgeName = Edge.idEdge(id1, id2);
-			Object o = edgeIdMap.get(edgeName);
-			if (o == null) {
-				System.out.println("Undefined Edge: " + id1 + " " + id2);
-				continue;
+		fileio = new LineScanner(f.getAbsolutePath());
+		try {
+			while (fileio.readNextLine()) {
+				if (fileio.getTokenCount() != 5) {
+					throw new IOException();
+				}
+				int v1 = findVertex(0);
+				int v2 = findVertex(1);
+				int e = v1 < 0 || v2 < 0 ? -1 : graph.findEdge(v1, v2);
+				if (e < 0) {
+					System.out.println("Undefined Edge: " + fileio.getToken(0)
+							+ " " + fileio.getToken(1));
+					continue;
+				}
+				edgeColorMap.set(e, readColorRGB(2));
 			}
-			edgeColorMap.put((Edge) o, readColorRGB(2));
+		} finally {
+			fileio.close();
 		}
 	}
 
 	public void loadVertexColorFile(File f) throws IOException,
 			FileNotFoundException {
-		if (edges == null || vertices == null) {
+		if (graph == null) {
 			return;
 		}
-		fileio = new FileInputHandler(f.getAbsolutePath());
-		while (fileio.readNextLine()) {
-			if (fileio.getTokenCount() != 4) {
-				throw new IOException();
-			}
-			String id = fileio.getToken(0);
-			Object o = vertexIdMap.get(id);
-			if (o == null) {
-				System.out.println("Undefined Vertex: " + id);
-				continue;
+		fileio = new LineScanner(f.getAbsolutePath());
+		try {
+			while (fileio.readNextLine()) {
+				if (fileio.getTokenCount() != 4) {
+					throw new IOException();
+				}
+				int v = findVertex(0);
+				if (v < 0) {
+					System.out.println("Undefined Vertex: " + fileio.getToken(0));
+					continue;
+				}
+				vertexColorMap.set(v, readColorRGB(1));
 			}
-			vertexColorMap.put((Vertex) o, readColorRGB(1));
+		} finally {
+			fileio.close();
 		}
 	}
 
@@ -294,117 +390,120 @@ public class ViewerIO {
 	}
 
 	public void loadLabelFile(File f) throws IOException,FileNotFoundException {
-		if (edges == null || vertices == null) {
+		if (graph == null) {
 			return;
 		}
 		labelMap.clear();
-		fileio = new FileInputHandler(f.getAbsolutePath());
-		fileio.setDelimeters(",");
-		while (fileio.readNextLine()) {
-			int s = fileio.getTokenCount();
-			if (s != 21) {
-				throw new IOException("number of fields are not correct in the file");
-			}
+		fileio = new LineScanner(f.getAbsolutePath(), ",");
+		try {
+			while (fileio.readNextLine()) {
+				int s = fileio.getTokenCount();
+				if (s != 21) {
+					throw new IOException("number of fields are not correct in the file");
+				}
 			
-			int index = 0;
-			String id = fileio.getToken(index++);
-			String shape = fileio.getToken(index++);
-			Integer shapesize = fileio.getTokenAsInt(index++);
-			Integer shapeboarderwidth = fileio.getTokenAsInt(index++);
+				int index = 0;
+				String id = fileio.getToken(index++);
+				String shape = fileio.getToken(index++);
+				Integer shapesize = intOrNull(index++);
+				Integer shapeboarderwidth = intOrNull(index++);
 
 			
 			  
-			Color shapebordercolor = readColorRGBHex(index++);
+				Color shapebordercolor = readColorRGBHex(index++);
 		
-			Color shapefillcolor = readColorRGBHexAlpha(index++);
-			index++;
-			double shapefillopacity = 0;//fileio.getTokenAsDouble(index++);
-			if (shapesize == null || shapeboarderwidth == null || shapebordercolor == null || shapefillcolor == null)
-			{
-				shapesize = 0;
-				shapeboarderwidth = 0;
-				shape = "";
-			}
+				Color shapefillcolor = readColorRGBHexAlpha(index++);
+				index++;
+				double shapefillopacity = 0;//doubleOrNull(index++);
+				if (shapesize == null || shapeboarderwidth == null || shapebordercolor == null || shapefillcolor == null)
+				{
+					shapesize = 0;
+					shapeboarderwidth = 0;
+					shape = "";
+				}
 
 
-			Integer linesize = fileio.getTokenAsInt(index++);
-			Integer linelength = fileio.getTokenAsInt(index++);
-			Double lineangle =  fileio.getTokenAsDouble(index++);
-			Color linecolor = readColorRGBHex(index++);
+				Integer linesize = intOrNull(index++);
+				Integer linelength = intOrNull(index++);
+				Double lineangle =  doubleOrNull(index++);
+				Color linecolor = readColorRGBHex(index++);
 
 			
 
 			
-			String toptextttf = fileio.getToken(index++);
-			Integer toptextsize = fileio.getTokenAsInt(index++);
-			Color toptextcolor = readColorRGBHex(index++);
-			Color topbgfillcolor =readColorRGBHex(index++);
+				String toptextttf = fileio.getToken(index++);
+				Integer toptextsize = intOrNull(index++);
+				Color toptextcolor = readColorRGBHex(index++);
+				Color topbgfillcolor =readColorRGBHex(index++);
 
-			String bottomtextttf = fileio.getToken(index++);
-			Integer bottomtextsize = fileio.getTokenAsInt(index++);
-			Color bottomtextcolor = readColorRGBHex(index++);
-			Color bottombgfillcolor =readColorRGBHex(index++);
+				String bottomtextttf = fileio.getToken(index++);
+				Integer bottomtextsize = intOrNull(index++);
+				Color bottomtextcolor = readColorRGBHex(index++);
+				Color bottombgfillcolor =readColorRGBHex(index++);
 
-			String toptext = fileio.getToken(index++);
-			String bottomtext = fileio.getToken(index++);
+				String toptext = fileio.getToken(index++);
+				String bottomtext = fileio.getToken(index++);
 
 			
-			if (toptextttf.isEmpty() || toptextsize== null || toptextcolor == null)
-			{
-				toptext = "";
-				toptextsize = 0;
-			}	
-
-			if (bottomtextttf.isEmpty()  || bottomtextsize== null || bottomtextcolor == null)
-			{
-				bottomtext = "";
-				bottomtextsize = 0;
-			}	
+				if (toptextttf.isEmpty() || toptextsize== null || toptextcolor == null)
+				{
+					toptext = "";
+					toptextsize = 0;
+				}	
+
+				if (bottomtextttf.isEmpty()  || bottomtextsize== null || bottomtextcolor == null)
+				{
+					bottomtext = "";
+					bottomtextsize = 0;
+				}	
 
 			
 
-			if (linesize == null)
-			{
-				linecolor = null;
-				linesize = 0;
-			}	
-			if (lineangle ==null || linelength== null )
-			{
-			  //toptext = "";
-			  //bottomtext = "";
-			  lineangle = 0.0;
-			  linelength = 0;	
-			}
+				if (linesize == null)
+				{
+					linecolor = null;
+					linesize = 0;
+				}	
+				if (lineangle ==null || linelength== null )
+				{
+				  //toptext = "";
+				  //bottomtext = "";
+				  lineangle = 0.0;
+				  linelength = 0;	
+				}
 
 			
 
-			Object o = vertexIdMap.get(id);
-			if (o == null) {
-				System.out.println("Undefined Vertex: " + id);
-				continue;
-			}
-			Label l = new Label(shape,
-								shapesize ,
-								shapeboarderwidth ,
-								shapebordercolor,
-								shapefillcolor ,
-								shapefillopacity ,
-								linesize ,
-								linelength ,
-								lineangle ,
-								linecolor,
-								toptextttf,
-								toptextsize ,
-								toptextcolor ,
-								topbgfillcolor ,
-								bottomtextttf ,
-								bottomtextsize ,
-								bottomtextcolor ,
-								bottombgfillcolor ,
-								toptext,
-								bottomtext);
-			labelMap.put((Vertex) o,l);
+				Vertex o = graph.vertex(id);
+				if (o == null) {
+					System.out.println("Undefined Vertex: " + id);
+					continue;
+				}
+				Label l = new Label(shape,
+									shapesize ,
+									shapeboarderwidth ,
+									shapebordercolor,
+									shapefillcolor ,
+									shapefillopacity ,
+									linesize ,
+									linelength ,
+									lineangle ,
+									linecolor,
+									toptextttf,
+									toptextsize ,
+									toptextcolor ,
+									topbgfillcolor ,
+									bottomtextttf ,
+									bottomtextsize ,
+									bottomtextcolor ,
+									bottombgfillcolor ,
+									toptext,
+									bottomtext);
+				labelMap.put(o,l);
 
+			}
+		} finally {
+			fileio.close();
 		}
 
 	}
@@ -414,39 +513,27 @@ public class ViewerIO {
 	// ACCESSORS
 	// //////////////////////////////////////////////////////////
 
-	public Edge[] getEdges() {
-		return edges;
+	public GraphStore getGraph() {
+		return graph;
 	}
 
 	public VertexStats getStats() {
 		return stats;
 	}
 
-	public Vertex[] getVertices() {
-		return vertices;
-	}
-
-	public HashMap getLabels() {
+	public HashMap<Vertex, Label> getLabels() {
 		return labelMap;
 	}
 
 
-	public HashMap getEdgeColorMap() {
+	public ColorColumn getEdgeColorMap() {
 		return edgeColorMap;
 	}
 
-	public HashMap getVertexColorMap() {
+	public ColorColumn getVertexColorMap() {
 		return vertexColorMap;
 	}
 
-	public HashMap getVertexIdMap() {
-		return vertexIdMap;
-	}
-
-	public HashMap getEdgeIdMap() {
-		return edgeIdMap;
-	}
-
 	// //////////////////////////////////////////////////////////
 	// MUTATORS
 	// //////////////////////////////////////////////////////////
@@ -463,54 +550,60 @@ public class ViewerIO {
 	// PRIVATE METHOD CALLS
 	// //////////////////////////////////////////////////////////
 
-	private Vertex loadVertex(String id) {
-		Object o = vertexIdMap.get(id);
-		if (o != null) {
-			return (Vertex) o;
+	// Interns the id held by the given token of the current line
+	private int loadVertex(int token) {
+		return graph.intern(fileio.buffer(), fileio.tokenOffset(token),
+				fileio.tokenLength(token));
+	}
+
+	private boolean sameToken(int t1, int t2) {
+		int len = fileio.tokenLength(t1);
+		if (len != fileio.tokenLength(t2)) {
+			return false;
 		}
-		Vertex v = new Vertex();
-		v.id(id);
-		vertexIdMap.put(id, v);
-		verticesV.add(v);
-		return v;
-	}
-
-	private Edge loadEdge(Vertex v1, Vertex v2) {
-		String edgeName = Edge.idEdge(v1, v2);
-		Object o = edgeIdMap.get(edgeName);
-		if (o != null) {
-			return (Edge) o;
+		byte[] b = fileio.buffer();
+		int o1 = fileio.tokenOffset(t1);
+		int o2 = fileio.tokenOffset(t2);
+		for (int ii = 0; ii < len; ++ii) {
+			if (b[o1 + ii] != b[o2 + ii]) {
+				return false;
+			}
 		}
-		Edge e = new Edge(v1, v2);
-		edgeIdMap.put(edgeName, e);
-		edgesV.add(e);
-		return e;
+		return true;
 	}
 
-	private Edge loadEdge(String id1, String id2) {
-		return loadEdge(loadVertex(id1), loadVertex(id2));
+	private int findVertex(int token) {
+		return graph.indexOf(fileio.buffer(), fileio.tokenOffset(token),
+				fileio.tokenLength(token));
 	}
 
-	private void loadGroup(FileInputHandler f, Vertex v1, int size)
+	private int loadEdge(int v1, int v2) {
+		// Edges are undirected, (v1,v2) and (v2,v1) are the same edge
+		return graph.internEdge(v1, v2);
+	}
+
+	private void loadGroup(LineScanner f, int v1, int size)
 			throws IOException {
 		for (int ii = 0; ii < size; ++ii) {
 			f.readNextLine();
-			Vertex v2 = loadVertex(fileio.getToken(0));
+			int v2 = loadVertex(0);
 			loadEdge(v1, v2);
 		}
 	}
 
-	private void readLocationIntoVertex(Vertex v) {
-		Matrix m = new Matrix(DIMENSION + 1, 1);
-		for (int ii = 0; ii < DIMENSION; ++ii) {
-			m.set(ii, 0, fileio.getTokenAsDouble(ii + tokenCounter));
-		}
-		tokenCounter += DIMENSION;
-		v.location(m);
+	// A file named "-" stands for stdin, not a file "-" in some directory
+	private static boolean isStdin(File f) {
+		return f.getPath().equals(STDIN);
+	}
+
+	// The label file leaves fields empty or malformed on purpose, those
+	// come back as null
+	private Integer intOrNull(int index) {
+		return fileio.isInt(index) ? fileio.getTokenAsInt(index) : null;
 	}
 
-	private void readColor(int index) {
-		readColorRGB(index);
+	private Double doubleOrNull(int index) {
+		return fileio.isDouble(index) ? fileio.getTokenAsDouble(index) : null;
 	}
 
 	private Color readColorRGB(int index) {
@@ -521,53 +614,29 @@ public class ViewerIO {
 	}
 
 	private Color readColorRGBHex(int index) {
-		String hex = fileio.getToken(index);
-		try
-		{
-			int code = Integer.parseInt(hex,16);  
-			
-			return new Color((float) (code >> 16)/255, (float) ((code >> 8) & 255)/255, (float) (code & 255)/255);
-		}
-		catch (NumberFormatException nfe) {
+		if (!fileio.isInt(index, 16)) {
 			return null;
 		}
+		int code = fileio.getTokenAsInt(index, 16);
+		return new Color((float) (code >> 16)/255, (float) ((code >> 8) & 255)/255, (float) (code & 255)/255);
 	}
 
 	private Color readColorRGBHexAlpha(int index) {
-		String hex = fileio.getToken(index++);
-		try
-		{
-			int code = Integer.parseInt(hex,16);  
-			Double d = fileio.getTokenAsDouble(index);
-			if (d==null)
-				return null;
-			float alpha = (float) d.floatValue();
-			return new Color((float) (code >> 16)/255, (float) ((code >> 8) & 255)/255, (float) (code & 255)/255,alpha/100);
-		}
-		catch (NumberFormatException nfe) {
+		if (!fileio.isInt(index, 16)) {
 			return null;
 		}
-
+		int code = fileio.getTokenAsInt(index++, 16);
+		Double d = doubleOrNull(index);
+		if (d==null)
+			return null;
+		float alpha = (float) d.floatValue();
+		return new Color((float) (code >> 16)/255, (float) ((code >> 8) & 255)/255, (float) (code & 255)/255,alpha/100);
 	}
 
-
 	private void tidyNewVerticesAndEdges() {
-		// This just loads the edges into an array and out of the
-		// vector
-		edges = new Edge[edgesV.size()];
-		for (int ii = 0; ii < edgesV.size(); ++ii) {
-			edges[ii] = (Edge) edgesV.elementAt(ii);
-			// edges[ii].print();
-		}
-		edgesV.clear();
-
-		vertices = new Vertex[verticesV.size()];
-		for (int ii = 0; ii < verticesV.size(); ++ii) {
-			vertices[ii] = (Vertex) verticesV.elementAt(ii);
-			vertices[ii].index(ii);
-			// vertices[ii].print();
-		}
-		verticesV.clear();
+		// This just drops the spare capacity of the growable
+		// arrays in the store
+		graph.trim();
 	}
 
 	